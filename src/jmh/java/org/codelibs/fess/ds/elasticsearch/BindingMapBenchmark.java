@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the script bindings of a hit, comparing a copy of all parameters with a {@link LayeredBindingMap}.
+ * Run it with {@code mvn -Pbenchmark test-compile exec:exec@run-benchmarks -Djmh.args="BindingMapBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class BindingMapBenchmark {
+
+    /**
+     * The number of data config parameters.
+     */
+    @Param({ "10", "50", "200" })
+    public int paramCount;
+
+    private Map<String, Object> params;
+
+    private Map<String, Object> baseBindings;
+
+    private Map<String, Object> source;
+
+    /**
+     * Creates the parameters of a data config.
+     */
+    @Setup
+    public void setup() {
+        params = new LinkedHashMap<>();
+        for (int i = 0; i < paramCount; i++) {
+            params.put("settings.param" + i, "value" + i);
+        }
+        final Map<String, Object> bindings = new LinkedHashMap<>(params);
+        bindings.put("crawlingConfig", new Object());
+        baseBindings = Collections.unmodifiableMap(bindings);
+        source = Collections.singletonMap("title", "Title");
+    }
+
+    /**
+     * Builds the bindings by copying all parameters, as each hit did before the bindings were layered.
+     * @return The value read by the script.
+     */
+    @Benchmark
+    public Object copiedBindings() {
+        final Map<String, Object> resultMap = new LinkedHashMap<>(params);
+        resultMap.put("crawlingConfig", baseBindings.get("crawlingConfig"));
+        putHitValues(resultMap);
+        return evaluate(resultMap);
+    }
+
+    /**
+     * Builds the bindings by overlaying the values of a hit on the shared bindings.
+     * @return The value read by the script.
+     */
+    @Benchmark
+    public Object layeredBindings() {
+        final Map<String, Object> resultMap = new LayeredBindingMap(baseBindings);
+        putHitValues(resultMap);
+        return evaluate(resultMap);
+    }
+
+    private void putHitValues(final Map<String, Object> resultMap) {
+        resultMap.put("crawlerStatsKey", "doc1");
+        resultMap.put("index", "docs");
+        resultMap.put("id", "doc1");
+        resultMap.put("version", 1L);
+        resultMap.put("clusterAlias", null);
+        resultMap.put("primaryTerm", 1L);
+        resultMap.put("score", 1.0f);
+        resultMap.put("seqNo", 1L);
+        resultMap.put("hit", this);
+        resultMap.put("source", source);
+        final Map<String, Object> crawlingContext = new HashMap<>(4);
+        crawlingContext.put("doc", new HashMap<>());
+        resultMap.put("crawlingContext", crawlingContext);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Object evaluate(final Map<String, Object> resultMap) {
+        final Object title = ((Map<String, Object>) resultMap.get("source")).get("title");
+        return resultMap.get("settings.param0") != null ? title : null;
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.codelibs.fess.util.ComponentUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
+import org.opensearch.search.SearchHit;
+
+/**
+ * Benchmark of the per-hit processing path: source parsing, script bindings, script map evaluation and the store call.
+ * Each invocation processes a page of synthetic hits, so the scores and the allocation of the gc profiler are per hit.
+ * Run it with {@code mvn -Pbenchmark test-compile exec:exec@run-benchmarks -Djmh.args="ProcessHitBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ProcessHitBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The number of fields in the source of a hit.
+     */
+    @Param({ "10", "100" })
+    public int fieldCount;
+
+    /**
+     * The length of each field value.
+     */
+    @Param({ "64", "4096" })
+    public int valueSize;
+
+    /**
+     * The value of the source.extract.fields parameter.
+     */
+    @Param({ "false", "true" })
+    public boolean extractFields;
+
+    private ElasticsearchDataStore dataStore;
+
+    private DataConfig dataConfig;
+
+    private DataStoreParams paramMap;
+
+    private ScriptMapEvaluator scriptMapEvaluator;
+
+    private Map<String, Object> baseBindings;
+
+    private Map<String, Object> defaultDataMap;
+
+    private String[] ids;
+
+    private BytesReference[] sources;
+
+    private StoringCallback callback;
+
+    /**
+     * Creates the data store and the sources of a page.
+     * @throws IOException If the sources cannot be built.
+     */
+    @Setup
+    public void setup() throws IOException {
+        ComponentUtil.register(new CrawlerStatsHelper() {
+            @Override
+            public void begin(final Object keyObj) {
+            }
+
+            @Override
+            public void record(final Object keyObj, final StatsAction action) {
+            }
+
+            @Override
+            public void done(final Object keyObj) {
+            }
+        }, "crawlerStatsHelper");
+
+        dataStore = new ElasticsearchDataStore();
+        dataConfig = new DataConfig();
+        paramMap = new DataStoreParams();
+        paramMap.put("settings.http.hosts", "localhost:9200");
+        paramMap.put("settings.http.compression", "true");
+        paramMap.put(ElasticsearchDataStore.INDEX, "docs");
+        paramMap.put(ElasticsearchDataStore.SIZE, "100");
+        paramMap.put(ElasticsearchDataStore.SCROLL, "1m");
+        paramMap.put(ElasticsearchDataStore.SOURCE_EXTRACT_FIELDS, String.valueOf(extractFields));
+
+        final Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("url", "source.url");
+        scriptMap.put("title", "source.title");
+        scriptMap.put("content", "source.field0");
+        scriptMap.put("last_modified", "source.updated_at");
+        scriptMapEvaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> {
+            throw new IllegalStateException("Only property paths are evaluated: " + script);
+        });
+        if (extractFields) {
+            scriptMapEvaluator.enableSourceFieldExtraction();
+        }
+        baseBindings = dataStore.createBaseBindings(dataConfig, paramMap);
+        defaultDataMap = new HashMap<>();
+        defaultDataMap.put("role", "guest");
+
+        ids = new String[PAGE_SIZE];
+        sources = new BytesReference[PAGE_SIZE];
+        final String value = "x".repeat(valueSize);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            ids[i] = "doc" + i;
+            try (XContentBuilder builder = XContentFactory.jsonBuilder()) {
+                builder.startObject();
+                builder.field("url", "https://example.com/" + i);
+                builder.field("title", "Title " + i);
+                builder.field("updated_at", "2025-01-01T00:00:00.000Z");
+                for (int j = 0; j < fieldCount; j++) {
+                    builder.field("field" + j, value);
+                }
+                builder.endObject();
+                sources[i] = BytesReference.bytes(builder);
+            }
+        }
+        callback = new StoringCallback();
+    }
+
+    /**
+     * Processes a page of hits which are created from the serialized sources, as the reader does for each response.
+     * @return The processed hits.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public List<SearchHit> processPage() {
+        final SearchHit[] hits = new SearchHit[PAGE_SIZE];
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            hits[i] = new SearchHit(i, ids[i], Collections.emptyMap(), Collections.emptyMap());
+            hits[i].sourceRef(sources[i]);
+        }
+        final List<SearchHit> processedHits = dataStore.processPage(dataConfig, callback, paramMap, scriptMapEvaluator, baseBindings,
+                defaultDataMap, 0, hits, null, null, null, null);
+        if (callback.documents != PAGE_SIZE) {
+            throw new IllegalStateException("Failed to store documents: " + callback.documents);
+        }
+        callback.documents = 0;
+        return processedHits;
+    }
+
+    private static class StoringCallback implements IndexUpdateCallback {
+        int documents;
+
+        Map<String, Object> lastDataMap;
+
+        @Override
+        public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+            documents++;
+            lastDataMap = dataMap;
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return documents;
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return 0;
+        }
+
+        @Override
+        public void commit() {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.common.xcontent.smile.SmileXContent;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContent;
+import org.opensearch.core.xcontent.XContentParser;
+
+/**
+ * Benchmark of the formats of search responses served by {@link FakeElasticsearchServer}: a page is fetched over HTTP and parsed
+ * into a search response, as the client does for each scroll page. The bytes on the wire per page are printed at the end of a trial.
+ * Run it with {@code mvn -Pbenchmark test-compile exec:exec@run-benchmarks -Djmh.args="ResponseFormatBenchmark -prof gc"}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ResponseFormatBenchmark {
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * The fields which the crawl reads from a scroll or point in time page.
+     */
+    private static final String FILTER_PATH = "_scroll_id,pit_id,hits.hits._index,hits.hits._id,hits.hits._source,hits.hits._version,"
+            + "hits.hits._seq_no,hits.hits._primary_term,hits.hits.sort,hits.hits.fields";
+
+    /**
+     * The format of responses: json or smile, optionally compressed by gzip and filtered by filter_path.
+     */
+    @Param({ "json", "gzip", "json_filtered", "gzip_filtered", "smile_filtered" })
+    public String format;
+
+    /**
+     * The length of the content field of each document.
+     */
+    @Param({ "1000", "10000" })
+    public int contentSize;
+
+    private FakeElasticsearchServer server;
+
+    private HttpClient httpClient;
+
+    private HttpRequest request;
+
+    private XContent xContent;
+
+    private boolean gzip;
+
+    private long pages;
+
+    /**
+     * Starts the server and builds the request for the format.
+     * @throws IOException If the server cannot be started.
+     */
+    @Setup
+    public void setup() throws IOException {
+        server = new FakeElasticsearchServer("docs", PAGE_SIZE, contentSize);
+        httpClient = HttpClient.newHttpClient();
+        gzip = format.startsWith("gzip");
+        xContent = format.startsWith("smile") ? SmileXContent.smileXContent : JsonXContent.jsonXContent;
+        final String path = "/docs/_search" + (format.endsWith("_filtered") ? "?filter_path=" + FILTER_PATH : "");
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(server.getUrl() + path))
+                .header("Content-Type", "application/json")
+                .header("Accept", xContent == SmileXContent.smileXContent ? "application/smile" : "application/json")
+                .POST(BodyPublishers.ofString("{\"size\":" + PAGE_SIZE + "}"));
+        if (gzip) {
+            builder.header("Accept-Encoding", "gzip");
+        }
+        request = builder.build();
+    }
+
+    /**
+     * Prints the bytes on the wire per page and stops the server.
+     */
+    @TearDown
+    public void tearDown() {
+        if (pages > 0) {
+            System.out.println(String.format(Locale.ROOT, "%n%s contentSize=%d: %d bytes/page", format, contentSize,
+                    server.getResponseBytes() / pages));
+        }
+        server.close();
+    }
+
+    /**
+     * Fetches a page and parses it into a search response.
+     * @return The search response.
+     * @throws Exception If the page cannot be fetched or parsed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(PAGE_SIZE)
+    public SearchResponse fetchPage() throws Exception {
+        // the whole body is received before it is parsed, as the client does
+        final HttpResponse<byte[]> response = httpClient.send(request, BodyHandlers.ofByteArray());
+        final InputStream body = new ByteArrayInputStream(response.body());
+        try (InputStream in = gzip ? new GZIPInputStream(body) : body;
+                XContentParser parser = xContent.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION,
+                        in)) {
+            final SearchResponse searchResponse = SearchResponse.fromXContent(parser);
+            if (searchResponse.getHits().getHits().length != PAGE_SIZE) {
+                throw new IllegalStateException("Failed to fetch a page: " + searchResponse);
+            }
+            pages++;
+            return searchResponse;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.OpenSearchException;
+import org.opensearch.core.rest.RestStatus;
+
+/**
+ * Adapts all readers of a crawl to the load of the source cluster.
+ * Rejected requests are retried with jittered exponential backoff until the retry budget of the crawl is exhausted,
+ * and rejections and latency spikes halve the number of concurrent requests, which grows back by one per successful request.
+ */
+public class BackPressureController {
+
+    private static final Logger logger = LogManager.getLogger(BackPressureController.class);
+
+    /**
+     * The number of successful requests to allow one more concurrent request.
+     */
+    protected static final int SUCCESSES_TO_INCREASE = 10;
+
+    /**
+     * The maximum number of concurrent requests.
+     */
+    protected final int maxConcurrency;
+
+    /**
+     * The initial delay in milliseconds before a retry.
+     */
+    protected final long initialDelay;
+
+    /**
+     * The maximum delay in milliseconds before a retry.
+     */
+    protected final long maxDelay;
+
+    /**
+     * The latency in milliseconds regarded as a spike.
+     */
+    protected final long latencyThreshold;
+
+    /**
+     * The metrics of the crawl, or null if they are not recorded.
+     */
+    protected final CrawlMetrics metrics;
+
+    /**
+     * The number of retries left for the crawl.
+     */
+    protected int remainingRetries;
+
+    /**
+     * The current number of allowed concurrent requests.
+     */
+    protected int concurrency;
+
+    /**
+     * The number of requests in flight.
+     */
+    protected int inFlight;
+
+    /**
+     * The number of successful requests since the concurrency was changed.
+     */
+    protected int successes;
+
+    /**
+     * Constructor.
+     * @param maxConcurrency The maximum number of concurrent requests.
+     * @param retryBudget The number of retries allowed for the crawl.
+     * @param initialDelay The initial delay in milliseconds before a retry.
+     * @param maxDelay The maximum delay in milliseconds before a retry.
+     * @param latencyThreshold The latency in milliseconds regarded as a spike.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     */
+    public BackPressureController(final int maxConcurrency, final int retryBudget, final long initialDelay, final long maxDelay,
+            final long latencyThreshold, final CrawlMetrics metrics) {
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.latencyThreshold = latencyThreshold;
+        this.metrics = metrics;
+        remainingRetries = retryBudget;
+        concurrency = this.maxConcurrency;
+    }
+
+    /**
+     * Waits until a request is allowed.
+     */
+    public synchronized void acquire() {
+        try {
+            while (inFlight >= concurrency) {
+                wait();
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataStoreException("Interrupted while waiting for the source cluster.", e);
+        }
+        inFlight++;
+    }
+
+    /**
+     * Finishes a request.
+     */
+    public synchronized void release() {
+        inFlight--;
+        notifyAll();
+    }
+
+    /**
+     * Records a rejected request.
+     * @param attempt The number of previous retries of the request.
+     * @return The delay in milliseconds before the retry, or -1 if the retry budget is exhausted.
+     */
+    public synchronized long onRejected(final int attempt) {
+        if (remainingRetries <= 0) {
+            return -1;
+        }
+        remainingRetries--;
+        if (metrics != null) {
+            metrics.recordRetry();
+        }
+        decreaseConcurrency();
+        final long delay = Math.min(maxDelay, initialDelay << Math.min(attempt, 20));
+        // equal jitter spreads the retries of concurrent readers
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    /**
+     * Records a successful request.
+     * @param latency The latency in milliseconds.
+     * @return The delay in milliseconds before the next request.
+     */
+    public synchronized long onFetched(final long latency) {
+        if (latencyThreshold > 0 && latency > latencyThreshold) {
+            logger.warn("The source cluster is slow: latency={}ms", latency);
+            decreaseConcurrency();
+            return initialDelay;
+        }
+        successes++;
+        if (concurrency < maxConcurrency && successes >= SUCCESSES_TO_INCREASE) {
+            concurrency++;
+            successes = 0;
+            notifyAll();
+        }
+        return 0;
+    }
+
+    /**
+     * Halves the number of concurrent requests.
+     */
+    protected void decreaseConcurrency() {
+        final int newConcurrency = Math.max(1, concurrency / 2);
+        if (newConcurrency != concurrency) {
+            logger.info("Concurrent requests changed from {} to {}", concurrency, newConcurrency);
+            concurrency = newConcurrency;
+        }
+        successes = 0;
+    }
+
+    /**
+     * Gets the current number of allowed concurrent requests.
+     * @return The concurrency.
+     */
+    public synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    /**
+     * Checks if the exception is caused by the rejection of the source cluster.
+     * @param t The exception.
+     * @return True if the request was rejected.
+     */
+    public static boolean isRejected(final Throwable t) {
+        Throwable cause = t;
+        // the depth is limited against circular causes
+        for (int i = 0; cause != null && i < 10; i++) {
+            if (cause instanceof OpenSearchException e && e.status() == RestStatus.TOO_MANY_REQUESTS
+                    || cause instanceof RejectedExecutionException) {
+                return true;
+            }
+            final String message = cause.getMessage();
+            if (message != null && message.contains("rejected_execution_exception")) {
+                return true;
+            }
+            cause = cause.getCause();
+        }
+        return false;
+    }
+}
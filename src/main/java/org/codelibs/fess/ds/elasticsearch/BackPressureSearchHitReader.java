@@ -0,0 +1,113 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.search.SearchHit;
+
+/**
+ * SearchHitReader which retries pages rejected by the source cluster and paces requests by a BackPressureController.
+ * A rejected request has not been executed, so a retry does not skip the page of a scroll.
+ */
+public class BackPressureSearchHitReader implements SearchHitReader {
+
+    private static final Logger logger = LogManager.getLogger(BackPressureSearchHitReader.class);
+
+    /**
+     * The reader to retry.
+     */
+    protected final SearchHitReader reader;
+
+    /**
+     * The controller shared by all readers of the crawl.
+     */
+    protected final BackPressureController controller;
+
+    /**
+     * The controller of the page size, or null if the page size is fixed.
+     */
+    protected final PageSizeController pageSizeController;
+
+    /**
+     * Constructor.
+     * @param reader The reader to retry.
+     * @param controller The controller shared by all readers of the crawl.
+     * @param pageSizeController The controller of the page size, or null if the page size is fixed.
+     */
+    public BackPressureSearchHitReader(final SearchHitReader reader, final BackPressureController controller,
+            final PageSizeController pageSizeController) {
+        this.reader = reader;
+        this.controller = controller;
+        this.pageSizeController = pageSizeController;
+    }
+
+    @Override
+    public SearchHit[] nextPage() {
+        int attempt = 0;
+        while (true) {
+            controller.acquire();
+            final long startTime = System.currentTimeMillis();
+            final SearchHit[] hits;
+            try {
+                hits = reader.nextPage();
+            } catch (final RuntimeException e) {
+                if (!BackPressureController.isRejected(e)) {
+                    throw e;
+                }
+                final long delay = controller.onRejected(attempt);
+                if (delay < 0) {
+                    logger.warn("The retry budget is exhausted.");
+                    throw e;
+                }
+                attempt++;
+                logger.warn("The source cluster rejected the request. Retrying in {}ms: attempt={}", delay, attempt, e);
+                if (pageSizeController != null) {
+                    pageSizeController.onRejected();
+                }
+                sleep(delay);
+                continue;
+            } finally {
+                controller.release();
+            }
+
+            final long delay = controller.onFetched(System.currentTimeMillis() - startTime);
+            if (delay > 0) {
+                sleep(delay);
+            }
+            return hits;
+        }
+    }
+
+    /**
+     * Sleeps before the next request.
+     * @param delay The delay in milliseconds.
+     */
+    protected void sleep(final long delay) {
+        try {
+            Thread.sleep(delay);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataStoreException("Interrupted while backing off.", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
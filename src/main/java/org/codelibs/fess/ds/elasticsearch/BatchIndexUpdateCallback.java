@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+
+/**
+ * Callback which stores the documents of a page at once, used if the store.batch parameter is true.
+ * The failures are returned per document, so only the failed documents are recorded and the others stay stored.
+ * It is implemented by callbacks which have a bulk API, and store.batch is ignored for other callbacks.
+ */
+public interface BatchIndexUpdateCallback extends IndexUpdateCallback {
+
+    /**
+     * Stores the documents of a page.
+     * @param paramMaps The parameters for each document, which hold its stats key.
+     * @param dataMaps The documents.
+     * @return The failures by the positions of the documents. The other documents have been stored.
+     */
+    Map<Integer, Throwable> storeAll(List<DataStoreParams> paramMaps, List<Map<String, Object>> dataMaps);
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+/**
+ * Store of the checkpoints of crawls.
+ * A checkpoint is the sort values of the last hit whose page has been stored, and a crawl resumes after it.
+ */
+public interface CheckpointStore {
+
+    /**
+     * Loads the checkpoint.
+     * @param key The key of the checkpoint.
+     * @return The sort values, or null if no checkpoint exists.
+     */
+    Object[] load(String key);
+
+    /**
+     * Saves the checkpoint.
+     * @param key The key of the checkpoint.
+     * @param sortValues The sort values of the last stored hit.
+     */
+    void save(String key, Object[] sortValues);
+
+    /**
+     * Deletes the checkpoint.
+     * @param key The key of the checkpoint.
+     */
+    void delete(String key);
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Writes checkpoints to a CheckpointStore in the background.
+ * Checkpoints of the same key which are not written yet are coalesced, so only the latest one is written.
+ */
+public class CheckpointWriter implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(CheckpointWriter.class);
+
+    /**
+     * The checkpoint store.
+     */
+    protected final CheckpointStore checkpointStore;
+
+    /**
+     * The checkpoints which are not written yet.
+     */
+    protected final Map<String, Object[]> pendingCheckpoints = new ConcurrentHashMap<>();
+
+    /**
+     * The executor service to write checkpoints.
+     */
+    protected final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    /**
+     * Constructor.
+     * @param checkpointStore The checkpoint store.
+     */
+    public CheckpointWriter(final CheckpointStore checkpointStore) {
+        this.checkpointStore = checkpointStore;
+    }
+
+    /**
+     * Loads the checkpoint.
+     * @param key The key of the checkpoint.
+     * @return The sort values, or null if no checkpoint exists.
+     */
+    public Object[] load(final String key) {
+        return checkpointStore.load(key);
+    }
+
+    /**
+     * Saves the checkpoint in the background.
+     * @param key The key of the checkpoint.
+     * @param sortValues The sort values of the last stored hit.
+     */
+    public void save(final String key, final Object[] sortValues) {
+        if (pendingCheckpoints.put(key, sortValues) == null) {
+            executorService.execute(() -> {
+                final Object[] values = pendingCheckpoints.remove(key);
+                if (values != null) {
+                    try {
+                        checkpointStore.save(key, values);
+                    } catch (final Exception e) {
+                        logger.warn("Failed to save checkpoint: {}", key, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the checkpoint in the background after the pending one is written.
+     * @param key The key of the checkpoint.
+     */
+    public void delete(final String key) {
+        pendingCheckpoints.remove(key);
+        executorService.execute(() -> {
+            try {
+                checkpointStore.delete(key);
+            } catch (final Exception e) {
+                logger.warn("Failed to delete checkpoint: {}", key, e);
+            }
+        });
+    }
+
+    /**
+     * Writes the pending checkpoints and stops the background thread.
+     */
+    @Override
+    public void close() {
+        executorService.shutdown();
+        try {
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Writing checkpoints did not finish.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while writing checkpoints.", e);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Metrics of a crawl, updated by all readers concurrently.
+ * They are registered to the platform MBean server while the crawl runs and summarized by {@link #toString()} at the end.
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+    private static final Logger logger = LogManager.getLogger(CrawlMetrics.class);
+
+    /**
+     * The upper bounds in milliseconds of the buckets of the fetch time histogram.
+     */
+    protected static final long[] FETCH_TIME_BOUNDS = { 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000 };
+
+    /**
+     * The time in nanoseconds when the crawl started.
+     */
+    protected final long startTime = System.nanoTime();
+
+    /**
+     * The number of stored documents.
+     */
+    protected final LongAdder documents = new LongAdder();
+
+    /**
+     * The number of documents which failed to be stored.
+     */
+    protected final LongAdder failures = new LongAdder();
+
+    /**
+     * The number of documents skipped because they are unchanged since the previous crawl.
+     */
+    protected final LongAdder skipped = new LongAdder();
+
+    /**
+     * The number of fetched pages.
+     */
+    protected final LongAdder pages = new LongAdder();
+
+    /**
+     * The fetched source bytes.
+     */
+    protected final LongAdder bytes = new LongAdder();
+
+    /**
+     * The total time in nanoseconds to fetch pages.
+     */
+    protected final LongAdder fetchTime = new LongAdder();
+
+    /**
+     * The maximum time in nanoseconds to fetch a page.
+     */
+    protected final LongAccumulator maxFetchTime = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The numbers of pages by the buckets of the fetch time. The last bucket has no upper bound.
+     */
+    protected final LongAdder[] fetchTimeBuckets = new LongAdder[FETCH_TIME_BOUNDS.length + 1];
+
+    /**
+     * The total time in nanoseconds to evaluate scripts.
+     */
+    protected final LongAdder scriptTime = new LongAdder();
+
+    /**
+     * The total time in nanoseconds to store documents.
+     */
+    protected final LongAdder storeTime = new LongAdder();
+
+    /**
+     * The number of bulk requests to delete processed documents.
+     */
+    protected final LongAdder deleteRequests = new LongAdder();
+
+    /**
+     * The total time in nanoseconds of bulk requests to delete processed documents.
+     */
+    protected final LongAdder deleteTime = new LongAdder();
+
+    /**
+     * The number of retries of rejected requests.
+     */
+    protected final LongAdder retries = new LongAdder();
+
+    /**
+     * The name registered to the MBean server, or null if it is not registered.
+     */
+    protected ObjectName objectName;
+
+    /**
+     * Constructor.
+     */
+    public CrawlMetrics() {
+        for (int i = 0; i < fetchTimeBuckets.length; i++) {
+            fetchTimeBuckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records a fetched page.
+     * @param numOfHits The number of hits.
+     * @param sourceBytes The source bytes of the hits.
+     * @param time The time in nanoseconds to fetch the page.
+     */
+    public void recordFetch(final int numOfHits, final long sourceBytes, final long time) {
+        pages.increment();
+        bytes.add(sourceBytes);
+        fetchTime.add(time);
+        maxFetchTime.accumulate(time);
+        final long millis = TimeUnit.NANOSECONDS.toMillis(time);
+        int bucket = 0;
+        while (bucket < FETCH_TIME_BOUNDS.length && millis > FETCH_TIME_BOUNDS[bucket]) {
+            bucket++;
+        }
+        fetchTimeBuckets[bucket].increment();
+    }
+
+    /**
+     * Records the time to evaluate scripts for a document.
+     * @param time The time in nanoseconds.
+     */
+    public void recordScript(final long time) {
+        scriptTime.add(time);
+    }
+
+    /**
+     * Records a stored document.
+     * @param time The time in nanoseconds to store it.
+     */
+    public void recordStore(final long time) {
+        documents.increment();
+        storeTime.add(time);
+    }
+
+    /**
+     * Records documents stored at once.
+     * @param numOfDocs The number of documents.
+     * @param time The time in nanoseconds to store them.
+     */
+    public void recordStore(final int numOfDocs, final long time) {
+        documents.add(numOfDocs);
+        storeTime.add(time);
+    }
+
+    /**
+     * Records a document which failed to be stored.
+     */
+    public void recordFailure() {
+        failures.increment();
+    }
+
+    /**
+     * Records a document skipped because it is unchanged since the previous crawl.
+     */
+    public void recordSkip() {
+        skipped.increment();
+    }
+
+    /**
+     * Records a bulk request to delete processed documents.
+     * @param time The time in nanoseconds.
+     */
+    public void recordDelete(final long time) {
+        deleteRequests.increment();
+        deleteTime.add(time);
+    }
+
+    /**
+     * Records a retry of a rejected request.
+     */
+    public void recordRetry() {
+        retries.increment();
+    }
+
+    /**
+     * Registers the metrics to the platform MBean server.
+     * @param name The name of the crawl.
+     */
+    public void register(final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName newObjectName =
+                    new ObjectName(CrawlMetrics.class.getPackageName() + ":type=CrawlMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(newObjectName)) {
+                server.unregisterMBean(newObjectName);
+            }
+            server.registerMBean(this, newObjectName);
+            objectName = newObjectName;
+        } catch (final Exception e) {
+            logger.warn("Failed to register crawl metrics: {}", name, e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    public void unregister() {
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (final Exception e) {
+            logger.warn("Failed to unregister crawl metrics: {}", objectName, e);
+        }
+        objectName = null;
+    }
+
+    @Override
+    public long getElapsedTime() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+    @Override
+    public long getDocuments() {
+        return documents.sum();
+    }
+
+    @Override
+    public double getDocumentsPerSecond() {
+        final long elapsedTime = getElapsedTime();
+        return elapsedTime > 0 ? getDocuments() * 1000d / elapsedTime : 0;
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getSkipped() {
+        return skipped.sum();
+    }
+
+    @Override
+    public long getPages() {
+        return pages.sum();
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getFetchTime() {
+        return TimeUnit.NANOSECONDS.toMillis(fetchTime.sum());
+    }
+
+    @Override
+    public long getMaxFetchTime() {
+        return TimeUnit.NANOSECONDS.toMillis(maxFetchTime.get());
+    }
+
+    @Override
+    public Map<String, Long> getFetchTimeHistogram() {
+        final Map<String, Long> histogram = new LinkedHashMap<>();
+        for (int i = 0; i < FETCH_TIME_BOUNDS.length; i++) {
+            histogram.put("<=" + FETCH_TIME_BOUNDS[i] + "ms", fetchTimeBuckets[i].sum());
+        }
+        histogram.put(">" + FETCH_TIME_BOUNDS[FETCH_TIME_BOUNDS.length - 1] + "ms", fetchTimeBuckets[FETCH_TIME_BOUNDS.length].sum());
+        return histogram;
+    }
+
+    @Override
+    public long getScriptTime() {
+        return TimeUnit.NANOSECONDS.toMillis(scriptTime.sum());
+    }
+
+    @Override
+    public long getStoreTime() {
+        return TimeUnit.NANOSECONDS.toMillis(storeTime.sum());
+    }
+
+    @Override
+    public long getDeleteRequests() {
+        return deleteRequests.sum();
+    }
+
+    @Override
+    public long getDeleteTime() {
+        return TimeUnit.NANOSECONDS.toMillis(deleteTime.sum());
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Summarizes the metrics as key=value pairs.
+     * @return The summary.
+     */
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder(256);
+        buf.append("elapsed_ms=").append(getElapsedTime());
+        buf.append(" docs=").append(getDocuments());
+        buf.append(" docs_per_sec=").append(String.format(Locale.ROOT, "%.1f", getDocumentsPerSecond()));
+        buf.append(" failures=").append(getFailures());
+        buf.append(" skipped=").append(getSkipped());
+        buf.append(" pages=").append(getPages());
+        buf.append(" bytes=").append(getBytes());
+        buf.append(" fetch_ms=").append(getFetchTime());
+        buf.append(" fetch_max_ms=").append(getMaxFetchTime());
+        buf.append(" script_ms=").append(getScriptTime());
+        buf.append(" store_ms=").append(getStoreTime());
+        buf.append(" delete_requests=").append(getDeleteRequests());
+        buf.append(" delete_ms=").append(getDeleteTime());
+        buf.append(" retries=").append(getRetries());
+        buf.append(" fetch_histogram=");
+        boolean first = true;
+        for (final Map.Entry<String, Long> entry : getFetchTimeHistogram().entrySet()) {
+            buf.append(first ? "" : ",").append(entry.getKey()).append(':').append(entry.getValue());
+            first = false;
+        }
+        return buf.toString();
+    }
+}
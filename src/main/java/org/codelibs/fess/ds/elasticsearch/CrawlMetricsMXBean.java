@@ -0,0 +1,114 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Map;
+
+/**
+ * Management interface of the metrics of a crawl.
+ */
+public interface CrawlMetricsMXBean {
+
+    /**
+     * Gets the elapsed time of the crawl.
+     * @return The elapsed time in milliseconds.
+     */
+    long getElapsedTime();
+
+    /**
+     * Gets the number of stored documents.
+     * @return The number of documents.
+     */
+    long getDocuments();
+
+    /**
+     * Gets the stored documents per second.
+     * @return The documents per second.
+     */
+    double getDocumentsPerSecond();
+
+    /**
+     * Gets the number of documents which failed to be stored.
+     * @return The number of failures.
+     */
+    long getFailures();
+
+    /**
+     * Gets the number of documents skipped because they are unchanged since the previous crawl.
+     * @return The number of documents.
+     */
+    long getSkipped();
+
+    /**
+     * Gets the number of fetched pages.
+     * @return The number of pages.
+     */
+    long getPages();
+
+    /**
+     * Gets the fetched source bytes.
+     * @return The bytes.
+     */
+    long getBytes();
+
+    /**
+     * Gets the total time to fetch pages.
+     * @return The time in milliseconds.
+     */
+    long getFetchTime();
+
+    /**
+     * Gets the maximum time to fetch a page.
+     * @return The time in milliseconds.
+     */
+    long getMaxFetchTime();
+
+    /**
+     * Gets the histogram of the times to fetch pages.
+     * @return The numbers of pages by the upper bounds of the times, like {@code <=100ms}.
+     */
+    Map<String, Long> getFetchTimeHistogram();
+
+    /**
+     * Gets the total time to evaluate scripts.
+     * @return The time in milliseconds.
+     */
+    long getScriptTime();
+
+    /**
+     * Gets the total time to store documents by the callback.
+     * @return The time in milliseconds.
+     */
+    long getStoreTime();
+
+    /**
+     * Gets the number of bulk requests to delete processed documents.
+     * @return The number of requests.
+     */
+    long getDeleteRequests();
+
+    /**
+     * Gets the total time of bulk requests to delete processed documents.
+     * @return The time in milliseconds.
+     */
+    long getDeleteTime();
+
+    /**
+     * Gets the number of retries of requests rejected by the source cluster.
+     * @return The number of retries.
+     */
+    long getRetries();
+}
@@ -15,9 +15,25 @@
  */
 package org.codelibs.fess.ds.elasticsearch;
 
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import org.apache.logging.log4j.LogManager;
@@ -30,6 +46,7 @@ import org.codelibs.fess.crawler.exception.CrawlingAccessException;
 import org.codelibs.fess.crawler.exception.MultipleCrawlingAccessException;
 import org.codelibs.fess.ds.AbstractDataStore;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.ds.callback.IndexUpdateCallbackImpl;
 import org.codelibs.fess.entity.DataStoreParams;
 import org.codelibs.fess.exception.DataStoreCrawlingException;
 import org.codelibs.fess.exception.DataStoreException;
@@ -38,14 +55,26 @@ import org.codelibs.fess.helper.CrawlerStatsHelper.StatsAction;
 import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
 import org.codelibs.fess.opensearch.config.exentity.DataConfig;
 import org.codelibs.fess.util.ComponentUtil;
-import org.opensearch.action.bulk.BulkRequestBuilder;
-import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.admin.indices.settings.get.GetSettingsResponse;
+import org.opensearch.action.bulk.BackoffPolicy;
+import org.opensearch.action.main.MainAction;
+import org.opensearch.action.main.MainRequest;
+import org.opensearch.action.main.MainResponse;
+import org.opensearch.action.search.CreatePitAction;
+import org.opensearch.action.search.CreatePitRequest;
+import org.opensearch.action.search.DeletePitAction;
+import org.opensearch.action.search.DeletePitRequest;
 import org.opensearch.action.search.SearchRequestBuilder;
-import org.opensearch.action.search.SearchResponse;
+import org.opensearch.cluster.metadata.IndexMetadata;
 import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.index.query.QueryBuilder;
 import org.opensearch.index.query.QueryBuilders;
 import org.opensearch.search.SearchHit;
-import org.opensearch.search.SearchHits;
+import org.opensearch.search.fetch.subphase.FieldAndFormat;
+import org.opensearch.search.slice.SliceBuilder;
+import org.opensearch.search.sort.SortOrder;
 import org.opensearch.transport.client.Client;
 
 /**
@@ -90,6 +119,245 @@ public class ElasticsearchDataStore extends AbstractDataStore {
      */
     protected static final String INDEX = "index";
 
+    /**
+     * The number of slices to split the scroll into. Each slice is crawled by its own thread.
+     */
+    protected static final String SLICES = "slices";
+
+    /**
+     * The pagination mode: {@code scroll} (default) or {@code pit}.
+     * The {@code pit} mode uses the point in time API of OpenSearch, so it cannot be used with an Elasticsearch cluster.
+     */
+    protected static final String PAGINATION = "pagination";
+
+    /**
+     * The pagination mode which uses a point in time with search_after.
+     */
+    protected static final String PAGINATION_PIT = "pit";
+
+    /**
+     * The keep alive of the point in time.
+     */
+    protected static final String PIT_KEEP_ALIVE = "pit.keep.alive";
+
+    /**
+     * The comma-separated sort fields for the point in time pagination, like {@code updated_at:desc,_shard_doc}.
+     */
+    protected static final String PIT_SORT = "pit.sort";
+
+    /**
+     * The number of pages fetched in the background while the current page is processed. 0 disables prefetching.
+     */
+    protected static final String PREFETCH_PAGES = "prefetch.pages";
+
+    /**
+     * The number of threads to process the hits of a page concurrently in each slice. 1 processes them sequentially.
+     */
+    protected static final String TRANSFORM_THREADS = "transform.threads";
+
+    /**
+     * If true, only the source fields referenced by the scripts are parsed when all references are property paths.
+     */
+    protected static final String SOURCE_EXTRACT_FIELDS = "source.extract.fields";
+
+    /**
+     * If true (default), the _source is filtered to the fields referenced by the scripts unless the fields parameter is set.
+     */
+    protected static final String SOURCE_AUTO_INCLUDES = "source.auto.includes";
+
+    /**
+     * If true, the page size is tuned between size.min and size.max. It requires the point in time pagination.
+     */
+    protected static final String SIZE_ADAPTIVE = "size.adaptive";
+
+    /**
+     * The minimum page size for the adaptive page size.
+     */
+    protected static final String SIZE_MIN = "size.min";
+
+    /**
+     * The maximum page size for the adaptive page size.
+     */
+    protected static final String SIZE_MAX = "size.max";
+
+    /**
+     * The target fetch latency in milliseconds for the adaptive page size.
+     */
+    protected static final String SIZE_TARGET_LATENCY = "size.target.latency";
+
+    /**
+     * The maximum bytes of a page for the adaptive page size.
+     */
+    protected static final String SIZE_MAX_BYTES = "size.max.bytes";
+
+    /**
+     * If true, processed documents are deleted from the source index.
+     */
+    protected static final String DELETE_PROCESSED_DOC = "delete.processed.doc";
+
+    /**
+     * The number of delete actions to flush a bulk request.
+     */
+    protected static final String DELETE_BULK_ACTIONS = "delete.bulk.actions";
+
+    /**
+     * The size of delete actions to flush a bulk request, like {@code 5mb}.
+     */
+    protected static final String DELETE_BULK_SIZE = "delete.bulk.size";
+
+    /**
+     * The interval to flush a bulk request of delete actions.
+     */
+    protected static final String DELETE_FLUSH_INTERVAL = "delete.flush.interval";
+
+    /**
+     * The number of concurrent in-flight bulk requests of delete actions.
+     */
+    protected static final String DELETE_CONCURRENT_REQUESTS = "delete.concurrent.requests";
+
+    /**
+     * The number of retries for rejected delete actions.
+     */
+    protected static final String DELETE_RETRY_COUNT = "delete.retry.count";
+
+    /**
+     * The initial delay of the exponential backoff for rejected delete actions.
+     */
+    protected static final String DELETE_RETRY_DELAY = "delete.retry.delay";
+
+    /**
+     * If true, the sort values of the last stored hit are saved per slice and the next crawl resumes after them.
+     */
+    protected static final String CHECKPOINT_ENABLED = "checkpoint.enabled";
+
+    /**
+     * The directory of the checkpoint and watermark files.
+     */
+    protected static final String CHECKPOINT_DIR = "checkpoint.dir";
+
+    /**
+     * The minimum interval between checkpoints of a slice.
+     */
+    protected static final String CHECKPOINT_INTERVAL = "checkpoint.interval";
+
+    /**
+     * The field of the watermark for incremental crawls, like a last modified timestamp.
+     * It requires delete.old.docs=false, because Fess deletes the documents which are not stored by the crawl.
+     */
+    protected static final String INCREMENTAL_FIELD = "incremental.field";
+
+    /**
+     * If true, documents without the incremental field are fetched by every incremental crawl.
+     * Otherwise they are fetched only by the first crawl, because the range on the watermark does not match them.
+     */
+    protected static final String INCREMENTAL_INCLUDE_MISSING = "incremental.include.missing";
+
+    /**
+     * The parameter of Fess which deletes the documents not stored by the crawl unless it is false.
+     */
+    protected static final String DELETE_OLD_DOCS = "delete.old.docs";
+
+    /**
+     * How to split the crawl into independent readers: none, index or shard.
+     */
+    protected static final String SPLIT = "split";
+
+    /**
+     * The split per index.
+     */
+    protected static final String SPLIT_INDEX = "index";
+
+    /**
+     * The split per shard of each index.
+     */
+    protected static final String SPLIT_SHARD = "shard";
+
+    /**
+     * The maximum number of readers crawled in parallel.
+     */
+    protected static final String CONCURRENCY = "concurrency";
+
+    /**
+     * The maximum documents per second processed by all readers of a crawl.
+     */
+    protected static final String RATE_DOCS = "rate.docs";
+
+    /**
+     * The maximum source bytes per second processed by all readers of a crawl, like {@code 20mb}.
+     */
+    protected static final String RATE_BYTES = "rate.bytes";
+
+    /**
+     * The seconds of the rates which can be consumed at once.
+     */
+    protected static final String RATE_BURST = "rate.burst";
+
+    /**
+     * The number of retries of requests rejected by the source cluster allowed for a crawl. The default is 10.
+     * The back-pressure is enabled only if one of the backoff parameters is set, and rejected requests fail the crawl otherwise.
+     */
+    protected static final String BACKOFF_BUDGET = "backoff.budget";
+
+    /**
+     * The initial delay before retrying a rejected request. The default is 1s.
+     */
+    protected static final String BACKOFF_DELAY = "backoff.delay";
+
+    /**
+     * The maximum delay before retrying a rejected request. The default is 1m.
+     */
+    protected static final String BACKOFF_MAX_DELAY = "backoff.max.delay";
+
+    /**
+     * The latency of a request regarded as a spike of the load of the source cluster, which halves the concurrent requests.
+     * Latency spikes are not detected unless it is set.
+     */
+    protected static final String BACKOFF_LATENCY_THRESHOLD = "backoff.latency.threshold";
+
+    /**
+     * If true, the scripts of a page are evaluated before its documents are stored at once by a {@link BatchIndexUpdateCallback}.
+     * It is ignored for a callback which is not batch-aware, because storing its documents one by one gains nothing from a batch.
+     */
+    protected static final String STORE_BATCH = "store.batch";
+
+    /**
+     * The fingerprint to skip documents unchanged since the previous crawl: version, seq_no or source.
+     * The source mode hashes the fetched source and fields, which are what the scripts can read.
+     * It requires delete.old.docs=false, because the skipped documents are not stored again.
+     */
+    protected static final String FINGERPRINT = "fingerprint";
+
+    /**
+     * The doc value fields to fetch, separated by commas. A field may have a format after a colon, like {@code updated_at:epoch_millis}.
+     */
+    protected static final String DOCVALUE_FIELDS = "docvalue.fields";
+
+    /**
+     * The stored fields to fetch, separated by commas.
+     */
+    protected static final String STORED_FIELDS = "stored.fields";
+
+    /**
+     * If true, the client requests compressed responses. The default is true.
+     */
+    protected static final String COMPRESSION = "compression";
+
+    /**
+     * The client setting of the compression, which takes precedence over the compression parameter.
+     */
+    protected static final String HTTP_COMPRESSION = "http.compression";
+
+    /**
+     * The prefix for the parameters of a source cluster, like {@code cluster.<name>.settings.http.hosts}.
+     * Each cluster is crawled with the other parameters overridden by its own ones.
+     */
+    protected static final String CLUSTER_PREFIX = "cluster.";
+
+    /**
+     * The parameter and the script binding of the alias of the source cluster.
+     */
+    protected static final String CLUSTER_ALIAS = "clusterAlias";
+
     /**
      * The prefix for Elasticsearch settings.
      */
@@ -100,6 +368,11 @@ public class ElasticsearchDataStore extends AbstractDataStore {
      */
     protected static final String SETTINGS_PATTERN = "^settings\\.";
 
+    /**
+     * The pool of clients shared by crawls, or null to create a client for each crawl.
+     */
+    protected HttpClientPool clientPool;
+
     /**
      * Constructor.
      */
@@ -116,25 +389,120 @@ public class ElasticsearchDataStore extends AbstractDataStore {
     protected void storeData(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
             final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
 
+        final Map<String, DataStoreParams> clusterParamMap = getClusterParams(paramMap);
+        if (clusterParamMap.isEmpty()) {
+            processCluster(dataConfig, callback, paramMap, scriptMap, defaultDataMap);
+            return;
+        }
+
+        logger.info("Crawling clusters: {}", clusterParamMap.keySet());
+        final ExecutorService executorService = Executors.newFixedThreadPool(clusterParamMap.size());
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (final DataStoreParams clusterParams : clusterParamMap.values()) {
+                futures.add(executorService.submit(() -> processCluster(dataConfig, callback, clusterParams, scriptMap, defaultDataMap)));
+            }
+            waitFor(futures);
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets the parameters of the source clusters declared by the parameters prefixed with cluster.
+     * The parameters of a cluster are the common parameters overridden by the ones of the cluster, and its alias.
+     * @param paramMap The parameters for the data store.
+     * @return The parameters by the cluster names, or an empty map if no cluster is declared.
+     */
+    protected Map<String, DataStoreParams> getClusterParams(final DataStoreParams paramMap) {
+        final Map<String, Map<String, Object>> overrideMap = new TreeMap<>();
+        final Map<String, Object> commonMap = new LinkedHashMap<>();
+        paramMap.asMap().forEach((key, value) -> {
+            if (!key.startsWith(CLUSTER_PREFIX)) {
+                commonMap.put(key, value);
+                return;
+            }
+            final String name = key.substring(CLUSTER_PREFIX.length());
+            final int pos = name.indexOf('.');
+            if (pos <= 0 || pos == name.length() - 1) {
+                logger.warn("{} is ignored because it does not have a cluster name and a parameter.", key);
+                return;
+            }
+            overrideMap.computeIfAbsent(name.substring(0, pos), k -> new LinkedHashMap<>()).put(name.substring(pos + 1), value);
+        });
+
+        final Map<String, DataStoreParams> clusterParamMap = new TreeMap<>();
+        overrideMap.forEach((name, overrides) -> {
+            final DataStoreParams clusterParams = new DataStoreParams();
+            commonMap.forEach(clusterParams::put);
+            overrides.forEach(clusterParams::put);
+            clusterParams.put(CLUSTER_ALIAS, name);
+            clusterParamMap.put(name, clusterParams);
+        });
+        return clusterParamMap;
+    }
+
+    /**
+     * Crawls a source cluster with a client created by its settings.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters of the cluster.
+     * @param scriptMap The script map.
+     * @param defaultDataMap The default data map.
+     */
+    protected void processCluster(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+
         final long readInterval = getReadInterval(paramMap);
 
-        final Settings settings = Settings.builder()
+        final Settings settings = createClientSettings(paramMap);
+
+        if (clientPool == null) {
+            try (Client client = new HttpClient(settings, null);) {
+                processData(dataConfig, callback, paramMap, scriptMap, defaultDataMap, readInterval, client);
+            }
+            return;
+        }
+
+        try (HttpClientPool.Lease lease = clientPool.acquire(settings)) {
+            processData(dataConfig, callback, paramMap, scriptMap, defaultDataMap, readInterval, lease.getClient());
+        }
+    }
+
+    /**
+     * Creates the settings of the client from the parameters prefixed with settings.
+     * The client requests compressed responses unless the compression parameter is false.
+     * @param paramMap The parameters for the data store.
+     * @return The settings.
+     */
+    protected Settings createClientSettings(final DataStoreParams paramMap) {
+        final Settings.Builder builder = Settings.builder()
                 .putProperties(paramMap.asMap()
                         .entrySet()
                         .stream()
                         .filter(e -> e.getKey().startsWith(SETTINGS_PREFIX))
                         .collect(Collectors.toMap(e -> e.getKey().replaceFirst(SETTINGS_PATTERN, StringUtil.EMPTY),
                                 e -> (String) e.getValue())),
-                        s -> s)
-                .build();
-
-        try (Client client = new HttpClient(settings, null);) {
-            processData(dataConfig, callback, paramMap, scriptMap, defaultDataMap, readInterval, client);
+                        s -> s);
+        if (builder.get(HTTP_COMPRESSION) == null) {
+            builder.put(HTTP_COMPRESSION, Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(COMPRESSION, Constants.TRUE).trim()));
         }
+        return builder.build();
+    }
+
+    /**
+     * Sets the pool of clients shared by crawls. If it is not set, a client is created for each crawl.
+     * @param clientPool The client pool.
+     */
+    public void setClientPool(final HttpClientPool clientPool) {
+        this.clientPool = clientPool;
     }
 
     /**
      * Process the data from Elasticsearch.
+     * If the slices parameter is greater than 1, the scroll is split into sliced scrolls and they are crawled in parallel.
+     * If the split parameter is index or shard, the scroll is also split per index or per shard.
+     * If the pagination parameter is pit, a point in time is created and deleted after all slices are crawled.
      * @param dataConfig The data configuration.
      * @param callback The callback to index the data.
      * @param paramMap The parameters for the data store.
@@ -145,156 +513,1362 @@ public class ElasticsearchDataStore extends AbstractDataStore {
      */
     protected void processData(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
             final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap, final long readInterval, final Client client) {
-
-        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
-        final boolean deleteProcessedDoc = Constants.TRUE.equalsIgnoreCase(paramMap.getAsString("delete.processed.doc", Constants.FALSE));
-        final String[] indices = paramMap.getAsString(INDEX, "_all").trim().split(",");
-        final String scroll = paramMap.getAsString(SCROLL, "1m").trim();
-        final String timeout = paramMap.getAsString(TIMEOUT, "1m").trim();
-        final SearchRequestBuilder builder = client.prepareSearch(indices);
-        if (paramMap.containsKey(SIZE)) {
-            builder.setSize(Integer.parseInt(paramMap.getAsString(SIZE)));
-        }
-        if (paramMap.containsKey(FIELDS)) {
-            builder.setFetchSource(paramMap.getAsString(FIELDS).trim().split(","), null);
-        }
-        builder.setQuery(QueryBuilders.wrapperQuery(paramMap.getAsString(QUERY, "{\"match_all\":{}}").trim()));
-        builder.setScroll(scroll);
-        builder.setPreference(paramMap.getAsString(PREFERENCE, Constants.SEARCH_PREFERENCE_LOCAL).trim());
         final String scriptType = getScriptType(paramMap);
+        final ScriptMapEvaluator scriptMapEvaluator =
+                new ScriptMapEvaluator(scriptMap, (script, bindings) -> convertValue(scriptType, script, bindings));
+        if (Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(SOURCE_EXTRACT_FIELDS, Constants.FALSE))
+                && !scriptMapEvaluator.enableSourceFieldExtraction()) {
+            logger.info("{} is ignored because scripts may use the whole source.", SOURCE_EXTRACT_FIELDS);
+        }
+        final Map<String, Object> baseBindings = createBaseBindings(dataConfig, paramMap);
+        final String pitId = PAGINATION_PIT.equalsIgnoreCase(paramMap.getAsString(PAGINATION, StringUtil.EMPTY).trim())
+                ? createPit(client, paramMap) : null;
+        final PointInTime pointInTime = pitId != null ? new PointInTime(pitId) : null;
+        final CrawlMetrics metrics = new CrawlMetrics();
+        metrics.register(getCheckpointKey(dataConfig, paramMap, null));
+        ProcessedDocDeleter processedDocDeleter = null;
+        CheckpointWriter checkpointWriter = null;
         try {
-            SearchResponse response = builder.execute().actionGet(timeout);
-
-            String scrollId = response.getScrollId();
-            while (scrollId != null) {
-                final SearchHits searchHits = response.getHits();
-                final SearchHit[] hits = searchHits.getHits();
-                if (hits.length == 0) {
-                    scrollId = null;
-                    break;
-                }
-
-                boolean loop = true;
-                final BulkRequestBuilder bulkRequest = deleteProcessedDoc ? client.prepareBulk() : null;
-                for (final SearchHit hit : hits) {
-                    if (!alive || !loop) {
-                        break;
+            processedDocDeleter = createProcessedDocDeleter(client, paramMap, metrics);
+            // checkpoints, watermarks and fingerprints must not get ahead of the index
+            final boolean flushable = canFlush(callback);
+            if (!flushable && (Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(CHECKPOINT_ENABLED, Constants.FALSE).trim())
+                    || StringUtil.isNotBlank(paramMap.getAsString(INCREMENTAL_FIELD)) || getFingerprintMode(paramMap) != null)) {
+                logger.warn("{}, {} and {} are ignored because {} cannot index stored documents in the middle of a crawl.",
+                        CHECKPOINT_ENABLED, INCREMENTAL_FIELD, FINGERPRINT, callback.getClass().getName());
+            }
+            if (isBatchStore(paramMap) && !(callback instanceof BatchIndexUpdateCallback)) {
+                logger.warn("{} is ignored because {} cannot store documents at once.", STORE_BATCH, callback.getClass().getName());
+            }
+            checkpointWriter = flushable ? createCheckpointWriter(paramMap, pitId) : null;
+            final Watermark watermark = flushable ? createWatermark(dataConfig, paramMap) : null;
+            final FingerprintCache fingerprintCache =
+                    flushable ? createFingerprintCache(dataConfig, paramMap, scriptMap, defaultDataMap) : null;
+            final RateLimiter rateLimiter = createRateLimiter(paramMap);
+            // the rate limiter paces pages instead of sleeping after each hit
+            final long hitInterval = rateLimiter != null ? 0 : readInterval;
+            final ProcessedDocDeleter deleter = processedDocDeleter;
+            final CheckpointWriter writer = checkpointWriter;
+            final List<SearchTarget> targets = createSearchTargets(client, paramMap, pitId);
+            final int concurrency = Math.min(targets.size(), getConcurrency(paramMap));
+            final BackPressureController backPressureController = createBackPressureController(paramMap, concurrency, metrics);
+            if (targets.size() == 1) {
+                processSlice(dataConfig, callback, paramMap, scriptMapEvaluator, baseBindings, defaultDataMap, hitInterval, client,
+                        targets.get(0), pointInTime, deleter, writer, watermark, fingerprintCache, rateLimiter, backPressureController,
+                        metrics);
+            } else {
+                logger.info("Crawling {} targets with {} threads.", targets.size(), concurrency);
+                final ExecutorService executorService = Executors.newFixedThreadPool(concurrency);
+                try {
+                    final List<Future<?>> futures = new ArrayList<>(targets.size());
+                    for (final SearchTarget target : targets) {
+                        // the stats key is put into the parameters for each document, so each target needs its own copy
+                        final DataStoreParams targetParamMap = paramMap.newInstance();
+                        futures.add(executorService.submit(() -> processSlice(dataConfig, callback, targetParamMap, scriptMapEvaluator,
+                                baseBindings, defaultDataMap, hitInterval, client, target, pointInTime, deleter, writer, watermark,
+                                fingerprintCache, rateLimiter, backPressureController, metrics)));
                     }
+                    waitFor(futures);
+                } finally {
+                    executorService.shutdownNow();
+                }
+            }
 
-                    final StatsKeyObject statsKey = new StatsKeyObject(hit.getId());
-                    paramMap.put(Constants.CRAWLER_STATS_KEY, statsKey);
-                    final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
-                    try {
-                        crawlerStatsHelper.begin(statsKey);
-                        final Map<String, Object> resultMap = new LinkedHashMap<>(paramMap.asMap());
-                        resultMap.put("index", hit.getIndex());
-                        resultMap.put("id", hit.getId());
-                        resultMap.put("version", hit.getVersion());
-                        resultMap.put("clusterAlias", hit.getClusterAlias());
-                        resultMap.put("primaryTerm", hit.getPrimaryTerm());
-                        resultMap.put("score", hit.getScore());
-                        resultMap.put("seqNo", hit.getSeqNo());
-                        resultMap.put("hit", hit);
-                        resultMap.put("source", hit.getSourceAsMap());
-                        resultMap.put("crawlingConfig", dataConfig);
-
-                        crawlerStatsHelper.record(statsKey, StatsAction.PREPARED);
-
-                        if (logger.isDebugEnabled()) {
-                            for (final Map.Entry<String, Object> entry : resultMap.entrySet()) {
-                                logger.debug("{}={}", entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        final Map<String, Object> crawlingContext = new HashMap<>();
-                        crawlingContext.put("doc", dataMap);
-                        resultMap.put("crawlingContext", crawlingContext);
-                        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
-                            final Object convertValue = convertValue(scriptType, entry.getValue(), resultMap);
-                            if (convertValue != null) {
-                                dataMap.put(entry.getKey(), convertValue);
-                            }
-                        }
-
-                        crawlerStatsHelper.record(statsKey, StatsAction.EVALUATED);
-
-                        if (logger.isDebugEnabled()) {
-                            for (final Map.Entry<String, Object> entry : dataMap.entrySet()) {
-                                logger.debug("{}={}", entry.getKey(), entry.getValue());
-                            }
-                        }
-
-                        if (dataMap.get("url") instanceof String statsUrl) {
-                            statsKey.setUrl(statsUrl);
-                        }
-
-                        callback.store(paramMap, dataMap);
-                        crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
-                    } catch (final CrawlingAccessException e) {
-                        logger.warn("Crawling Access Exception at : {}", dataMap, e);
-
-                        Throwable target = e;
-                        if (target instanceof MultipleCrawlingAccessException ex) {
-                            final Throwable[] causes = ex.getCauses();
-                            if (causes.length > 0) {
-                                target = causes[causes.length - 1];
-                            }
-                        }
-
-                        String errorName;
-                        final Throwable cause = target.getCause();
-                        if (cause != null) {
-                            errorName = cause.getClass().getCanonicalName();
-                        } else {
-                            errorName = target.getClass().getCanonicalName();
-                        }
+            if (watermark != null && alive) {
+                saveWatermark(dataConfig, callback, paramMap, watermark);
+            }
+            if (fingerprintCache != null && alive) {
+                saveFingerprintCache(callback, fingerprintCache);
+            }
+            if (processedDocDeleter != null) {
+                // documents which are not deleted are crawled again by the next crawl, so the failure fails this crawl
+                final ProcessedDocDeleter closingDeleter = processedDocDeleter;
+                processedDocDeleter = null;
+                closingDeleter.close();
+            }
+        } finally {
+            if (processedDocDeleter != null) {
+                try {
+                    processedDocDeleter.close();
+                } catch (final DataStoreException e) {
+                    // the crawl has already failed, and its failure is not replaced
+                    logger.warn("Failed to delete processed documents.", e);
+                }
+            }
+            if (checkpointWriter != null) {
+                checkpointWriter.close();
+            }
+            if (pointInTime != null) {
+                // a search may have replaced the point in time with a new one
+                deletePit(client, paramMap, pointInTime.getId());
+            }
+            metrics.unregister();
+            logger.info("Crawl metrics: {}", metrics);
+        }
+    }
 
-                        String url;
-                        if (target instanceof DataStoreCrawlingException dce) {
-                            url = dce.getUrl();
-                            if (dce.aborted()) {
-                                loop = false;
-                            }
-                        } else {
-                            url = hit.getIndex() + "/_doc/" + hit.getId();
-                        }
-                        final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
-                        failureUrlService.store(dataConfig, errorName, url, target);
-                        crawlerStatsHelper.record(statsKey, StatsAction.ACCESS_EXCEPTION);
-                    } catch (final Throwable t) {
-                        logger.warn("Crawling Access Exception at : {}", dataMap, t);
-                        final String url = hit.getIndex() + "/_doc/" + hit.getId();
-                        final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
-                        failureUrlService.store(dataConfig, t.getClass().getCanonicalName(), url, t);
-                        crawlerStatsHelper.record(statsKey, StatsAction.EXCEPTION);
-                    } finally {
-                        crawlerStatsHelper.done(statsKey);
-                    }
+    /**
+     * Creates the deleter of processed documents.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @param metrics The metrics of the crawl.
+     * @return The deleter, or null if processed documents are not deleted.
+     */
+    protected ProcessedDocDeleter createProcessedDocDeleter(final Client client, final DataStoreParams paramMap,
+            final CrawlMetrics metrics) {
+        if (!Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(DELETE_PROCESSED_DOC, Constants.FALSE))) {
+            return null;
+        }
+        final BackoffPolicy backoffPolicy = BackoffPolicy.exponentialBackoff(
+                TimeValue.parseTimeValue(paramMap.getAsString(DELETE_RETRY_DELAY, "1s").trim(), DELETE_RETRY_DELAY),
+                getAsInt(paramMap, DELETE_RETRY_COUNT, 3));
+        return new ProcessedDocDeleter(client, getAsInt(paramMap, DELETE_BULK_ACTIONS, 1000),
+                ByteSizeValue.parseBytesSizeValue(paramMap.getAsString(DELETE_BULK_SIZE, "5mb").trim(), DELETE_BULK_SIZE),
+                TimeValue.parseTimeValue(paramMap.getAsString(DELETE_FLUSH_INTERVAL, "10s").trim(), DELETE_FLUSH_INTERVAL),
+                getAsInt(paramMap, DELETE_CONCURRENT_REQUESTS, 1), backoffPolicy,
+                TimeValue.parseTimeValue(getTimeout(paramMap), TIMEOUT), metrics);
+    }
 
-                    if (bulkRequest != null) {
-                        bulkRequest.add(client.prepareDelete().setIndex(hit.getIndex()).setId(hit.getId()));
-                    }
+    /**
+     * Creates the targets crawled by independent readers.
+     * Each index or shard is split into the slices, and indices are resolved from wildcards and aliases.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @param pitId The point in time ID, or null if the scroll pagination is used.
+     * @return The targets.
+     */
+    protected List<SearchTarget> createSearchTargets(final Client client, final DataStoreParams paramMap, final String pitId) {
+        final int slices = getSlices(paramMap);
+        final String split = getSplit(paramMap);
+        final List<SearchTarget> targets = new ArrayList<>();
+        if (split == null) {
+            addSearchTargets(targets, null, -1, slices);
+            return targets;
+        }
+        if (pitId != null) {
+            logger.warn("{} is ignored because a point in time cannot target indices or shards.", SPLIT);
+            addSearchTargets(targets, null, -1, slices);
+            return targets;
+        }
 
-                    if (readInterval > 0) {
-                        sleep(readInterval);
-                    }
+        for (final Map.Entry<String, Integer> entry : getNumberOfShards(client, paramMap).entrySet()) {
+            final String[] indices = { entry.getKey() };
+            if (SPLIT_SHARD.equals(split)) {
+                for (int shard = 0; shard < entry.getValue(); shard++) {
+                    addSearchTargets(targets, indices, shard, slices);
                 }
+            } else {
+                addSearchTargets(targets, indices, -1, slices);
+            }
+        }
+        if (targets.isEmpty()) {
+            throw new DataStoreException("No indices found for " + String.join(",", getIndices(paramMap)));
+        }
+        return targets;
+    }
 
-                if (bulkRequest != null && bulkRequest.numberOfActions() > 0) {
-                    final BulkResponse bulkResponse = bulkRequest.execute().actionGet(timeout);
-                    if (bulkResponse.hasFailures()) {
-                        logger.warn(bulkResponse.buildFailureMessage());
-                    }
-                }
+    /**
+     * Adds the targets of the slices of indices or a shard.
+     * @param targets The targets.
+     * @param indices The indices, or null to search the indices of the parameters.
+     * @param shard The shard, or -1 to search all shards.
+     * @param slices The number of slices.
+     */
+    protected void addSearchTargets(final List<SearchTarget> targets, final String[] indices, final int shard, final int slices) {
+        if (slices <= 1) {
+            targets.add(new SearchTarget(indices, shard, null));
+            return;
+        }
+        for (int i = 0; i < slices; i++) {
+            targets.add(new SearchTarget(indices, shard, new SliceBuilder(i, slices)));
+        }
+    }
 
-                if (!alive) {
-                    break;
-                }
-                response = client.prepareSearchScroll(scrollId).setScroll(scroll).execute().actionGet(timeout);
-                scrollId = response.getScrollId();
+    /**
+     * Resolves the indices of the parameters, including wildcards and aliases, to their numbers of shards.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @return The numbers of shards sorted by index names.
+     */
+    protected Map<String, Integer> getNumberOfShards(final Client client, final DataStoreParams paramMap) {
+        final String[] indices = getIndices(paramMap);
+        try {
+            final GetSettingsResponse response =
+                    client.admin().indices().prepareGetSettings(indices).execute().actionGet(getTimeout(paramMap));
+            final Map<String, Integer> numberOfShards = new TreeMap<>();
+            response.getIndexToSettings()
+                    .forEach((index, settings) -> numberOfShards.put(index, settings.getAsInt(IndexMetadata.SETTING_NUMBER_OF_SHARDS, 1)));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Resolved {} to {}", String.join(",", indices), numberOfShards);
             }
+            return numberOfShards;
         } catch (final Exception e) {
-            throw new DataStoreException("Failed to crawl data when acessing elasticsearch.", e);
+            throw new DataStoreException("Failed to resolve indices: " + String.join(",", indices), e);
+        }
+    }
+
+    /**
+     * Gets the maximum number of readers crawled in parallel.
+     * It defaults to the number of slices, or the number of processors if the crawl is split per index or shard.
+     * @param paramMap The parameters for the data store.
+     * @return The concurrency.
+     */
+    protected int getConcurrency(final DataStoreParams paramMap) {
+        final int defaultValue = getSplit(paramMap) == null ? getSlices(paramMap) : Runtime.getRuntime().availableProcessors();
+        return Math.max(1, getAsInt(paramMap, CONCURRENCY, defaultValue));
+    }
+
+    /**
+     * Gets the split mode from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return {@code index} or {@code shard}, or null if the crawl is not split.
+     */
+    protected String getSplit(final DataStoreParams paramMap) {
+        final String split = paramMap.getAsString(SPLIT, StringUtil.EMPTY).trim();
+        if (SPLIT_INDEX.equalsIgnoreCase(split)) {
+            return SPLIT_INDEX;
+        }
+        if (SPLIT_SHARD.equalsIgnoreCase(split)) {
+            return SPLIT_SHARD;
+        }
+        return null;
+    }
+
+    /**
+     * Creates the writer of checkpoints.
+     * Checkpoints require the point in time pagination sorted by stable fields, because search_after values of _shard_doc
+     * are only valid for the point in time which returned them.
+     * @param paramMap The parameters for the data store.
+     * @param pitId The point in time ID, or null if the scroll pagination is used.
+     * @return The writer, or null if checkpoints are disabled.
+     */
+    protected CheckpointWriter createCheckpointWriter(final DataStoreParams paramMap, final String pitId) {
+        if (!Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(CHECKPOINT_ENABLED, Constants.FALSE).trim())) {
+            return null;
+        }
+        if (pitId == null) {
+            logger.warn("{} is ignored because a scroll cannot be resumed. Use {}={}.", CHECKPOINT_ENABLED, PAGINATION, PAGINATION_PIT);
+            return null;
+        }
+        if (paramMap.getAsString(PIT_SORT, "_shard_doc").contains("_shard_doc")) {
+            logger.warn("{} is ignored because _shard_doc cannot be resumed by another point in time. Set {} to unique fields.",
+                    CHECKPOINT_ENABLED, PIT_SORT);
+            return null;
+        }
+        return new CheckpointWriter(createCheckpointStore(paramMap));
+    }
+
+    /**
+     * Creates the store of checkpoints.
+     * @param paramMap The parameters for the data store.
+     * @return The checkpoint store.
+     */
+    protected CheckpointStore createCheckpointStore(final DataStoreParams paramMap) {
+        return new FileCheckpointStore(getCheckpointDirectory(paramMap));
+    }
+
+    /**
+     * Gets the directory of checkpoints, watermarks and fingerprints.
+     * @param paramMap The parameters for the data store.
+     * @return The directory.
+     */
+    protected Path getCheckpointDirectory(final DataStoreParams paramMap) {
+        final String dir = paramMap.getAsString(CHECKPOINT_DIR);
+        return StringUtil.isNotBlank(dir) ? Paths.get(dir.trim()) : Paths.get(System.getProperty("java.io.tmpdir"), "fess-ds-checkpoint");
+    }
+
+    /**
+     * Gets the key of the checkpoint of a slice.
+     * The key of a source cluster ends with its alias so that clusters have their own checkpoints.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the data store.
+     * @param slice The slice to crawl, or null if the search is not sliced.
+     * @return The key.
+     */
+    protected String getCheckpointKey(final DataConfig dataConfig, final DataStoreParams paramMap, final SliceBuilder slice) {
+        String id = dataConfig.getId() != null ? dataConfig.getId() : dataConfig.getName();
+        final String clusterAlias = paramMap.getAsString(CLUSTER_ALIAS);
+        if (StringUtil.isNotBlank(clusterAlias)) {
+            id = id + "_" + clusterAlias;
+        }
+        if (slice == null) {
+            return id;
+        }
+        return id + "_" + slice.getId() + "_" + slice.getMax();
+    }
+
+    /**
+     * Creates the rate limiter shared by all readers of a crawl.
+     * @param paramMap The parameters for the data store.
+     * @return The rate limiter, or null if the rates are not limited.
+     */
+    protected RateLimiter createRateLimiter(final DataStoreParams paramMap) {
+        final int docsPerSecond = getAsInt(paramMap, RATE_DOCS, 0);
+        final String bytes = paramMap.getAsString(RATE_BYTES);
+        final long bytesPerSecond =
+                StringUtil.isNotBlank(bytes) ? ByteSizeValue.parseBytesSizeValue(bytes.trim(), RATE_BYTES).getBytes() : 0;
+        if (docsPerSecond <= 0 && bytesPerSecond <= 0) {
+            return null;
+        }
+        if (StringUtil.isNotBlank(paramMap.getAsString("readInterval"))) {
+            logger.info("readInterval is ignored because {} or {} is set.", RATE_DOCS, RATE_BYTES);
+        }
+        return new RateLimiter(docsPerSecond, bytesPerSecond, getAsInt(paramMap, RATE_BURST, 1));
+    }
+
+    /**
+     * Creates the controller which adapts all readers of a crawl to the load of the source cluster.
+     * @param paramMap The parameters for the data store.
+     * @param concurrency The number of readers crawled in parallel.
+     * @param metrics The metrics of the crawl.
+     * @return The controller, or null if no backoff parameters are set and rejected requests fail fast.
+     */
+    protected BackPressureController createBackPressureController(final DataStoreParams paramMap, final int concurrency,
+            final CrawlMetrics metrics) {
+        if (!paramMap.containsKey(BACKOFF_BUDGET) && !paramMap.containsKey(BACKOFF_DELAY) && !paramMap.containsKey(BACKOFF_MAX_DELAY)
+                && !paramMap.containsKey(BACKOFF_LATENCY_THRESHOLD)) {
+            return null;
+        }
+        return new BackPressureController(concurrency, getAsInt(paramMap, BACKOFF_BUDGET, 10),
+                TimeValue.parseTimeValue(paramMap.getAsString(BACKOFF_DELAY, "1s").trim(), BACKOFF_DELAY).millis(),
+                TimeValue.parseTimeValue(paramMap.getAsString(BACKOFF_MAX_DELAY, "1m").trim(), BACKOFF_MAX_DELAY).millis(),
+                TimeValue.parseTimeValue(paramMap.getAsString(BACKOFF_LATENCY_THRESHOLD, "-1").trim(), BACKOFF_LATENCY_THRESHOLD)
+                        .millis(),
+                metrics);
+    }
+
+    /**
+     * Creates the watermark for incremental crawls from the one saved by the previous crawl.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the data store.
+     * @return The watermark, or null if the crawl is not incremental.
+     */
+    protected Watermark createWatermark(final DataConfig dataConfig, final DataStoreParams paramMap) {
+        final String field = paramMap.getAsString(INCREMENTAL_FIELD);
+        if (StringUtil.isBlank(field)) {
+            return null;
+        }
+        if ("_seq_no".equals(field.trim())) {
+            // sequence numbers are only ordered within a shard, and hits do not tell their shards
+            logger.warn("{} is ignored because _seq_no is not comparable across shards.", INCREMENTAL_FIELD);
+            return null;
+        }
+        if (!keepsOldDocs(paramMap)) {
+            // Fess deletes the documents which are not stored by the crawl, so documents before the watermark would be deleted
+            logger.warn("{} is ignored because old documents are deleted after the crawl. Set {}=false.", INCREMENTAL_FIELD,
+                    DELETE_OLD_DOCS);
+            return null;
+        }
+        final Object[] values = createCheckpointStore(paramMap).load(getWatermarkKey(dataConfig, paramMap));
+        final Object lowerBound = values != null && values.length > 0 ? values[0] : null;
+        final boolean includeMissing =
+                Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(INCREMENTAL_INCLUDE_MISSING, Constants.FALSE).trim());
+        if (lowerBound != null) {
+            logger.info("Crawling documents whose {} is not less than {}", field.trim(), lowerBound);
+        } else if (!includeMissing) {
+            logger.warn("Documents without {} are crawled only by this crawl, because the next crawls fetch documents by its range. "
+                    + "Set {}=true to crawl them every time.", field.trim(), INCREMENTAL_INCLUDE_MISSING);
+        }
+        return new Watermark(field.trim(), lowerBound, includeMissing);
+    }
+
+    /**
+     * Checks if the documents which are not stored by the crawl are kept in the index.
+     * The value is compared exactly like Fess does when it decides to delete old documents.
+     * @param paramMap The parameters for the data store.
+     * @return true if the delete.old.docs parameter is false.
+     */
+    protected boolean keepsOldDocs(final DataStoreParams paramMap) {
+        return Constants.FALSE.equals(paramMap.getAsString(DELETE_OLD_DOCS));
+    }
+
+    /**
+     * Saves the watermark after all documents have been stored.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param watermark The watermark.
+     */
+    protected void saveWatermark(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
+            final Watermark watermark) {
+        final Object value = watermark.getValue();
+        if (value == null) {
+            return;
+        }
+        // flush buffered documents so that the watermark never gets ahead of the index
+        flush(callback);
+        createCheckpointStore(paramMap).save(getWatermarkKey(dataConfig, paramMap), new Object[] { value });
+        logger.info("Saved watermark: {}", value);
+    }
+
+    /**
+     * Returns true if the callback can index the stored documents in the middle of a crawl.
+     * The commit of a callback is its last call in general, but the one of the default callback only sends its buffered documents.
+     * @param callback The callback to index the data.
+     * @return True if the callback can be flushed.
+     */
+    protected boolean canFlush(final IndexUpdateCallback callback) {
+        if (callback instanceof final FlushableIndexUpdateCallback flushableCallback) {
+            return flushableCallback.canFlush();
+        }
+        return callback instanceof IndexUpdateCallbackImpl;
+    }
+
+    /**
+     * Indexes the stored documents in the middle of a crawl. The callback must be flushable.
+     * @param callback The callback to index the data.
+     */
+    protected void flush(final IndexUpdateCallback callback) {
+        if (callback instanceof final FlushableIndexUpdateCallback flushableCallback) {
+            flushableCallback.flush();
+        } else if (callback instanceof IndexUpdateCallbackImpl) {
+            callback.commit();
+        } else {
+            throw new IllegalStateException(callback.getClass().getName() + " cannot be flushed.");
+        }
+    }
+
+    /**
+     * Gets the key of the watermark.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the data store.
+     * @return The key.
+     */
+    protected String getWatermarkKey(final DataConfig dataConfig, final DataStoreParams paramMap) {
+        return getCheckpointKey(dataConfig, paramMap, null) + "_watermark";
+    }
+
+    /**
+     * Creates the cache of the fingerprints of the documents indexed by the previous crawl.
+     * The cache is discarded if the scripts or the default values are changed, because unchanged hits may produce other documents.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMap The script map.
+     * @param defaultDataMap The default data map.
+     * @return The cache, or null if unchanged documents are not skipped.
+     */
+    protected FingerprintCache createFingerprintCache(final DataConfig dataConfig, final DataStoreParams paramMap,
+            final Map<String, String> scriptMap, final Map<String, Object> defaultDataMap) {
+        final String mode = getFingerprintMode(paramMap);
+        if (mode == null) {
+            return null;
+        }
+        if (!keepsOldDocs(paramMap)) {
+            // skipped documents keep the segment of the previous crawl, so Fess would delete them as old documents
+            logger.warn("{} is ignored because old documents are deleted after the crawl. Set {}=false.", FINGERPRINT, DELETE_OLD_DOCS);
+            return null;
+        }
+        final String configuration = new TreeMap<>(scriptMap) + "\n" + new TreeMap<>(defaultDataMap);
+        final Path path = getCheckpointDirectory(paramMap).resolve(getCheckpointKey(dataConfig, paramMap, null) + ".fingerprints");
+        final FingerprintCache fingerprintCache = new FingerprintCache(path, mode, configuration);
+        logger.info("Skipping unchanged documents by {}: {}", mode, fingerprintCache);
+        return fingerprintCache;
+    }
+
+    /**
+     * Gets the fingerprint mode from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return The mode, or null if unchanged documents are not skipped.
+     */
+    protected String getFingerprintMode(final DataStoreParams paramMap) {
+        final String mode = paramMap.getAsString(FINGERPRINT);
+        return StringUtil.isNotBlank(mode) ? mode.trim().toLowerCase(Locale.ROOT) : null;
+    }
+
+    /**
+     * Saves the fingerprints after all documents have been stored.
+     * @param callback The callback to index the data.
+     * @param fingerprintCache The cache of fingerprints.
+     */
+    protected void saveFingerprintCache(final IndexUpdateCallback callback, final FingerprintCache fingerprintCache) {
+        // flush buffered documents so that the fingerprints never get ahead of the index
+        flush(callback);
+        fingerprintCache.save();
+        logger.info("Saved fingerprints: {}", fingerprintCache);
+    }
+
+    /**
+     * Creates a point in time for the indices.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @return The point in time ID.
+     */
+    protected String createPit(final Client client, final DataStoreParams paramMap) {
+        validatePitSupport(client, paramMap);
+        final String[] indices = getIndices(paramMap);
+        try {
+            final CreatePitRequest request = new CreatePitRequest(getPitKeepAlive(paramMap), false, indices);
+            final String pitId = client.execute(CreatePitAction.INSTANCE, request).actionGet(getTimeout(paramMap)).getId();
+            if (logger.isDebugEnabled()) {
+                logger.debug("Created point in time {} for {}", pitId, String.join(",", indices));
+            }
+            return pitId;
+        } catch (final Exception e) {
+            throw new DataStoreException("Failed to create point in time for " + String.join(",", indices), e);
+        }
+    }
+
+    /**
+     * Checks that the cluster supports the point in time API used by the pit pagination.
+     * The client calls the endpoints of OpenSearch, which are not available in Elasticsearch.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     */
+    protected void validatePitSupport(final Client client, final DataStoreParams paramMap) {
+        final MainResponse response;
+        try {
+            response = client.execute(MainAction.INSTANCE, new MainRequest()).actionGet(getTimeout(paramMap));
+        } catch (final Exception e) {
+            logger.warn("Failed to check the distribution of the cluster.", e);
+            return;
+        }
+        final String distribution = response.getBuild() != null ? response.getBuild().getDistribution() : null;
+        if (!"opensearch".equalsIgnoreCase(distribution)) {
+            throw new DataStoreException(PAGINATION + "=" + PAGINATION_PIT + " requires OpenSearch, but the distribution of the cluster is "
+                    + distribution + ". Use " + PAGINATION + "=scroll.");
+        }
+    }
+
+    /**
+     * Deletes the point in time.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @param pitId The point in time ID.
+     */
+    protected void deletePit(final Client client, final DataStoreParams paramMap, final String pitId) {
+        try {
+            client.execute(DeletePitAction.INSTANCE, new DeletePitRequest(pitId)).actionGet(getTimeout(paramMap));
+            if (logger.isDebugEnabled()) {
+                logger.debug("Deleted point in time {}", pitId);
+            }
+        } catch (final Exception e) {
+            logger.warn("Failed to delete point in time: {}", pitId, e);
+        }
+    }
+
+    /**
+     * Waits for all tasks to finish and rethrows the first failure.
+     * @param futures The futures of the tasks.
+     */
+    protected void waitFor(final List<Future<?>> futures) {
+        DataStoreException exception = null;
+        for (final Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataStoreException("Interrupted while crawling elasticsearch.", e);
+            } catch (final ExecutionException e) {
+                final Throwable cause = e.getCause();
+                if (exception == null) {
+                    exception = cause instanceof DataStoreException dse ? dse
+                            : new DataStoreException("Failed to crawl data when acessing elasticsearch.", cause);
+                } else {
+                    exception.addSuppressed(cause);
+                }
+            }
+        }
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    /**
+     * Process the data of a search target from Elasticsearch.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param baseBindings The crawl-level script bindings.
+     * @param defaultDataMap The default data map.
+     * @param readInterval The read interval.
+     * @param client The Elasticsearch client.
+     * @param target The target to crawl.
+     * @param pointInTime The point in time shared by all targets, or null if the scroll pagination is used.
+     * @param processedDocDeleter The deleter of processed documents, or null if they are not deleted.
+     * @param checkpointWriter The writer of checkpoints, or null if checkpoints are disabled.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param rateLimiter The rate limiter shared by all readers, or null if the rates are not limited.
+     * @param backPressureController The controller of the load of the source cluster shared by all readers, or null to fail fast.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     */
+    protected void processSlice(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
+            final ScriptMapEvaluator scriptMapEvaluator, final Map<String, Object> baseBindings, final Map<String, Object> defaultDataMap,
+            final long readInterval, final Client client, final SearchTarget target, final PointInTime pointInTime,
+            final ProcessedDocDeleter processedDocDeleter, final CheckpointWriter checkpointWriter, final Watermark watermark,
+            final FingerprintCache fingerprintCache, final RateLimiter rateLimiter, final BackPressureController backPressureController,
+            final CrawlMetrics metrics) {
+
+        final PageSizeController pageSizeController =
+                createPageSizeController(paramMap, pointInTime != null ? pointInTime.getId() : null);
+        final String checkpointKey = getCheckpointKey(dataConfig, paramMap, target.getSlice());
+        final Object[] searchAfter = checkpointWriter != null ? checkpointWriter.load(checkpointKey) : null;
+        if (searchAfter != null) {
+            logger.info("Resuming {} after {}", checkpointKey, Arrays.toString(searchAfter));
+        }
+        final long checkpointInterval =
+                TimeValue.parseTimeValue(paramMap.getAsString(CHECKPOINT_INTERVAL, "10s").trim(), CHECKPOINT_INTERVAL).millis();
+        long checkpointTime = System.currentTimeMillis();
+        long processedCount = 0;
+        final int transformThreads = getAsInt(paramMap, TRANSFORM_THREADS, 1);
+        final ExecutorService transformExecutorService = transformThreads > 1 ? Executors.newFixedThreadPool(transformThreads) : null;
+        try (SearchHitReader reader =
+                createSearchHitReader(client, paramMap, scriptMapEvaluator, target, pointInTime, pageSizeController, searchAfter, watermark,
+                        fingerprintCache, backPressureController, metrics)) {
+            SearchHit[] hits;
+            while (alive && (hits = reader.nextPage()).length > 0) {
+                if (rateLimiter != null) {
+                    final long waitTime = rateLimiter.reserve(hits.length, SearchHitReader.getSourceBytes(hits));
+                    if (waitTime > 0) {
+                        sleep(waitTime);
+                    }
+                }
+                final long startTime = System.currentTimeMillis();
+                final List<SearchHit> processedHits =
+                        processPage(dataConfig, callback, paramMap, scriptMapEvaluator, baseBindings, defaultDataMap, readInterval,
+                                hits, transformExecutorService, watermark, fingerprintCache, metrics);
+                if (pageSizeController != null) {
+                    pageSizeController.onPageProcessed(hits.length, System.currentTimeMillis() - startTime);
+                }
+                processedCount += processedHits.size();
+
+                if (processedDocDeleter != null) {
+                    for (final SearchHit hit : processedHits) {
+                        processedDocDeleter.delete(hit.getIndex(), hit.getId());
+                    }
+                }
+                if (watermark != null && processedHits.size() < hits.length) {
+                    // the skipped hits are fetched again by the next crawl
+                    final Set<SearchHit> processedHitSet = Collections.newSetFromMap(new IdentityHashMap<>());
+                    processedHitSet.addAll(processedHits);
+                    for (final SearchHit hit : hits) {
+                        if (!processedHitSet.contains(hit)) {
+                            watermark.hold(hit);
+                        }
+                    }
+                }
+
+                // a page is checkpointed only if all its hits have been stored
+                if (checkpointWriter != null && processedHits.size() == hits.length
+                        && System.currentTimeMillis() - checkpointTime >= checkpointInterval) {
+                    // flush buffered documents so that the checkpoint never gets ahead of the index
+                    flush(callback);
+                    checkpointWriter.save(checkpointKey, hits[hits.length - 1].getSortValues());
+                    checkpointTime = System.currentTimeMillis();
+                }
+            }
+            if (logger.isDebugEnabled()) {
+                logger.debug("Processed {} documents from {}", processedCount, target);
+            }
+            if (checkpointWriter != null && alive) {
+                // the slice is completed, so the next crawl starts from the beginning
+                checkpointWriter.delete(checkpointKey);
+            }
+        } catch (final Exception e) {
+            throw new DataStoreException("Failed to crawl data when acessing elasticsearch.", e);
+        } finally {
+            if (transformExecutorService != null) {
+                transformExecutorService.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Process the hits of a page.
+     * The rest of the page is skipped when the crawling is stopped or a hit aborts it.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param baseBindings The crawl-level script bindings.
+     * @param defaultDataMap The default data map.
+     * @param readInterval The read interval.
+     * @param hits The hits of the page.
+     * @param executorService The executor service to process the hits concurrently, or null to process them sequentially.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return The processed hits in the page order.
+     */
+    protected List<SearchHit> processPage(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
+            final ScriptMapEvaluator scriptMapEvaluator, final Map<String, Object> baseBindings, final Map<String, Object> defaultDataMap,
+            final long readInterval, final SearchHit[] hits, final ExecutorService executorService, final Watermark watermark,
+            final FingerprintCache fingerprintCache, final CrawlMetrics metrics) {
+        if (isBatchStore(paramMap) && callback instanceof final BatchIndexUpdateCallback batchCallback) {
+            return processBatch(dataConfig, batchCallback, paramMap, scriptMapEvaluator, baseBindings, defaultDataMap, readInterval, hits,
+                    executorService, watermark, fingerprintCache, metrics);
+        }
+
+        final List<SearchHit> processedHits = new ArrayList<>(hits.length);
+        if (executorService == null) {
+            boolean loop = true;
+            for (final SearchHit hit : hits) {
+                if (!alive || !loop) {
+                    break;
+                }
+
+                loop = processHit(dataConfig, callback, paramMap, scriptMapEvaluator, baseBindings, defaultDataMap, hit, watermark,
+                        fingerprintCache, metrics);
+                processedHits.add(hit);
+
+                if (readInterval > 0) {
+                    sleep(readInterval);
+                }
+            }
+            return processedHits;
+        }
+
+        final AtomicBoolean loop = new AtomicBoolean(true);
+        final List<Future<Boolean>> futures = new ArrayList<>(hits.length);
+        for (final SearchHit hit : hits) {
+            futures.add(executorService.submit(() -> {
+                if (!alive || !loop.get()) {
+                    return false;
+                }
+
+                // the stats key is put into the parameters, so each document needs its own copy
+                if (!processHit(dataConfig, callback, paramMap.newInstance(), scriptMapEvaluator, baseBindings, defaultDataMap, hit,
+                        watermark, fingerprintCache, metrics)) {
+                    loop.set(false);
+                }
+
+                if (readInterval > 0) {
+                    sleep(readInterval);
+                }
+                return true;
+            }));
+        }
+        for (int i = 0; i < hits.length; i++) {
+            try {
+                if (futures.get(i).get()) {
+                    processedHits.add(hits[i]);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DataStoreException("Interrupted while processing hits.", e);
+            } catch (final ExecutionException e) {
+                throw new DataStoreException("Failed to process " + hits[i].getIndex() + "/_doc/" + hits[i].getId(), e.getCause());
+            }
+        }
+        return processedHits;
+    }
+
+    /**
+     * Checks if the documents of a page are stored at once.
+     * @param paramMap The parameters for the data store.
+     * @return true if the store.batch parameter is true.
+     */
+    protected boolean isBatchStore(final DataStoreParams paramMap) {
+        return Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(STORE_BATCH, Constants.FALSE));
+    }
+
+    /**
+     * Process the hits of a page and stores their documents at once.
+     * The scripts of all hits are evaluated before the batch is stored, and the failures are recorded per document.
+     * As in {@link #processPage}, the hits after a failure which aborts the page are not processed.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param baseBindings The crawl-level script bindings.
+     * @param defaultDataMap The default data map.
+     * @param readInterval The read interval.
+     * @param hits The hits of the page.
+     * @param executorService The executor service to evaluate the hits concurrently, or null to evaluate them sequentially.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return The processed hits in the page order.
+     */
+    protected List<SearchHit> processBatch(final DataConfig dataConfig, final BatchIndexUpdateCallback callback,
+            final DataStoreParams paramMap, final ScriptMapEvaluator scriptMapEvaluator, final Map<String, Object> baseBindings,
+            final Map<String, Object> defaultDataMap, final long readInterval, final SearchHit[] hits,
+            final ExecutorService executorService, final Watermark watermark, final FingerprintCache fingerprintCache,
+            final CrawlMetrics metrics) {
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        final StatsKeyObject[] statsKeys = new StatsKeyObject[hits.length];
+        @SuppressWarnings("unchecked")
+        final Map<String, Object>[] dataMaps = new Map[hits.length];
+        final boolean[] processed = new boolean[hits.length];
+        final AtomicBoolean loop = new AtomicBoolean(true);
+        int end = hits.length;
+        final IntConsumer evaluator = i -> {
+            if (isUnchanged(hits[i], fingerprintCache, metrics)) {
+                if (watermark != null) {
+                    watermark.update(hits[i]);
+                }
+                processed[i] = true;
+                return;
+            }
+            final StatsKeyObject statsKey = new StatsKeyObject(hits[i].getId());
+            final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
+            statsKeys[i] = statsKey;
+            processed[i] = true;
+            try {
+                crawlerStatsHelper.begin(statsKey);
+                evaluateHit(scriptMapEvaluator, baseBindings, hits[i], statsKey, dataMap, metrics);
+                dataMaps[i] = dataMap;
+            } catch (final Throwable t) {
+                if (watermark != null) {
+                    watermark.hold(hits[i]);
+                }
+                if (!handleFailure(dataConfig, hits[i], statsKey, dataMap, t, metrics)) {
+                    loop.set(false);
+                }
+                crawlerStatsHelper.done(statsKey);
+            }
+
+            if (readInterval > 0) {
+                sleep(readInterval);
+            }
+        };
+
+        try {
+            if (executorService == null) {
+                for (int i = 0; i < hits.length && alive && loop.get(); i++) {
+                    evaluator.accept(i);
+                }
+            } else {
+                final List<Future<?>> futures = new ArrayList<>(hits.length);
+                for (int i = 0; i < hits.length; i++) {
+                    final int index = i;
+                    futures.add(executorService.submit(() -> {
+                        if (alive && loop.get()) {
+                            evaluator.accept(index);
+                        }
+                    }));
+                }
+                waitFor(futures);
+            }
+
+            end = storeBatch(dataConfig, callback, paramMap, hits, statsKeys, dataMaps, watermark, fingerprintCache, metrics);
+        } finally {
+            for (int i = 0; i < hits.length; i++) {
+                if (dataMaps[i] != null) {
+                    crawlerStatsHelper.done(statsKeys[i]);
+                }
+            }
+        }
+
+        final List<SearchHit> processedHits = new ArrayList<>(hits.length);
+        for (int i = 0; i < end; i++) {
+            if (processed[i]) {
+                processedHits.add(hits[i]);
+            }
+        }
+        return processedHits;
+    }
+
+    /**
+     * Stores the evaluated documents of a page at once.
+     * Only the documents which failed are recorded as failures, because the others have been stored.
+     * The results are handled in the page order and stop at the first failure which aborts the page. A batch cannot be cut short,
+     * so the documents after it are left unprocessed like the rest of an aborted page, and the next crawl stores them again.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param hits The hits of the page.
+     * @param statsKeys The stats keys of the hits.
+     * @param dataMaps The documents of the hits, or null for the hits which failed or were skipped.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return The number of hits of the page which are processed, which is less than the length of the page if it is aborted.
+     */
+    protected int storeBatch(final DataConfig dataConfig, final BatchIndexUpdateCallback callback, final DataStoreParams paramMap,
+            final SearchHit[] hits, final StatsKeyObject[] statsKeys, final Map<String, Object>[] dataMaps, final Watermark watermark,
+            final FingerprintCache fingerprintCache, final CrawlMetrics metrics) {
+        final List<Integer> indexes = new ArrayList<>(hits.length);
+        final List<DataStoreParams> paramMapList = new ArrayList<>(hits.length);
+        final List<Map<String, Object>> dataMapList = new ArrayList<>(hits.length);
+        for (int i = 0; i < hits.length; i++) {
+            if (dataMaps[i] != null) {
+                // the stats key is put into the parameters, so each document needs its own copy
+                final DataStoreParams docParamMap = paramMap.newInstance();
+                docParamMap.put(Constants.CRAWLER_STATS_KEY, statsKeys[i]);
+                indexes.add(i);
+                paramMapList.add(docParamMap);
+                dataMapList.add(dataMaps[i]);
+            }
+        }
+        if (dataMapList.isEmpty()) {
+            return hits.length;
+        }
+
+        Map<Integer, Throwable> failures;
+        final long storeStartTime = System.nanoTime();
+        try {
+            failures = callback.storeAll(paramMapList, dataMapList);
+        } catch (final Throwable t) {
+            // it is unknown which documents have been stored, so all of them are recorded as failures
+            failures = new HashMap<>();
+            for (int i = 0; i < dataMapList.size(); i++) {
+                failures.put(i, t);
+            }
+        }
+        if (metrics != null && failures.size() < dataMapList.size()) {
+            metrics.recordStore(dataMapList.size() - failures.size(), System.nanoTime() - storeStartTime);
+        }
+
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        for (int i = 0; i < dataMapList.size(); i++) {
+            final int index = indexes.get(i);
+            final Throwable t = failures.get(i);
+            if (t == null) {
+                crawlerStatsHelper.record(statsKeys[index], StatsAction.FINISHED);
+                if (watermark != null) {
+                    watermark.update(hits[index]);
+                }
+                if (fingerprintCache != null) {
+                    fingerprintCache.update(hits[index]);
+                }
+            } else {
+                if (watermark != null) {
+                    watermark.hold(hits[index]);
+                }
+                if (!handleFailure(dataConfig, hits[index], statsKeys[index], dataMaps[index], t, metrics)) {
+                    return index + 1;
+                }
+            }
+        }
+        return hits.length;
+    }
+
+    /**
+     * Creates the script bindings shared by all hits.
+     * They contain the parameters of the data config and the data config itself, and per-hit values are overlaid on them.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the data store.
+     * @return The unmodifiable bindings.
+     */
+    protected Map<String, Object> createBaseBindings(final DataConfig dataConfig, final DataStoreParams paramMap) {
+        final Map<String, Object> bindings = new LinkedHashMap<>(paramMap.asMap());
+        bindings.remove(Constants.CRAWLER_STATS_KEY);
+        bindings.put("crawlingConfig", dataConfig);
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    /**
+     * Creates a reader to page through the hits.
+     * If the prefetch.pages parameter is greater than 0, the next pages are fetched in the background.
+     * @param client The Elasticsearch client.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param target The target to read.
+     * @param pointInTime The point in time, or null if the scroll pagination is used.
+     * @param pageSizeController The controller of the page size, or null if the page size is fixed.
+     * @param searchAfter The sort values to resume after, or null to read from the first hit.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param backPressureController The controller of the load of the source cluster, or null to fail fast.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return The reader.
+     */
+    protected SearchHitReader createSearchHitReader(final Client client, final DataStoreParams paramMap,
+            final ScriptMapEvaluator scriptMapEvaluator, final SearchTarget target, final PointInTime pointInTime,
+            final PageSizeController pageSizeController, final Object[] searchAfter, final Watermark watermark,
+            final FingerprintCache fingerprintCache, final BackPressureController backPressureController, final CrawlMetrics metrics) {
+        final String timeout = getTimeout(paramMap);
+        // indices and preference cannot be used with point in time
+        final SearchRequestBuilder builder;
+        if (pointInTime != null) {
+            builder = client.prepareSearch();
+        } else {
+            builder = client.prepareSearch(target.getIndices() != null ? target.getIndices() : getIndices(paramMap));
+        }
+        if (paramMap.containsKey(SIZE)) {
+            builder.setSize(Integer.parseInt(paramMap.getAsString(SIZE)));
+        }
+        if (paramMap.containsKey(FIELDS)) {
+            builder.setFetchSource(paramMap.getAsString(FIELDS).trim().split(","), null);
+        } else if (Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(SOURCE_AUTO_INCLUDES, Constants.TRUE).trim())) {
+            final Set<String> includes = scriptMapEvaluator.getSourceIncludes();
+            if (includes != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Source includes derived from scripts: {}", includes);
+                }
+                if (includes.isEmpty()) {
+                    builder.setFetchSource(false);
+                } else {
+                    builder.setFetchSource(includes.toArray(new String[includes.size()]), null);
+                }
+            }
+        }
+        final QueryBuilder query = QueryBuilders.wrapperQuery(paramMap.getAsString(QUERY, "{\"match_all\":{}}").trim());
+        builder.setQuery(watermark != null ? watermark.apply(builder, query) : query);
+        addRetrievedFields(builder, paramMap);
+        if (target.getSlice() != null) {
+            builder.slice(target.getSlice());
+        }
+        if (fingerprintCache != null) {
+            final String mode = getFingerprintMode(paramMap);
+            if (FingerprintCache.MODE_VERSION.equals(mode)) {
+                builder.setVersion(true);
+            } else if (FingerprintCache.MODE_SEQ_NO.equals(mode)) {
+                builder.seqNoAndPrimaryTerm(true);
+            }
+        }
+
+        SearchHitReader reader;
+        if (pointInTime != null) {
+            for (final String sort : paramMap.getAsString(PIT_SORT, "_shard_doc").split(",")) {
+                final String[] values = sort.trim().split(":");
+                builder.addSort(values[0].trim(), values.length > 1 ? SortOrder.fromString(values[1].trim()) : SortOrder.ASC);
+            }
+            builder.setTrackTotalHits(false);
+            reader = new PitSearchHitReader(builder, pointInTime, getPitKeepAlive(paramMap), timeout, pageSizeController, searchAfter);
+        } else {
+            final String preference = paramMap.getAsString(PREFERENCE, Constants.SEARCH_PREFERENCE_LOCAL).trim();
+            builder.setPreference(target.getShard() >= 0 ? "_shards:" + target.getShard() + "|" + preference : preference);
+            if (!scriptMapEvaluator.isScoreReferenced()) {
+                // the index order is the cheapest for a scroll, but hits sorted by it have no scores
+                builder.addSort("_doc", SortOrder.ASC);
+            }
+            builder.setTrackTotalHits(false);
+            reader = new ScrollSearchHitReader(client, builder, paramMap.getAsString(SCROLL, "1m").trim(), timeout);
+        }
+
+        if (metrics != null) {
+            reader = new MeteredSearchHitReader(reader, metrics);
+        }
+        if (backPressureController != null) {
+            reader = new BackPressureSearchHitReader(reader, backPressureController, pageSizeController);
+        }
+
+        final int prefetchPages = getAsInt(paramMap, PREFETCH_PAGES, 0);
+        if (prefetchPages > 0) {
+            return new PrefetchSearchHitReader(reader, prefetchPages);
+        }
+        return reader;
+    }
+
+    /**
+     * Requests the doc value fields and the stored fields, which are bound to scripts as the fields map.
+     * If scripts only refer to them, the source is not fetched by the source.auto.includes parameter.
+     * @param builder The builder for the search request.
+     * @param paramMap The parameters for the data store.
+     */
+    protected void addRetrievedFields(final SearchRequestBuilder builder, final DataStoreParams paramMap) {
+        final String docValueFields = paramMap.getAsString(DOCVALUE_FIELDS);
+        if (StringUtil.isNotBlank(docValueFields)) {
+            for (final String value : docValueFields.split(",")) {
+                final int pos = value.indexOf(':');
+                final String field = (pos == -1 ? value : value.substring(0, pos)).trim();
+                final List<FieldAndFormat> fields = builder.request().source().docValueFields();
+                // the watermark field may be requested already
+                if (field.isEmpty() || fields != null && fields.stream().anyMatch(f -> f.field.equals(field))) {
+                    continue;
+                }
+                builder.addDocValueField(field, pos == -1 ? null : value.substring(pos + 1).trim());
+            }
+        }
+        final String storedFields = paramMap.getAsString(STORED_FIELDS);
+        if (StringUtil.isNotBlank(storedFields)) {
+            builder.storedFields(Arrays.stream(storedFields.split(",")).map(String::trim).filter(f -> !f.isEmpty()).toArray(String[]::new));
+            // the source is not returned with stored fields unless it is requested
+            if (builder.request().source().fetchSource() == null) {
+                builder.setFetchSource(true);
+            }
+        }
+    }
+
+    /**
+     * Creates the controller of the adaptive page size.
+     * @param paramMap The parameters for the data store.
+     * @param pitId The point in time ID, or null if the scroll pagination is used.
+     * @return The controller, or null if the page size is fixed.
+     */
+    protected PageSizeController createPageSizeController(final DataStoreParams paramMap, final String pitId) {
+        if (!Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(SIZE_ADAPTIVE, Constants.FALSE).trim())) {
+            return null;
+        }
+        if (pitId == null) {
+            logger.warn("{} is ignored because the page size of a scroll cannot be changed. Use {}={}.", SIZE_ADAPTIVE, PAGINATION,
+                    PAGINATION_PIT);
+            return null;
+        }
+        final int minSize = getAsInt(paramMap, SIZE_MIN, 10);
+        return new PageSizeController(getAsInt(paramMap, SIZE, minSize), minSize, getAsInt(paramMap, SIZE_MAX, 10000),
+                getAsInt(paramMap, SIZE_TARGET_LATENCY, 1000), getAsInt(paramMap, SIZE_MAX_BYTES, 10 * 1024 * 1024));
+    }
+
+    /**
+     * Gets the indices to search from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return The indices.
+     */
+    protected String[] getIndices(final DataStoreParams paramMap) {
+        return paramMap.getAsString(INDEX, "_all").trim().split(",");
+    }
+
+    /**
+     * Gets the timeout for the request from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return The timeout.
+     */
+    protected String getTimeout(final DataStoreParams paramMap) {
+        return paramMap.getAsString(TIMEOUT, "1m").trim();
+    }
+
+    /**
+     * Gets the keep alive of the point in time from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return The keep alive.
+     */
+    protected TimeValue getPitKeepAlive(final DataStoreParams paramMap) {
+        return TimeValue.parseTimeValue(paramMap.getAsString(PIT_KEEP_ALIVE, "1m").trim(), PIT_KEEP_ALIVE);
+    }
+
+    /**
+     * Process a search hit and store it with the callback.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param paramMap The parameters for the data store.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param baseBindings The crawl-level script bindings.
+     * @param defaultDataMap The default data map.
+     * @param hit The search hit.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return false if the crawling of the current page is aborted.
+     */
+    protected boolean processHit(final DataConfig dataConfig, final IndexUpdateCallback callback, final DataStoreParams paramMap,
+            final ScriptMapEvaluator scriptMapEvaluator, final Map<String, Object> baseBindings, final Map<String, Object> defaultDataMap,
+            final SearchHit hit, final Watermark watermark, final FingerprintCache fingerprintCache, final CrawlMetrics metrics) {
+        if (isUnchanged(hit, fingerprintCache, metrics)) {
+            if (watermark != null) {
+                watermark.update(hit);
+            }
+            return true;
+        }
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        boolean loop = true;
+        final StatsKeyObject statsKey = new StatsKeyObject(hit.getId());
+        paramMap.put(Constants.CRAWLER_STATS_KEY, statsKey);
+        final Map<String, Object> dataMap = new HashMap<>(defaultDataMap);
+        final boolean queued = callback instanceof FetchQueueCallback && (watermark != null || fingerprintCache != null);
+        if (queued) {
+            // a worker stores the queued document later, so the watermark and the fingerprint wait for the result
+            paramMap.put(FetchQueueCallback.STORE_LISTENER,
+                    (FetchQueueCallback.StoreListener) stored -> completeHit(hit, stored, watermark, fingerprintCache));
+        }
+        try {
+            crawlerStatsHelper.begin(statsKey);
+            evaluateHit(scriptMapEvaluator, baseBindings, hit, statsKey, dataMap, metrics);
+
+            final long storeStartTime = System.nanoTime();
+            callback.store(paramMap, dataMap);
+            if (metrics != null) {
+                metrics.recordStore(System.nanoTime() - storeStartTime);
+            }
+            crawlerStatsHelper.record(statsKey, StatsAction.FINISHED);
+            if (!queued) {
+                completeHit(hit, true, watermark, fingerprintCache);
+            }
+        } catch (final Throwable t) {
+            if (watermark != null) {
+                watermark.hold(hit);
+            }
+            loop = handleFailure(dataConfig, hit, statsKey, dataMap, t, metrics);
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+        }
+        return loop;
+    }
+
+    /**
+     * Advances the watermark and the fingerprint by a stored hit, or holds the watermark at a hit which was not stored.
+     * @param hit The search hit.
+     * @param stored true if the document of the hit has been stored.
+     * @param watermark The watermark for incremental crawls, or null if the crawl is not incremental.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     */
+    protected void completeHit(final SearchHit hit, final boolean stored, final Watermark watermark,
+            final FingerprintCache fingerprintCache) {
+        if (!stored) {
+            if (watermark != null) {
+                watermark.hold(hit);
+            }
+            return;
+        }
+        if (watermark != null) {
+            watermark.update(hit);
+        }
+        if (fingerprintCache != null) {
+            fingerprintCache.update(hit);
+        }
+    }
+
+    /**
+     * Checks if a hit is unchanged since the previous crawl, so that its scripts are not evaluated and its document is not stored.
+     * @param hit The search hit.
+     * @param fingerprintCache The cache of fingerprints, or null if unchanged documents are not skipped.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return true if the hit is skipped.
+     */
+    protected boolean isUnchanged(final SearchHit hit, final FingerprintCache fingerprintCache, final CrawlMetrics metrics) {
+        if (fingerprintCache == null || !fingerprintCache.isUnchanged(hit)) {
+            return false;
+        }
+        if (metrics != null) {
+            metrics.recordSkip();
+        }
+        return true;
+    }
+
+    /**
+     * Evaluates the scripts of a hit into its document.
+     * @param scriptMapEvaluator The evaluator of the script map.
+     * @param baseBindings The crawl-level script bindings.
+     * @param hit The search hit.
+     * @param statsKey The stats key of the document.
+     * @param dataMap The document to which the script values are put.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     */
+    protected void evaluateHit(final ScriptMapEvaluator scriptMapEvaluator, final Map<String, Object> baseBindings, final SearchHit hit,
+            final StatsKeyObject statsKey, final Map<String, Object> dataMap, final CrawlMetrics metrics) {
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        final Map<String, Object> resultMap = new LayeredBindingMap(baseBindings);
+        resultMap.put(Constants.CRAWLER_STATS_KEY, statsKey);
+        resultMap.put("index", hit.getIndex());
+        resultMap.put("id", hit.getId());
+        resultMap.put("version", hit.getVersion());
+        resultMap.put(CLUSTER_ALIAS, hit.getClusterAlias() != null ? hit.getClusterAlias() : baseBindings.get(CLUSTER_ALIAS));
+        resultMap.put("primaryTerm", hit.getPrimaryTerm());
+        resultMap.put("score", hit.getScore());
+        resultMap.put("seqNo", hit.getSeqNo());
+        resultMap.put("hit", hit);
+        resultMap.put("source", scriptMapEvaluator.createSourceMap(hit));
+        resultMap.put("fields", scriptMapEvaluator.createFieldsMap(hit));
+
+        crawlerStatsHelper.record(statsKey, StatsAction.PREPARED);
+
+        if (logger.isDebugEnabled()) {
+            for (final Map.Entry<String, Object> entry : resultMap.entrySet()) {
+                logger.debug("{}={}", entry.getKey(), entry.getValue());
+            }
+        }
+
+        final Map<String, Object> crawlingContext = new HashMap<>(4);
+        crawlingContext.put("doc", dataMap);
+        resultMap.put("crawlingContext", crawlingContext);
+        final long scriptStartTime = System.nanoTime();
+        scriptMapEvaluator.evaluate(resultMap, dataMap);
+        if (metrics != null) {
+            metrics.recordScript(System.nanoTime() - scriptStartTime);
+        }
+
+        crawlerStatsHelper.record(statsKey, StatsAction.EVALUATED);
+
+        if (logger.isDebugEnabled()) {
+            for (final Map.Entry<String, Object> entry : dataMap.entrySet()) {
+                logger.debug("{}={}", entry.getKey(), entry.getValue());
+            }
+        }
+
+        if (dataMap.get("url") instanceof String statsUrl) {
+            statsKey.setUrl(statsUrl);
+        }
+    }
+
+    /**
+     * Records the failure of a hit to the failure URLs and the stats.
+     * @param dataConfig The data configuration.
+     * @param hit The search hit.
+     * @param statsKey The stats key of the document.
+     * @param dataMap The document of the hit.
+     * @param t The failure.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return false if the crawling of the current page is aborted.
+     */
+    protected boolean handleFailure(final DataConfig dataConfig, final SearchHit hit, final StatsKeyObject statsKey,
+            final Map<String, Object> dataMap, final Throwable t, final CrawlMetrics metrics) {
+        return handleFailure(dataConfig, hit.getIndex() + "/_doc/" + hit.getId(), statsKey, dataMap, t, metrics);
+    }
+
+    /**
+     * Records the failure of a document to the failure URLs and the stats.
+     * @param dataConfig The data configuration.
+     * @param url The URL recorded unless the failure tells its own.
+     * @param statsKey The stats key of the document.
+     * @param dataMap The document.
+     * @param t The failure.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     * @return false if the crawling of the current page is aborted.
+     */
+    protected boolean handleFailure(final DataConfig dataConfig, final String url, final StatsKeyObject statsKey,
+            final Map<String, Object> dataMap, final Throwable t, final CrawlMetrics metrics) {
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        boolean loop = true;
+        if (t instanceof CrawlingAccessException e) {
+            logger.warn("Crawling Access Exception at : {}", dataMap, e);
+
+            Throwable target = e;
+            if (target instanceof MultipleCrawlingAccessException ex) {
+                final Throwable[] causes = ex.getCauses();
+                if (causes.length > 0) {
+                    target = causes[causes.length - 1];
+                }
+            }
+
+            String errorName;
+            final Throwable cause = target.getCause();
+            if (cause != null) {
+                errorName = cause.getClass().getCanonicalName();
+            } else {
+                errorName = target.getClass().getCanonicalName();
+            }
+
+            String failureUrl = url;
+            if (target instanceof DataStoreCrawlingException dce) {
+                failureUrl = dce.getUrl();
+                if (dce.aborted()) {
+                    loop = false;
+                }
+            }
+            final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
+            failureUrlService.store(dataConfig, errorName, failureUrl, target);
+            crawlerStatsHelper.record(statsKey, StatsAction.ACCESS_EXCEPTION);
+        } else {
+            logger.warn("Crawling Access Exception at : {}", dataMap, t);
+            final FailureUrlService failureUrlService = ComponentUtil.getComponent(FailureUrlService.class);
+            failureUrlService.store(dataConfig, t.getClass().getCanonicalName(), url, t);
+            crawlerStatsHelper.record(statsKey, StatsAction.EXCEPTION);
+        }
+        if (metrics != null) {
+            metrics.recordFailure();
+        }
+        return loop;
+    }
+
+    /**
+     * Gets the number of slices from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @return The number of slices.
+     */
+    protected int getSlices(final DataStoreParams paramMap) {
+        return getAsInt(paramMap, SLICES, 1);
+    }
+
+    /**
+     * Gets an int value from the parameters.
+     * @param paramMap The parameters for the data store.
+     * @param key The parameter name.
+     * @param defaultValue The value returned if the parameter is missing or invalid.
+     * @return The int value.
+     */
+    protected int getAsInt(final DataStoreParams paramMap, final String key, final int defaultValue) {
+        final String value = paramMap.getAsString(key);
+        if (StringUtil.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            logger.warn("{} is not int value.", key, e);
+            return defaultValue;
         }
     }
 
@@ -15,16 +15,24 @@
  */
 package org.codelibs.fess.ds.elasticsearch;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
 import org.codelibs.fess.Constants;
 import org.codelibs.fess.crawler.client.CrawlerClientFactory;
 import org.codelibs.fess.ds.callback.FileListIndexUpdateCallbackImpl;
 import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.entity.DataStoreParams;
 import org.codelibs.fess.exception.DataStoreException;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
 import org.codelibs.fess.opensearch.config.exentity.DataConfig;
 import org.codelibs.fess.util.ComponentUtil;
 
@@ -35,6 +43,26 @@ import org.codelibs.fess.util.ComponentUtil;
 public class ElasticsearchListDataStore extends ElasticsearchDataStore {
     private static final Logger logger = LogManager.getLogger(ElasticsearchListDataStore.class);
 
+    /**
+     * The capacity of the queue between the reader and the file fetchers. If it is 0, the reader fetches files through the callback.
+     */
+    protected static final String FETCH_QUEUE_SIZE = "fetch.queue.size";
+
+    /**
+     * The number of file fetchers. The default value is the number_of_threads parameter.
+     */
+    protected static final String FETCH_THREADS = "fetch.threads";
+
+    /**
+     * The maximum number of concurrent fetches from a host. If it is 0, they are not limited.
+     */
+    protected static final String FETCH_HOST_CONCURRENCY = "fetch.host.concurrency";
+
+    /**
+     * If true, the file fetchers are virtual threads.
+     */
+    protected static final String FETCH_VIRTUAL_THREADS = "fetch.virtual.threads";
+
     /**
      * Constructor.
      */
@@ -61,6 +89,23 @@ public class ElasticsearchListDataStore extends ElasticsearchDataStore {
         final CrawlerClientFactory crawlerClientFactory = ComponentUtil.getCrawlerClientFactory();
         dataConfig.initializeClientFactory(() -> crawlerClientFactory);
         try {
+            if (getAsInt(paramMap, FETCH_QUEUE_SIZE, 0) > 0) {
+                try (FetchQueueCallback fetchQueueCallback =
+                        createFetchQueueCallback(dataConfig, callback, crawlerClientFactory, paramMap, nThreads)) {
+                    fetchQueueCallback.register(getCheckpointKey(dataConfig, paramMap, null));
+                    try {
+                        super.storeData(dataConfig, fetchQueueCallback, paramMap, scriptMap, defaultDataMap);
+                    } finally {
+                        if (!alive) {
+                            // the crawl is stopped, so the queued files are not fetched
+                            fetchQueueCallback.cancel();
+                        }
+                    }
+                    fetchQueueCallback.commit();
+                }
+                return;
+            }
+
             final FileListIndexUpdateCallbackImpl fileListIndexUpdateCallback =
                     new FileListIndexUpdateCallbackImpl(callback, crawlerClientFactory, nThreads);
             super.storeData(dataConfig, fileListIndexUpdateCallback, paramMap, scriptMap, defaultDataMap);
@@ -70,4 +115,131 @@ public class ElasticsearchListDataStore extends ElasticsearchDataStore {
         }
     }
 
+    /**
+     * Creates the queue between the reader and the file fetchers.
+     * The workers of the queue fetch the files in their own threads, instead of the thread pool of the file list callback.
+     * @param dataConfig The data configuration.
+     * @param callback The callback to index the data.
+     * @param crawlerClientFactory The factory of the clients to fetch files.
+     * @param paramMap The parameters for the data store.
+     * @param nThreads The number of threads of the number_of_threads parameter.
+     * @return The queue.
+     */
+    protected FetchQueueCallback createFetchQueueCallback(final DataConfig dataConfig, final IndexUpdateCallback callback,
+            final CrawlerClientFactory crawlerClientFactory, final DataStoreParams paramMap, final int nThreads) {
+        final FileListIndexUpdateCallbackImpl fileListIndexUpdateCallback =
+                new CallerRunsFileListIndexUpdateCallback(callback, crawlerClientFactory, canFlush(callback));
+        final int queueSize = getAsInt(paramMap, FETCH_QUEUE_SIZE, 0);
+        final int numOfWorkers = getAsInt(paramMap, FETCH_THREADS, nThreads);
+        final int hostConcurrency = getAsInt(paramMap, FETCH_HOST_CONCURRENCY, 0);
+        final boolean virtualThreads = Constants.TRUE.equalsIgnoreCase(paramMap.getAsString(FETCH_VIRTUAL_THREADS, Constants.FALSE));
+        logger.info("Fetching files with {} {}workers, queue size {} and host concurrency {}", numOfWorkers,
+                virtualThreads ? "virtual " : StringUtil.EMPTY, queueSize, hostConcurrency);
+        return new FetchQueueCallback(fileListIndexUpdateCallback, queueSize, numOfWorkers, hostConcurrency, virtualThreads) {
+            @Override
+            protected void handleFailure(final DataStoreParams docParamMap, final Map<String, Object> dataMap, final Exception e) {
+                handleFetchFailure(dataConfig, docParamMap, dataMap, e);
+            }
+        };
+    }
+
+    /**
+     * Records the failure of a queued file to the failure URLs and the stats.
+     * The stats of the document were done when it was queued, so they are begun again to record the failure.
+     * @param dataConfig The data configuration.
+     * @param paramMap The parameters for the document, which hold its stats key.
+     * @param dataMap The document.
+     * @param t The failure.
+     */
+    protected void handleFetchFailure(final DataConfig dataConfig, final DataStoreParams paramMap, final Map<String, Object> dataMap,
+            final Throwable t) {
+        final CrawlerStatsHelper crawlerStatsHelper = ComponentUtil.getCrawlerStatsHelper();
+        final StatsKeyObject statsKey = paramMap.get(Constants.CRAWLER_STATS_KEY) instanceof final StatsKeyObject key ? key
+                : new StatsKeyObject(String.valueOf(dataMap.get(FetchQueueCallback.URL)));
+        crawlerStatsHelper.begin(statsKey);
+        try {
+            handleFailure(dataConfig, String.valueOf(dataMap.get(FetchQueueCallback.URL)), statsKey, dataMap, t, null);
+        } finally {
+            crawlerStatsHelper.done(statsKey);
+        }
+    }
+
+    /**
+     * File list callback which fetches files in the calling thread, so that the workers of the fetch queue fetch them.
+     * It can be flushed because its executor service is not shut down by the commit.
+     */
+    protected static class CallerRunsFileListIndexUpdateCallback extends FileListIndexUpdateCallbackImpl
+            implements FlushableIndexUpdateCallback {
+        private final boolean flushable;
+
+        /**
+         * Constructor.
+         * @param callback The callback to index the data.
+         * @param crawlerClientFactory The factory of the clients to fetch files.
+         * @param flushable True if the callback to index the data can be flushed.
+         */
+        public CallerRunsFileListIndexUpdateCallback(final IndexUpdateCallback callback, final CrawlerClientFactory crawlerClientFactory,
+                final boolean flushable) {
+            super(callback, crawlerClientFactory, 1);
+            this.flushable = flushable;
+        }
+
+        @Override
+        protected ExecutorService newFixedThreadPool(final int nThreads) {
+            return new CallerRunsExecutorService();
+        }
+
+        /**
+         * Commits the fetched files, which sends them to the callback to index the data and commits it.
+         */
+        @Override
+        public void flush() {
+            commit();
+        }
+
+        @Override
+        public boolean canFlush() {
+            return flushable;
+        }
+    }
+
+    /**
+     * Executor service which runs tasks in the calling thread.
+     * Shutting it down does not reject later tasks, because the file list callback shuts it down when the data is committed.
+     */
+    protected static class CallerRunsExecutorService extends AbstractExecutorService {
+        private volatile boolean shutdown;
+
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            return Collections.emptyList();
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) {
+            return true;
+        }
+    }
+
 }
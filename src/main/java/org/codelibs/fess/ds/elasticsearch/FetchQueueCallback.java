@@ -0,0 +1,550 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.core.lang.StringUtil;
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.exception.DataStoreException;
+
+/**
+ * Callback which queues documents for worker threads that store them to the delegate callback.
+ * The reader of the source cluster only waits when the bounded queue is full, so slow file servers do not stall it,
+ * and the number of concurrent fetches from each host can be limited.
+ */
+public class FetchQueueCallback implements FlushableIndexUpdateCallback, FetchQueueMXBean, AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(FetchQueueCallback.class);
+
+    /**
+     * The field of the URL of a document.
+     */
+    protected static final String URL = "url";
+
+    /**
+     * The parameter of a {@link StoreListener} which is notified when the queued document is finished.
+     */
+    public static final String STORE_LISTENER = "fetch.queue.store.listener";
+
+    /**
+     * The delegate callback which fetches and stores documents.
+     */
+    protected final IndexUpdateCallback callback;
+
+    /**
+     * The queue of documents.
+     */
+    protected final BlockingQueue<Task> queue;
+
+    /**
+     * The capacity of the queue.
+     */
+    protected final int queueCapacity;
+
+    /**
+     * The maximum number of concurrent fetches from a host, or 0 if they are not limited.
+     */
+    protected final int hostConcurrency;
+
+    /**
+     * The permits of the hosts.
+     */
+    protected final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+    /**
+     * The worker threads.
+     */
+    protected final List<Thread> workers;
+
+    /**
+     * The sequence number of the last queued document.
+     */
+    protected final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * The sequence numbers of the documents which are queued or being fetched.
+     */
+    protected final NavigableSet<Long> pending = new ConcurrentSkipListSet<>();
+
+    /**
+     * The number of workers fetching a document.
+     */
+    protected final AtomicInteger activeWorkers = new AtomicInteger();
+
+    /**
+     * The largest number of queued documents.
+     */
+    protected final LongAccumulator maxQueueSize = new LongAccumulator(Math::max, 0);
+
+    /**
+     * The number of fetched documents.
+     */
+    protected final LongAdder fetched = new LongAdder();
+
+    /**
+     * The number of documents which failed to be fetched.
+     */
+    protected final LongAdder failures = new LongAdder();
+
+    /**
+     * The number of documents which were discarded because the crawl was stopped.
+     */
+    protected final LongAdder discarded = new LongAdder();
+
+    /**
+     * The total time in nanoseconds of documents in the queue.
+     */
+    protected final LongAdder queueTime = new LongAdder();
+
+    /**
+     * The total time in nanoseconds to fetch documents.
+     */
+    protected final LongAdder fetchTime = new LongAdder();
+
+    /**
+     * True if no more documents are queued.
+     */
+    protected volatile boolean closed;
+
+    /**
+     * True if the queued documents are discarded because the crawl is stopped.
+     */
+    protected volatile boolean cancelled;
+
+    /**
+     * The name registered to the MBean server, or null if it is not registered.
+     */
+    protected ObjectName objectName;
+
+    /**
+     * Constructor. The workers are started immediately.
+     * @param callback The delegate callback which fetches and stores documents.
+     * @param queueCapacity The capacity of the queue.
+     * @param numOfWorkers The number of worker threads.
+     * @param hostConcurrency The maximum number of concurrent fetches from a host, or 0 if they are not limited.
+     * @param virtualThreads If true, the workers are virtual threads.
+     */
+    public FetchQueueCallback(final IndexUpdateCallback callback, final int queueCapacity, final int numOfWorkers,
+            final int hostConcurrency, final boolean virtualThreads) {
+        this.callback = callback;
+        this.queueCapacity = Math.max(queueCapacity, 1);
+        this.hostConcurrency = Math.max(hostConcurrency, 0);
+        queue = new ArrayBlockingQueue<>(this.queueCapacity);
+        final Thread.Builder builder =
+                virtualThreads ? Thread.ofVirtual().name("FetchQueue-", 0) : Thread.ofPlatform().name("FetchQueue-", 0).daemon(true);
+        workers = new ArrayList<>(Math.max(numOfWorkers, 1));
+        for (int i = 0; i < Math.max(numOfWorkers, 1); i++) {
+            workers.add(builder.start(this::work));
+        }
+    }
+
+    @Override
+    public void store(final DataStoreParams paramMap, final Map<String, Object> dataMap) {
+        if (closed) {
+            throw new IllegalStateException("The fetch queue is closed.");
+        }
+        if (cancelled) {
+            discarded.increment();
+            complete(paramMap, false);
+            return;
+        }
+        final long seq = sequence.incrementAndGet();
+        pending.add(seq);
+        try {
+            // the stats key is put into the parameters for each document, so the queued document needs its own copy
+            queue.put(new Task(seq, paramMap.newInstance(), dataMap, System.nanoTime()));
+        } catch (final InterruptedException e) {
+            done(seq);
+            Thread.currentThread().interrupt();
+            throw new DataStoreException("Interrupted while queueing " + dataMap.get(URL), e);
+        }
+        maxQueueSize.accumulate(queue.size());
+    }
+
+    /**
+     * Waits for the queued documents to be stored, and commits the delegate callback.
+     */
+    @Override
+    public void commit() {
+        awaitQueued();
+        callback.commit();
+    }
+
+    /**
+     * Waits until the documents queued before this call are stored, and flushes the delegate callback if it can be flushed.
+     * Documents queued by other threads in the meantime are not waited for, so a flush is not starved by other readers.
+     */
+    @Override
+    public void flush() {
+        awaitQueued();
+        if (callback instanceof final FlushableIndexUpdateCallback flushableCallback) {
+            flushableCallback.flush();
+        }
+    }
+
+    /**
+     * Waits until the documents queued before this call are stored.
+     */
+    protected void awaitQueued() {
+        final long last = sequence.get();
+        synchronized (pending) {
+            while (pending.floor(last) != null) {
+                try {
+                    pending.wait(1000L);
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new DataStoreException("Interrupted while waiting for " + pending.size() + " queued documents.", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean canFlush() {
+        return callback instanceof final FlushableIndexUpdateCallback flushableCallback && flushableCallback.canFlush();
+    }
+
+    @Override
+    public long getDocumentSize() {
+        return callback.getDocumentSize();
+    }
+
+    @Override
+    public long getExecuteTime() {
+        return callback.getExecuteTime();
+    }
+
+    /**
+     * Stores the queued documents until the queue is closed.
+     */
+    protected void work() {
+        while (true) {
+            final Task task;
+            try {
+                task = queue.poll(100L, TimeUnit.MILLISECONDS);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (task == null) {
+                if (closed) {
+                    return;
+                }
+                continue;
+            }
+            try {
+                if (cancelled) {
+                    discarded.increment();
+                    complete(task.paramMap, false);
+                } else {
+                    fetch(task);
+                }
+            } finally {
+                done(task.seq);
+            }
+        }
+    }
+
+    /**
+     * Stores a queued document to the delegate callback within the limit of its host.
+     * @param task The queued document.
+     */
+    protected void fetch(final Task task) {
+        queueTime.add(System.nanoTime() - task.queuedTime);
+        final Semaphore permits = hostConcurrency > 0 ? hostPermits.computeIfAbsent(getHost(task.dataMap.get(URL)),
+                k -> new Semaphore(hostConcurrency)) : null;
+        if (permits != null) {
+            try {
+                permits.acquire();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failures.increment();
+                logger.warn("Interrupted while waiting for the host of {}", task.dataMap.get(URL));
+                complete(task.paramMap, false);
+                return;
+            }
+        }
+        activeWorkers.incrementAndGet();
+        final long startTime = System.nanoTime();
+        boolean stored = false;
+        try {
+            callback.store(task.paramMap, task.dataMap);
+            fetched.increment();
+            stored = true;
+        } catch (final Exception e) {
+            failures.increment();
+            handleFailure(task.paramMap, task.dataMap, e);
+        } finally {
+            complete(task.paramMap, stored);
+            fetchTime.add(System.nanoTime() - startTime);
+            activeWorkers.decrementAndGet();
+            if (permits != null) {
+                permits.release();
+            }
+        }
+    }
+
+    /**
+     * Handles a document which failed to be stored by the delegate callback.
+     * The reader has already finished the document, so the failure has to be recorded here.
+     * @param paramMap The parameters for the document, which hold its stats key.
+     * @param dataMap The document.
+     * @param e The failure.
+     */
+    protected void handleFailure(final DataStoreParams paramMap, final Map<String, Object> dataMap, final Exception e) {
+        logger.warn("Failed to store {}", dataMap.get(URL), e);
+    }
+
+    /**
+     * Notifies the listener of a queued document that it is finished.
+     * @param paramMap The parameters for the document, which may hold its listener.
+     * @param stored true if the document has been stored, or false if it failed or was discarded.
+     */
+    protected void complete(final DataStoreParams paramMap, final boolean stored) {
+        if (paramMap.get(STORE_LISTENER) instanceof final StoreListener listener) {
+            try {
+                listener.onComplete(stored);
+            } catch (final Exception e) {
+                logger.warn("Failed to notify the listener of {}", paramMap.get(STORE_LISTENER), e);
+            }
+        }
+    }
+
+    /**
+     * Discards the queued documents because the crawl is stopped. The documents being fetched are completed.
+     */
+    public void cancel() {
+        cancelled = true;
+        final List<Task> tasks = new ArrayList<>();
+        queue.drainTo(tasks);
+        for (final Task task : tasks) {
+            discarded.increment();
+            complete(task.paramMap, false);
+            done(task.seq);
+        }
+        logger.info("Discarded {} queued documents.", discarded.sum());
+    }
+
+    /**
+     * Marks a queued document as done and wakes up the waiting flush.
+     * @param seq The sequence number of the document.
+     */
+    protected void done(final long seq) {
+        pending.remove(seq);
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+    }
+
+    /**
+     * Gets the host of a URL to limit concurrent fetches.
+     * @param url The URL.
+     * @return The host in lower case, or an empty string if the URL has no host.
+     */
+    protected static String getHost(final Object url) {
+        if (!(url instanceof final String value)) {
+            return StringUtil.EMPTY;
+        }
+        final int schemeEnd = value.indexOf("://");
+        if (schemeEnd < 0) {
+            return StringUtil.EMPTY;
+        }
+        final int start = schemeEnd + 3;
+        int end = start;
+        while (end < value.length() && "/?#".indexOf(value.charAt(end)) < 0) {
+            end++;
+        }
+        String authority = value.substring(start, end);
+        final int userInfoEnd = authority.lastIndexOf('@');
+        if (userInfoEnd >= 0) {
+            authority = authority.substring(userInfoEnd + 1);
+        }
+        final int portStart = authority.lastIndexOf(':');
+        if (portStart >= 0 && !authority.endsWith("]")) {
+            authority = authority.substring(0, portStart);
+        }
+        return authority.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Registers the queue to the platform MBean server.
+     * @param name The name of the crawl.
+     */
+    public void register(final String name) {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName newObjectName =
+                    new ObjectName(FetchQueueCallback.class.getPackageName() + ":type=FetchQueue,name=" + ObjectName.quote(name));
+            if (server.isRegistered(newObjectName)) {
+                server.unregisterMBean(newObjectName);
+            }
+            server.registerMBean(this, newObjectName);
+            objectName = newObjectName;
+        } catch (final Exception e) {
+            logger.warn("Failed to register fetch queue: {}", name, e);
+        }
+    }
+
+    /**
+     * Waits for the queued documents to be stored unless the queue is cancelled, stops the workers and unregisters the queue
+     * from the MBean server.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (final Thread worker : workers) {
+            try {
+                worker.join();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Interrupted while stopping {}", worker.getName());
+                break;
+            }
+        }
+        if (objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            } catch (final Exception e) {
+                logger.warn("Failed to unregister fetch queue: {}", objectName, e);
+            }
+            objectName = null;
+        }
+        logger.info("Fetch queue: {}", this);
+    }
+
+    @Override
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getMaxQueueSize() {
+        return maxQueueSize.get();
+    }
+
+    @Override
+    public int getWorkers() {
+        return workers.size();
+    }
+
+    @Override
+    public int getActiveWorkers() {
+        return activeWorkers.get();
+    }
+
+    @Override
+    public long getFetched() {
+        return fetched.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    @Override
+    public double getAverageQueueTime() {
+        return average(queueTime.sum());
+    }
+
+    @Override
+    public double getAverageFetchTime() {
+        return average(fetchTime.sum());
+    }
+
+    private double average(final long totalTime) {
+        final long count = fetched.sum() + failures.sum();
+        return count > 0 ? totalTime / 1_000_000.0 / count : 0;
+    }
+
+    /**
+     * Summarizes the queue as key=value pairs.
+     * @return The summary.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT,
+                "workers=%d capacity=%d max_queued=%d fetched=%d failures=%d discarded=%d queue_avg_ms=%.1f fetch_avg_ms=%.1f",
+                getWorkers(), getQueueCapacity(), getMaxQueueSize(), getFetched(), getFailures(), getDiscarded(), getAverageQueueTime(),
+                getAverageFetchTime());
+    }
+
+    /**
+     * Listener of a queued document, which is notified by the worker after the delegate callback has stored it or failed.
+     * It is called before a flush returns, so the state updated by it is complete when the flush returns.
+     */
+    @FunctionalInterface
+    public interface StoreListener {
+
+        /**
+         * Called when the queued document is finished.
+         * @param stored true if the document has been stored, or false if it failed or was discarded.
+         */
+        void onComplete(boolean stored);
+    }
+
+    /**
+     * A queued document.
+     */
+    protected static class Task {
+        final long seq;
+
+        final DataStoreParams paramMap;
+
+        final Map<String, Object> dataMap;
+
+        final long queuedTime;
+
+        Task(final long seq, final DataStoreParams paramMap, final Map<String, Object> dataMap, final long queuedTime) {
+            this.seq = seq;
+            this.paramMap = paramMap;
+            this.dataMap = dataMap;
+            this.queuedTime = queuedTime;
+        }
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+/**
+ * Management interface of the queue between the reader and the file fetchers of a list crawl.
+ */
+public interface FetchQueueMXBean {
+
+    /**
+     * Gets the number of queued documents.
+     * @return The number of documents.
+     */
+    int getQueueSize();
+
+    /**
+     * Gets the capacity of the queue.
+     * @return The capacity.
+     */
+    int getQueueCapacity();
+
+    /**
+     * Gets the largest number of queued documents.
+     * @return The number of documents.
+     */
+    long getMaxQueueSize();
+
+    /**
+     * Gets the number of workers.
+     * @return The number of workers.
+     */
+    int getWorkers();
+
+    /**
+     * Gets the number of workers fetching a document.
+     * @return The number of workers.
+     */
+    int getActiveWorkers();
+
+    /**
+     * Gets the number of fetched documents.
+     * @return The number of documents.
+     */
+    long getFetched();
+
+    /**
+     * Gets the number of documents which failed to be fetched.
+     * @return The number of documents.
+     */
+    long getFailures();
+
+    /**
+     * Gets the number of documents which were discarded because the crawl was stopped.
+     * @return The number of documents.
+     */
+    long getDiscarded();
+
+    /**
+     * Gets the average time of documents in the queue.
+     * @return The average time in milliseconds.
+     */
+    double getAverageQueueTime();
+
+    /**
+     * Gets the average time to fetch a document.
+     * @return The average time in milliseconds.
+     */
+    double getAverageFetchTime();
+}
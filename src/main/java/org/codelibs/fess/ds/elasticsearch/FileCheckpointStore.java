@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.common.xcontent.XContentFactory;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+/**
+ * CheckpointStore which stores each checkpoint as a JSON file in a directory.
+ * A file is replaced atomically, so a crash while saving leaves the previous checkpoint.
+ */
+public class FileCheckpointStore implements CheckpointStore {
+
+    /**
+     * The field name of the sort values in the file.
+     */
+    protected static final String SORT_VALUES = "sort_values";
+
+    /**
+     * The directory of the checkpoint files.
+     */
+    protected final Path directory;
+
+    /**
+     * Constructor.
+     * @param directory The directory of the checkpoint files.
+     */
+    public FileCheckpointStore(final Path directory) {
+        this.directory = directory;
+    }
+
+    @Override
+    public Object[] load(final String key) {
+        final Path path = getPath(key);
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try {
+            final Map<String, Object> map =
+                    XContentHelper.convertToMap(JsonXContent.jsonXContent, Files.readString(path, StandardCharsets.UTF_8), false);
+            if (map.get(SORT_VALUES) instanceof List<?> sortValues) {
+                return sortValues.toArray();
+            }
+            throw new DataStoreException("Invalid checkpoint: " + path);
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to load checkpoint: " + path, e);
+        }
+    }
+
+    @Override
+    public void save(final String key, final Object[] sortValues) {
+        final Path path = getPath(key);
+        try {
+            Files.createDirectories(directory);
+            final XContentBuilder builder = XContentFactory.jsonBuilder().startObject().array(SORT_VALUES, sortValues).endObject();
+            final Path tempPath = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+            try {
+                Files.writeString(tempPath, BytesReference.bytes(builder).utf8ToString(), StandardCharsets.UTF_8);
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to save checkpoint: " + path, e);
+        }
+    }
+
+    @Override
+    public void delete(final String key) {
+        final Path path = getPath(key);
+        try {
+            Files.deleteIfExists(path);
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to delete checkpoint: " + path, e);
+        }
+    }
+
+    /**
+     * Gets the path of the checkpoint file.
+     * @param key The key of the checkpoint.
+     * @return The path.
+     */
+    protected Path getPath(final String key) {
+        return directory.resolve(key.replaceAll("[^a-zA-Z0-9._-]", "_") + ".json");
+    }
+}
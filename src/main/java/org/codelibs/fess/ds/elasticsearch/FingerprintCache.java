@@ -0,0 +1,362 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.lucene.util.BytesRef;
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.common.hash.MurmurHash3;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.search.SearchHit;
+
+/**
+ * Cache of the fingerprints of documents indexed by the previous crawl, to skip unchanged hits before their scripts are evaluated.
+ * A document is keyed by the hash of its index and ID, and its fingerprint is its version, its sequence number and primary term,
+ * or the hash of its source and fields.
+ * The cache is stored as a binary file of pairs of longs, and it is discarded if the configuration changes.
+ */
+public class FingerprintCache {
+
+    private static final Logger logger = LogManager.getLogger(FingerprintCache.class);
+
+    /**
+     * The mode which uses the version of a document.
+     */
+    public static final String MODE_VERSION = "version";
+
+    /**
+     * The mode which uses the sequence number and the primary term of a document.
+     */
+    public static final String MODE_SEQ_NO = "seq_no";
+
+    /**
+     * The mode which uses the hash of the source of a document.
+     */
+    public static final String MODE_SOURCE = "source";
+
+    /**
+     * The header of the cache file.
+     */
+    protected static final int MAGIC = 0x46505231;
+
+    /**
+     * The value which means no fingerprint. Keys and fingerprints never have it.
+     */
+    protected static final long NONE = 0L;
+
+    /**
+     * The path of the cache file.
+     */
+    protected final Path path;
+
+    /**
+     * The fingerprint mode.
+     */
+    protected final String mode;
+
+    /**
+     * The hash of the configuration which transforms hits into documents.
+     */
+    protected final long configHash;
+
+    /**
+     * The fingerprints of the previous crawl.
+     */
+    protected final LongLongMap previous;
+
+    /**
+     * The fingerprints of the current crawl.
+     */
+    protected final LongLongMap current = new LongLongMap(1024);
+
+    /**
+     * Constructor. The fingerprints of the previous crawl are loaded if its configuration is the same.
+     * @param path The path of the cache file.
+     * @param mode The fingerprint mode.
+     * @param configuration The configuration which transforms hits into documents, such as the script map.
+     */
+    public FingerprintCache(final Path path, final String mode, final String configuration) {
+        if (!MODE_VERSION.equals(mode) && !MODE_SEQ_NO.equals(mode) && !MODE_SOURCE.equals(mode)) {
+            throw new IllegalArgumentException("Unknown fingerprint mode: " + mode);
+        }
+        this.path = path;
+        this.mode = mode;
+        configHash = hash(mode + "\n" + configuration);
+        previous = load();
+    }
+
+    /**
+     * Checks if a hit is unchanged since the previous crawl. An unchanged hit is kept in the cache of the current crawl.
+     * @param hit The search hit.
+     * @return true if the hit can be skipped.
+     */
+    public boolean isUnchanged(final SearchHit hit) {
+        final long fingerprint = getFingerprint(hit);
+        if (fingerprint == NONE) {
+            return false;
+        }
+        final long key = getKey(hit);
+        synchronized (this) {
+            if (previous.get(key) != fingerprint) {
+                return false;
+            }
+            current.put(key, fingerprint);
+            return true;
+        }
+    }
+
+    /**
+     * Records the fingerprint of a stored hit.
+     * @param hit The search hit.
+     */
+    public void update(final SearchHit hit) {
+        final long fingerprint = getFingerprint(hit);
+        if (fingerprint == NONE) {
+            return;
+        }
+        final long key = getKey(hit);
+        synchronized (this) {
+            current.put(key, fingerprint);
+        }
+    }
+
+    /**
+     * Gets the number of fingerprints of the previous crawl.
+     * @return The number of fingerprints.
+     */
+    public synchronized int getPreviousSize() {
+        return previous.size();
+    }
+
+    /**
+     * Gets the number of fingerprints of the current crawl.
+     * @return The number of fingerprints.
+     */
+    public synchronized int getCurrentSize() {
+        return current.size();
+    }
+
+    /**
+     * Saves the fingerprints of the current crawl. Documents which were not crawled are dropped from the cache.
+     * The file is replaced atomically, so a crash while saving leaves the previous cache.
+     */
+    public synchronized void save() {
+        try {
+            Files.createDirectories(path.toAbsolutePath().getParent());
+            final Path tempPath = Files.createTempFile(path.toAbsolutePath().getParent(), path.getFileName().toString(), ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                    out.writeInt(MAGIC);
+                    out.writeLong(configHash);
+                    out.writeInt(current.size());
+                    for (int i = 0; i < current.keys.length; i++) {
+                        if (current.keys[i] != NONE) {
+                            out.writeLong(current.keys[i]);
+                            out.writeLong(current.values[i]);
+                        }
+                    }
+                }
+                Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempPath);
+            }
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to save fingerprints: " + path, e);
+        }
+    }
+
+    /**
+     * Loads the fingerprints of the previous crawl.
+     * @return The fingerprints, which are empty if there is no cache or its configuration is different.
+     */
+    protected LongLongMap load() {
+        if (!Files.exists(path)) {
+            return new LongLongMap(16);
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readLong() != configHash) {
+                logger.info("Fingerprints in {} are ignored because the configuration is changed.", path);
+                return new LongLongMap(16);
+            }
+            final int size = in.readInt();
+            final LongLongMap map = new LongLongMap(size);
+            for (int i = 0; i < size; i++) {
+                map.put(in.readLong(), in.readLong());
+            }
+            logger.info("Loaded {} fingerprints from {}", size, path);
+            return map;
+        } catch (final IOException e) {
+            logger.warn("Fingerprints in {} are ignored because they cannot be read.", path, e);
+            return new LongLongMap(16);
+        }
+    }
+
+    /**
+     * Gets the fingerprint of a hit.
+     * @param hit The search hit.
+     * @return The fingerprint, or {@link #NONE} if the hit does not have it.
+     */
+    protected long getFingerprint(final SearchHit hit) {
+        switch (mode) {
+        case MODE_VERSION:
+            return hit.getVersion() >= 0 ? nonNone(MurmurHash3.murmur64(hit.getVersion())) : NONE;
+        case MODE_SEQ_NO:
+            return hit.getSeqNo() >= 0 && hit.getPrimaryTerm() > 0
+                    ? nonNone(MurmurHash3.murmur64(hit.getSeqNo() * 31 + MurmurHash3.murmur64(hit.getPrimaryTerm()))) : NONE;
+        default:
+            final BytesReference source = hit.getSourceRef();
+            final Map<String, DocumentField> fields = hit.getFields();
+            if (source == null && fields.isEmpty()) {
+                return NONE;
+            }
+            long fingerprint = NONE;
+            if (source != null) {
+                final BytesRef bytes = source.toBytesRef();
+                fingerprint = MurmurHash3.hash128(bytes.bytes, bytes.offset, bytes.length, 0, new MurmurHash3.Hash128()).h1;
+            }
+            if (!fields.isEmpty()) {
+                // scripts read the fields as well as the source, so a change of a doc value field is a change of the document
+                fingerprint = fingerprint * 31 + hashFields(fields);
+            }
+            return nonNone(fingerprint);
+        }
+    }
+
+    /**
+     * Hashes the fields of a hit, such as doc value fields and stored fields, in the order of their names.
+     * @param fields The fields of the hit.
+     * @return The hash.
+     */
+    protected static long hashFields(final Map<String, DocumentField> fields) {
+        final StringBuilder buf = new StringBuilder();
+        for (final Map.Entry<String, DocumentField> entry : new TreeMap<>(fields).entrySet()) {
+            buf.append(entry.getKey()).append('\u0000').append(entry.getValue().getValues()).append('\n');
+        }
+        return hash(buf.toString());
+    }
+
+    /**
+     * Gets the key of a hit.
+     * @param hit The search hit.
+     * @return The hash of the index and the ID.
+     */
+    protected static long getKey(final SearchHit hit) {
+        return hash(hit.getIndex() + "/" + hit.getId());
+    }
+
+    /**
+     * Hashes a string into a long other than {@link #NONE}.
+     * @param value The string.
+     * @return The hash.
+     */
+    protected static long hash(final String value) {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        return nonNone(MurmurHash3.hash128(bytes, 0, bytes.length, 0, new MurmurHash3.Hash128()).h1);
+    }
+
+    private static long nonNone(final long value) {
+        return value == NONE ? 1L : value;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "FingerprintCache[path=%s, mode=%s, previous=%d, current=%d]", path, mode, previous.size(),
+                current.size());
+    }
+
+    /**
+     * Open addressing hash map of longs, in which {@link FingerprintCache#NONE} marks an empty slot.
+     */
+    protected static class LongLongMap {
+        long[] keys;
+
+        long[] values;
+
+        int size;
+
+        LongLongMap(final int expectedSize) {
+            int capacity = 16;
+            while (capacity * 3 < expectedSize * 4) {
+                capacity <<= 1;
+            }
+            keys = new long[capacity];
+            values = new long[capacity];
+        }
+
+        long get(final long key) {
+            final int mask = keys.length - 1;
+            for (int i = (int) MurmurHash3.murmur64(key) & mask;; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return values[i];
+                }
+                if (keys[i] == NONE) {
+                    return NONE;
+                }
+            }
+        }
+
+        void put(final long key, final long value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize();
+            }
+            final int mask = keys.length - 1;
+            for (int i = (int) MurmurHash3.murmur64(key) & mask;; i = (i + 1) & mask) {
+                if (keys[i] == NONE) {
+                    keys[i] = key;
+                    values[i] = value;
+                    size++;
+                    return;
+                }
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        private void resize() {
+            final long[] oldKeys = keys;
+            final long[] oldValues = values;
+            keys = new long[oldKeys.length * 2];
+            values = new long[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != NONE) {
+                    put(oldKeys[i], oldValues[i]);
+                }
+            }
+        }
+    }
+}
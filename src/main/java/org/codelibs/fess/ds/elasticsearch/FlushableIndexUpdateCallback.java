@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+
+/**
+ * Callback which can index the documents stored so far without ending the crawl.
+ * Checkpoints, watermarks and fingerprints are saved only after a flush, because {@link #commit()} is the last call to a callback.
+ */
+public interface FlushableIndexUpdateCallback extends IndexUpdateCallback {
+
+    /**
+     * Indexes the documents stored so far. More documents can be stored after it.
+     */
+    void flush();
+
+    /**
+     * Returns true if {@link #flush()} indexes the stored documents, which may depend on a delegate callback.
+     * @return True if the callback can be flushed.
+     */
+    default boolean canFlush() {
+        return true;
+    }
+}
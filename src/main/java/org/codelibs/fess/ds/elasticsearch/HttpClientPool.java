@@ -0,0 +1,320 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fesen.client.HttpClient;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.transport.client.Client;
+
+/**
+ * Pool of Elasticsearch clients shared by crawls.
+ * Clients are cached by their settings, so crawls against the same cluster reuse warmed connections.
+ * A client is closed when it has not been used for the idle timeout, and it is checked before reuse
+ * if it has been idle for the health check interval.
+ */
+public class HttpClientPool implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(HttpClientPool.class);
+
+    /**
+     * The cached clients by their settings.
+     */
+    protected final Map<Settings, PooledClient> clients = new HashMap<>();
+
+    /**
+     * The executor service to evict idle clients.
+     */
+    protected final ScheduledExecutorService evictionExecutorService;
+
+    /**
+     * The time in milliseconds after which an unused client is closed.
+     */
+    protected long idleTimeout = 10 * 60 * 1000L;
+
+    /**
+     * The idle time in milliseconds after which a client is checked before reuse.
+     */
+    protected long healthCheckInterval = 60 * 1000L;
+
+    /**
+     * The timeout of the health check.
+     */
+    protected String healthCheckTimeout = "10s";
+
+    /**
+     * True if the pool is closed.
+     */
+    protected boolean closed;
+
+    /**
+     * Constructor.
+     */
+    public HttpClientPool() {
+        evictionExecutorService = Executors.newSingleThreadScheduledExecutor(r -> {
+            final Thread thread = new Thread(r, "ElasticsearchClientEviction");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictionExecutorService.scheduleWithFixedDelay(this::evictIdleClients, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Acquires the client for the settings. The lease must be closed after use.
+     * @param settings The settings of the client.
+     * @return The lease of the client.
+     */
+    public Lease acquire(final Settings settings) {
+        PooledClient pooledClient;
+        final boolean healthCheck;
+        synchronized (this) {
+            if (closed) {
+                throw new IllegalStateException("The client pool is closed.");
+            }
+            pooledClient = clients.get(settings);
+            if (pooledClient == null) {
+                pooledClient = new PooledClient(createClient(settings));
+                clients.put(settings, pooledClient);
+            }
+            // a client in use by other crawls is known to work
+            healthCheck = pooledClient.refCount == 0 && pooledClient.isIdle(healthCheckInterval);
+            pooledClient.refCount++;
+        }
+
+        if (healthCheck && !isHealthy(pooledClient.client)) {
+            synchronized (this) {
+                pooledClient.refCount--;
+                if (clients.get(settings) == pooledClient) {
+                    clients.remove(settings);
+                }
+                if (pooledClient.refCount == 0) {
+                    closeClient(pooledClient.client);
+                }
+            }
+            logger.info("Recreating an unhealthy client.");
+            return acquire(settings);
+        }
+        return new Lease(settings, pooledClient);
+    }
+
+    /**
+     * Releases the leased client.
+     * @param settings The settings of the client.
+     * @param pooledClient The pooled client.
+     */
+    protected synchronized void release(final Settings settings, final PooledClient pooledClient) {
+        pooledClient.refCount--;
+        pooledClient.lastUsedTime = System.currentTimeMillis();
+        if (pooledClient.refCount == 0 && (closed || clients.get(settings) != pooledClient)) {
+            closeClient(pooledClient.client);
+        }
+    }
+
+    /**
+     * Closes the clients which have been unused for the idle timeout.
+     */
+    protected synchronized void evictIdleClients() {
+        final Iterator<PooledClient> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            final PooledClient pooledClient = iterator.next();
+            if (pooledClient.refCount == 0 && pooledClient.isIdle(idleTimeout)) {
+                iterator.remove();
+                closeClient(pooledClient.client);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Evicted an idle client.");
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a client.
+     * @param settings The settings of the client.
+     * @return The client.
+     */
+    protected Client createClient(final Settings settings) {
+        return new HttpClient(settings, null);
+    }
+
+    /**
+     * Checks if the client can access the cluster.
+     * @param client The client.
+     * @return True if the client is healthy.
+     */
+    protected boolean isHealthy(final Client client) {
+        try {
+            client.admin().cluster().prepareHealth().execute().actionGet(healthCheckTimeout);
+            return true;
+        } catch (final Exception e) {
+            logger.warn("Failed to check the health of the cluster.", e);
+            return false;
+        }
+    }
+
+    /**
+     * Closes the client.
+     * @param client The client.
+     */
+    protected void closeClient(final Client client) {
+        try {
+            client.close();
+        } catch (final Exception e) {
+            logger.warn("Failed to close the client.", e);
+        }
+    }
+
+    /**
+     * Gets the number of cached clients.
+     * @return The number of clients.
+     */
+    public synchronized int size() {
+        return clients.size();
+    }
+
+    /**
+     * Sets the time in milliseconds after which an unused client is closed.
+     * @param idleTimeout The idle timeout.
+     */
+    public void setIdleTimeout(final long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Sets the idle time in milliseconds after which a client is checked before reuse.
+     * @param healthCheckInterval The health check interval.
+     */
+    public void setHealthCheckInterval(final long healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * Sets the timeout of the health check.
+     * @param healthCheckTimeout The timeout, like 10s.
+     */
+    public void setHealthCheckTimeout(final String healthCheckTimeout) {
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    /**
+     * Closes the unused clients. The leased clients are closed when they are released.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        evictionExecutorService.shutdownNow();
+        final Iterator<PooledClient> iterator = clients.values().iterator();
+        while (iterator.hasNext()) {
+            final PooledClient pooledClient = iterator.next();
+            iterator.remove();
+            if (pooledClient.refCount == 0) {
+                closeClient(pooledClient.client);
+            }
+        }
+    }
+
+    /**
+     * Client with its reference count. The fields are guarded by the pool.
+     */
+    protected static class PooledClient {
+
+        /**
+         * The client.
+         */
+        protected final Client client;
+
+        /**
+         * The number of leases.
+         */
+        protected int refCount;
+
+        /**
+         * The time when the client was released last, or 0 if it has never been used.
+         */
+        protected long lastUsedTime;
+
+        /**
+         * Constructor.
+         * @param client The client.
+         */
+        protected PooledClient(final Client client) {
+            this.client = client;
+        }
+
+        /**
+         * Checks if the client has been released for the time.
+         * @param time The time in milliseconds.
+         * @return True if the client has been idle for the time.
+         */
+        protected boolean isIdle(final long time) {
+            return lastUsedTime > 0 && System.currentTimeMillis() - lastUsedTime >= time;
+        }
+    }
+
+    /**
+     * Lease of a pooled client. Closing it releases the client to the pool.
+     */
+    public class Lease implements AutoCloseable {
+
+        /**
+         * The settings of the client.
+         */
+        protected final Settings settings;
+
+        /**
+         * The pooled client.
+         */
+        protected final PooledClient pooledClient;
+
+        /**
+         * True if the lease is released.
+         */
+        protected boolean released;
+
+        /**
+         * Constructor.
+         * @param settings The settings of the client.
+         * @param pooledClient The pooled client.
+         */
+        protected Lease(final Settings settings, final PooledClient pooledClient) {
+            this.settings = settings;
+            this.pooledClient = pooledClient;
+        }
+
+        /**
+         * Gets the client. It must not be closed by the caller.
+         * @return The client.
+         */
+        public Client getClient() {
+            return pooledClient.client;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                release(settings, pooledClient);
+            }
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Map of script bindings which overlays per-hit values on crawl-level values.
+ * The crawl-level map is shared by all hits and never modified, so building the bindings
+ * of a hit does not copy the parameters of the data config.
+ */
+public class LayeredBindingMap extends AbstractMap<String, Object> {
+
+    /**
+     * The crawl-level values. It is not modified.
+     */
+    protected final Map<String, Object> base;
+
+    /**
+     * The per-hit values.
+     */
+    protected final Map<String, Object> overlay = new HashMap<>(32);
+
+    /**
+     * The keys of the crawl-level values removed from this map.
+     */
+    protected Set<String> removedKeys;
+
+    /**
+     * Constructor.
+     * @param base The crawl-level values.
+     */
+    public LayeredBindingMap(final Map<String, Object> base) {
+        this.base = base;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        final Object value = overlay.get(key);
+        if (value != null || overlay.containsKey(key)) {
+            return value;
+        }
+        if (isRemoved(key)) {
+            return null;
+        }
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return overlay.containsKey(key) || !isRemoved(key) && base.containsKey(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        final Object old = get(key);
+        if (removedKeys != null) {
+            removedKeys.remove(key);
+        }
+        overlay.put(key, value);
+        return old;
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        final Object old = get(key);
+        overlay.remove(key);
+        if (key instanceof String k && base.containsKey(k)) {
+            if (removedKeys == null) {
+                removedKeys = new HashSet<>();
+            }
+            removedKeys.add(k);
+        }
+        return old;
+    }
+
+    @Override
+    public int size() {
+        int size = base.size();
+        for (final String key : overlay.keySet()) {
+            if (!base.containsKey(key)) {
+                size++;
+            }
+        }
+        if (removedKeys != null) {
+            size -= removedKeys.size();
+        }
+        return size;
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return LayeredBindingMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Checks if the crawl-level value is removed from this map.
+     * @param key The key.
+     * @return true if removed.
+     */
+    protected boolean isRemoved(final Object key) {
+        return removedKeys != null && removedKeys.contains(key);
+    }
+
+    /**
+     * Iterator over the per-hit values followed by the crawl-level values which are not overlaid or removed.
+     */
+    protected class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private final Iterator<Entry<String, Object>> overlayIterator = overlay.entrySet().iterator();
+
+        private final Iterator<Entry<String, Object>> baseIterator = base.entrySet().iterator();
+
+        private Entry<String, Object> nextBaseEntry;
+
+        @Override
+        public boolean hasNext() {
+            if (overlayIterator.hasNext()) {
+                return true;
+            }
+            while (nextBaseEntry == null && baseIterator.hasNext()) {
+                final Entry<String, Object> entry = baseIterator.next();
+                if (!overlay.containsKey(entry.getKey()) && !isRemoved(entry.getKey())) {
+                    nextBaseEntry = entry;
+                }
+            }
+            return nextBaseEntry != null;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (overlayIterator.hasNext()) {
+                return overlayIterator.next();
+            }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final Entry<String, Object> entry = nextBaseEntry;
+            nextBaseEntry = null;
+            return entry;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensearch.search.SearchHit;
+
+/**
+ * Map of the _source of a hit which is parsed on first access.
+ * Scripts which do not use the source do not pay for parsing it.
+ */
+public class LazySourceMap extends AbstractMap<String, Object> {
+
+    /**
+     * The search hit.
+     */
+    protected final SearchHit hit;
+
+    /**
+     * The extractor to parse only the referenced fields, or null to parse the whole source.
+     */
+    protected final SourceFieldExtractor extractor;
+
+    /**
+     * The parsed source.
+     */
+    protected Map<String, Object> sourceMap;
+
+    /**
+     * Constructor.
+     * @param hit The search hit. It must have the source.
+     * @param extractor The extractor to parse only the referenced fields, or null to parse the whole source.
+     */
+    public LazySourceMap(final SearchHit hit, final SourceFieldExtractor extractor) {
+        this.hit = hit;
+        this.extractor = extractor;
+    }
+
+    /**
+     * Gets the parsed source, parsing it on first access.
+     * @return The source map.
+     */
+    protected Map<String, Object> getSourceMap() {
+        if (sourceMap == null) {
+            sourceMap = extractor != null ? extractor.extract(hit.getSourceRef()) : hit.getSourceAsMap();
+        }
+        return sourceMap;
+    }
+
+    /**
+     * Checks if the source has been parsed.
+     * @return true if parsed.
+     */
+    public boolean isParsed() {
+        return sourceMap != null;
+    }
+
+    @Override
+    public Object get(final Object key) {
+        return getSourceMap().get(key);
+    }
+
+    @Override
+    public boolean containsKey(final Object key) {
+        return getSourceMap().containsKey(key);
+    }
+
+    @Override
+    public Object put(final String key, final Object value) {
+        return getSourceMap().put(key, value);
+    }
+
+    @Override
+    public Object remove(final Object key) {
+        return getSourceMap().remove(key);
+    }
+
+    @Override
+    public int size() {
+        return getSourceMap().size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return getSourceMap().entrySet();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.search.SearchHit;
+
+/**
+ * SearchHitReader which records the fetched pages to CrawlMetrics.
+ * The empty page at the end is not recorded, so it does not lower the averages per page.
+ */
+public class MeteredSearchHitReader implements SearchHitReader {
+
+    /**
+     * The reader to measure.
+     */
+    protected final SearchHitReader reader;
+
+    /**
+     * The metrics of the crawl.
+     */
+    protected final CrawlMetrics metrics;
+
+    /**
+     * Constructor.
+     * @param reader The reader to measure.
+     * @param metrics The metrics of the crawl.
+     */
+    public MeteredSearchHitReader(final SearchHitReader reader, final CrawlMetrics metrics) {
+        this.reader = reader;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public SearchHit[] nextPage() {
+        final long startTime = System.nanoTime();
+        final SearchHit[] hits = reader.nextPage();
+        if (hits.length > 0) {
+            metrics.recordFetch(hits.length, SearchHitReader.getSourceBytes(hits), System.nanoTime() - startTime);
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+    }
+}
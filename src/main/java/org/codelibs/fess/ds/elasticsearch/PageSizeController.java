@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Tunes the page size between the minimum and maximum sizes.
+ * The size is decreased when a page exceeds the target fetch latency or the maximum bytes,
+ * and increased while both have headroom and the processing of pages does not dominate the fetching.
+ */
+public class PageSizeController {
+
+    private static final Logger logger = LogManager.getLogger(PageSizeController.class);
+
+    /**
+     * The minimum page size.
+     */
+    protected final int minSize;
+
+    /**
+     * The maximum page size.
+     */
+    protected final int maxSize;
+
+    /**
+     * The target fetch latency in milliseconds.
+     */
+    protected final long targetLatency;
+
+    /**
+     * The maximum bytes of a page.
+     */
+    protected final long maxBytes;
+
+    /**
+     * The current page size.
+     */
+    protected int size;
+
+    /**
+     * The processing time of the last page in milliseconds, or -1 if no page has been processed.
+     */
+    protected long lastProcessTime = -1;
+
+    /**
+     * Constructor.
+     * @param initialSize The initial page size.
+     * @param minSize The minimum page size.
+     * @param maxSize The maximum page size.
+     * @param targetLatency The target fetch latency in milliseconds.
+     * @param maxBytes The maximum bytes of a page.
+     */
+    public PageSizeController(final int initialSize, final int minSize, final int maxSize, final long targetLatency, final long maxBytes) {
+        this.minSize = Math.max(1, minSize);
+        this.maxSize = Math.max(this.minSize, maxSize);
+        this.targetLatency = targetLatency;
+        this.maxBytes = maxBytes;
+        size = clamp(initialSize);
+    }
+
+    /**
+     * Gets the page size for the next request.
+     * @return The page size.
+     */
+    public synchronized int getSize() {
+        return size;
+    }
+
+    /**
+     * Updates the page size with the measurement of a fetched page.
+     * @param numOfHits The number of hits in the page.
+     * @param bytes The bytes of the page.
+     * @param fetchTime The fetch latency in milliseconds.
+     */
+    public synchronized void onPageFetched(final int numOfHits, final long bytes, final long fetchTime) {
+        if (numOfHits <= 0) {
+            return;
+        }
+
+        final int newSize;
+        if (bytes > maxBytes || fetchTime > targetLatency) {
+            final double ratio = Math.min((double) maxBytes / Math.max(bytes, 1), (double) targetLatency / Math.max(fetchTime, 1));
+            newSize = clamp((int) (numOfHits * ratio));
+        } else if (numOfHits < size) {
+            // the last page of a reader
+            return;
+        } else if (fetchTime * 2 < targetLatency && bytes * 2 < maxBytes && (lastProcessTime < 0 || lastProcessTime <= fetchTime * 4)) {
+            newSize = clamp(size + Math.max(1, size / 2));
+        } else {
+            return;
+        }
+
+        if (newSize != size) {
+            logger.info("Page size changed from {} to {}: hits={}, bytes={}, fetch={}ms, process={}ms", size, newSize, numOfHits, bytes,
+                    fetchTime, lastProcessTime);
+            size = newSize;
+        }
+    }
+
+    /**
+     * Records the processing time of a page by the scripts and the callback.
+     * @param numOfHits The number of hits in the page.
+     * @param processTime The processing time in milliseconds.
+     */
+    public synchronized void onPageProcessed(final int numOfHits, final long processTime) {
+        if (numOfHits > 0) {
+            lastProcessTime = processTime;
+        }
+    }
+
+    /**
+     * Halves the size because the source cluster rejected a request.
+     */
+    public synchronized void onRejected() {
+        final int newSize = clamp(size / 2);
+        if (newSize != size) {
+            logger.info("Page size changed from {} to {}: rejected", size, newSize);
+            size = newSize;
+        }
+    }
+
+    /**
+     * Limits the size between the minimum and maximum sizes.
+     * @param value The size.
+     * @return The limited size.
+     */
+    protected int clamp(final int value) {
+        return Math.max(minSize, Math.min(maxSize, value));
+    }
+}
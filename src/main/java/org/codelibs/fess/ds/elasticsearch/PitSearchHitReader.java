@@ -0,0 +1,119 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.builder.PointInTimeBuilder;
+
+/**
+ * SearchHitReader which pages through the hits of a point in time with search_after.
+ * The point in time is owned by the caller because it may be shared by sliced readers.
+ * The point in time API is the one of OpenSearch.
+ */
+public class PitSearchHitReader implements SearchHitReader {
+
+    /**
+     * The builder for the search request. It must be sorted.
+     */
+    protected final SearchRequestBuilder builder;
+
+    /**
+     * The point in time, which holds the latest ID.
+     */
+    protected final PointInTime pointInTime;
+
+    /**
+     * The keep alive of the point in time.
+     */
+    protected final TimeValue keepAlive;
+
+    /**
+     * The timeout for the request.
+     */
+    protected final String timeout;
+
+    /**
+     * The controller of the page size, or null if the page size is fixed.
+     */
+    protected final PageSizeController pageSizeController;
+
+    /**
+     * The sort values of the last hit.
+     */
+    protected Object[] searchAfter;
+
+    /**
+     * True if all hits have been read.
+     */
+    protected boolean finished;
+
+    /**
+     * Constructor.
+     * @param builder The builder for the search request. It must be sorted.
+     * @param pointInTime The point in time, which is updated with the ID returned by each search.
+     * @param keepAlive The keep alive of the point in time.
+     * @param timeout The timeout for the request.
+     * @param pageSizeController The controller of the page size, or null if the page size is fixed.
+     * @param searchAfter The sort values to resume after, or null to read from the first hit.
+     */
+    public PitSearchHitReader(final SearchRequestBuilder builder, final PointInTime pointInTime, final TimeValue keepAlive,
+            final String timeout, final PageSizeController pageSizeController, final Object[] searchAfter) {
+        this.builder = builder;
+        this.pointInTime = pointInTime;
+        this.searchAfter = searchAfter;
+        this.keepAlive = keepAlive;
+        this.timeout = timeout;
+        this.pageSizeController = pageSizeController;
+    }
+
+    @Override
+    public SearchHit[] nextPage() {
+        if (finished) {
+            return EMPTY_PAGE;
+        }
+
+        // the point in time ID may be updated by the searches of this or another slice
+        builder.setPointInTime(new PointInTimeBuilder(pointInTime.getId()).setKeepAlive(keepAlive));
+        if (searchAfter != null) {
+            builder.searchAfter(searchAfter);
+        }
+        if (pageSizeController != null) {
+            builder.setSize(pageSizeController.getSize());
+        }
+        final long startTime = System.currentTimeMillis();
+        final SearchResponse response = builder.execute().actionGet(timeout);
+        pointInTime.update(response.pointInTimeId());
+
+        final SearchHit[] hits = response.getHits().getHits();
+        if (pageSizeController != null) {
+            pageSizeController.onPageFetched(hits.length, SearchHitReader.getSourceBytes(hits), System.currentTimeMillis() - startTime);
+        }
+        if (hits.length == 0) {
+            finished = true;
+        } else {
+            searchAfter = hits[hits.length - 1].getSortValues();
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+/**
+ * Holder of a point in time ID which is shared by sliced readers.
+ * A search may return a new ID for the point in time, so the latest one is used by the next search and deleted at the end.
+ */
+public class PointInTime {
+
+    /**
+     * The latest point in time ID.
+     */
+    protected volatile String id;
+
+    /**
+     * Constructor.
+     * @param id The point in time ID.
+     */
+    public PointInTime(final String id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns the latest point in time ID.
+     * @return The point in time ID.
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Updates the point in time ID with the one returned by a search.
+     * @param newId The returned point in time ID, or null if it was not returned.
+     */
+    public void update(final String newId) {
+        if (newId != null) {
+            id = newId;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return id;
+    }
+}
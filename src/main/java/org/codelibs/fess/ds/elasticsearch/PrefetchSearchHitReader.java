@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.search.SearchHit;
+
+/**
+ * SearchHitReader which fetches the next pages in the background while the current page is processed.
+ * The number of prefetched pages is bounded, so the fetching blocks until the pages are consumed.
+ */
+public class PrefetchSearchHitReader implements SearchHitReader {
+
+    private static final Logger logger = LogManager.getLogger(PrefetchSearchHitReader.class);
+
+    /**
+     * The reader to fetch pages from.
+     */
+    protected final SearchHitReader reader;
+
+    /**
+     * The prefetched pages, or the exception thrown by the fetching.
+     */
+    protected final BlockingQueue<Object> queue;
+
+    /**
+     * The executor service for the fetching.
+     */
+    protected final ExecutorService executorService;
+
+    /**
+     * The future of the fetching.
+     */
+    protected final Future<?> future;
+
+    /**
+     * False if this reader is closed.
+     */
+    protected volatile boolean running = true;
+
+    /**
+     * True if all hits have been read.
+     */
+    protected boolean finished;
+
+    /**
+     * Constructor.
+     * @param reader The reader to fetch pages from.
+     * @param pages The maximum number of prefetched pages.
+     */
+    public PrefetchSearchHitReader(final SearchHitReader reader, final int pages) {
+        this.reader = reader;
+        queue = new ArrayBlockingQueue<>(pages);
+        executorService = Executors.newSingleThreadExecutor();
+        future = executorService.submit(this::prefetch);
+    }
+
+    /**
+     * Fetches pages until all hits are read or this reader is closed.
+     */
+    protected void prefetch() {
+        try {
+            while (running) {
+                final SearchHit[] hits = reader.nextPage();
+                queue.put(hits);
+                if (hits.length == 0) {
+                    return;
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            if (running) {
+                try {
+                    queue.put(e);
+                } catch (final InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public SearchHit[] nextPage() {
+        if (finished) {
+            return EMPTY_PAGE;
+        }
+
+        final Object page;
+        try {
+            page = queue.take();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DataStoreException("Interrupted while prefetching pages.", e);
+        }
+        if (page instanceof SearchHit[] hits) {
+            if (hits.length == 0) {
+                finished = true;
+            }
+            return hits;
+        }
+        finished = true;
+        throw new DataStoreException("Failed to prefetch pages.", (Throwable) page);
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        running = false;
+        future.cancel(true);
+        executorService.shutdown();
+        try {
+            // the reader must not be used by the fetching when it is closed
+            if (!executorService.awaitTermination(1, TimeUnit.MINUTES)) {
+                logger.warn("Prefetching did not stop in time.");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        queue.clear();
+        reader.close();
+    }
+}
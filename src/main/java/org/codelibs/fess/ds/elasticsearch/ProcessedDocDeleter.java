@@ -0,0 +1,242 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.action.bulk.BackoffPolicy;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkProcessor;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteRequest;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.transport.client.Client;
+
+/**
+ * Deletes processed documents from the source cluster in the background.
+ * Delete requests are batched by the number of actions, bytes and flush interval,
+ * and rejected requests and items are retried with backoff.
+ * Documents which are not deleted are crawled again by the next crawl, so their number fails the crawl on close.
+ */
+public class ProcessedDocDeleter implements AutoCloseable {
+
+    private static final Logger logger = LogManager.getLogger(ProcessedDocDeleter.class);
+
+    /**
+     * The bulk processor.
+     */
+    protected final BulkProcessor bulkProcessor;
+
+    /**
+     * The Elasticsearch client.
+     */
+    protected final Client client;
+
+    /**
+     * The backoff policy to retry rejected requests and items.
+     */
+    protected final BackoffPolicy backoffPolicy;
+
+    /**
+     * The scheduler of retries of rejected bulk requests.
+     */
+    protected final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        final Thread thread = new Thread(r, "ProcessedDocDeleter-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * The timeout to wait for the in-flight requests on close.
+     */
+    protected final TimeValue closeTimeout;
+
+    /**
+     * The number of deleted documents.
+     */
+    protected final AtomicLong deletedCount = new AtomicLong();
+
+    /**
+     * The number of documents which failed to be deleted.
+     */
+    protected final AtomicLong failedCount = new AtomicLong();
+
+    /**
+     * The start times in nanoseconds of the bulk requests in flight.
+     */
+    protected final Map<Long, Long> startTimes = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     * @param client The Elasticsearch client.
+     * @param bulkActions The number of actions to flush a bulk request.
+     * @param bulkSize The size to flush a bulk request.
+     * @param flushInterval The interval to flush a bulk request.
+     * @param concurrentRequests The number of concurrent in-flight bulk requests.
+     * @param backoffPolicy The backoff policy to retry rejected requests and items.
+     * @param closeTimeout The timeout to wait for the in-flight requests on close.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     */
+    public ProcessedDocDeleter(final Client client, final int bulkActions, final ByteSizeValue bulkSize, final TimeValue flushInterval,
+            final int concurrentRequests, final BackoffPolicy backoffPolicy, final TimeValue closeTimeout, final CrawlMetrics metrics) {
+        this.client = client;
+        this.backoffPolicy = backoffPolicy;
+        this.closeTimeout = closeTimeout;
+        bulkProcessor = BulkProcessor.builder(this::execute, new BulkProcessor.Listener() {
+            @Override
+            public void beforeBulk(final long executionId, final BulkRequest request) {
+                startTimes.put(executionId, System.nanoTime());
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Deleting {} processed documents: {}", request.numberOfActions(), executionId);
+                }
+            }
+
+            @Override
+            public void afterBulk(final long executionId, final BulkRequest request, final BulkResponse response) {
+                recordDelete(executionId, metrics);
+                for (final BulkItemResponse item : response.getItems()) {
+                    if (item.isFailed()) {
+                        failedCount.incrementAndGet();
+                        logger.warn("Failed to delete {}/_doc/{}: {}", item.getIndex(), item.getId(), item.getFailureMessage());
+                    } else {
+                        deletedCount.incrementAndGet();
+                    }
+                }
+            }
+
+            @Override
+            public void afterBulk(final long executionId, final BulkRequest request, final Throwable failure) {
+                recordDelete(executionId, metrics);
+                failedCount.addAndGet(request.numberOfActions());
+                logger.warn("Failed to delete {} processed documents.", request.numberOfActions(), failure);
+            }
+        })
+                .setBulkActions(bulkActions)
+                .setBulkSize(bulkSize)
+                .setFlushInterval(flushInterval)
+                .setConcurrentRequests(concurrentRequests)
+                .setBackoffPolicy(backoffPolicy)
+                .build();
+    }
+
+    /**
+     * Executes a bulk request with the backoff policy.
+     * @param request The bulk request.
+     * @param listener The listener of the response.
+     */
+    protected void execute(final BulkRequest request, final ActionListener<BulkResponse> listener) {
+        execute(request, listener, backoffPolicy.iterator());
+    }
+
+    /**
+     * Executes a bulk request, and retries it with backoff if the whole request is rejected.
+     * The bulk processor retries only rejected items, and a rejected request has not deleted any documents.
+     * @param request The bulk request.
+     * @param listener The listener of the response.
+     * @param backoff The remaining delays before retries.
+     */
+    protected void execute(final BulkRequest request, final ActionListener<BulkResponse> listener, final Iterator<TimeValue> backoff) {
+        client.bulk(request, ActionListener.wrap(listener::onResponse, e -> {
+            if (!BackPressureController.isRejected(e) || !backoff.hasNext()) {
+                listener.onFailure(e);
+                return;
+            }
+            final TimeValue delay = backoff.next();
+            logger.warn("The source cluster rejected deleting {} processed documents. Retrying in {}.", request.numberOfActions(),
+                    delay);
+            try {
+                retryScheduler.schedule(() -> execute(request, listener, backoff), delay.millis(), TimeUnit.MILLISECONDS);
+            } catch (final RuntimeException re) {
+                e.addSuppressed(re);
+                listener.onFailure(e);
+            }
+        }));
+    }
+
+    /**
+     * Records the time of a finished bulk request.
+     * @param executionId The ID of the bulk request.
+     * @param metrics The metrics of the crawl, or null if they are not recorded.
+     */
+    protected void recordDelete(final long executionId, final CrawlMetrics metrics) {
+        final Long startTime = startTimes.remove(executionId);
+        if (metrics != null && startTime != null) {
+            metrics.recordDelete(System.nanoTime() - startTime);
+        }
+    }
+
+    /**
+     * Adds a document to delete.
+     * @param index The index name.
+     * @param id The document ID.
+     */
+    public void delete(final String index, final String id) {
+        bulkProcessor.add(new DeleteRequest(index, id));
+    }
+
+    /**
+     * Gets the number of deleted documents.
+     * @return The number of deleted documents.
+     */
+    public long getDeletedCount() {
+        return deletedCount.get();
+    }
+
+    /**
+     * Gets the number of documents which failed to be deleted.
+     * @return The number of failed documents.
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Flushes the remaining requests and waits for the in-flight requests.
+     * @throws DataStoreException If some documents failed to be deleted or the requests did not finish in time.
+     */
+    @Override
+    public void close() {
+        boolean finished = false;
+        try {
+            finished = bulkProcessor.awaitClose(closeTimeout.millis(), TimeUnit.MILLISECONDS);
+            if (!finished) {
+                logger.warn("Deleting processed documents did not finish in {}.", closeTimeout);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while deleting processed documents.", e);
+        } finally {
+            retryScheduler.shutdownNow();
+        }
+        logger.info("Deleted processed documents: deleted={}, failed={}", deletedCount.get(), failedCount.get());
+        if (failedCount.get() > 0 || !finished) {
+            throw new DataStoreException("Failed to delete processed documents: deleted=" + deletedCount.get() + ", failed="
+                    + failedCount.get() + ", finished=" + finished);
+        }
+    }
+}
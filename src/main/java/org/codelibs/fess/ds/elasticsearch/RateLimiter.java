@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+/**
+ * Token bucket rate limiter of documents and bytes per second, shared by all readers of a crawl.
+ * Each bucket holds up to the burst seconds of its rate, and a page may overdraw it, so the next page waits for the refill.
+ */
+public class RateLimiter {
+
+    /**
+     * The bucket of documents, or null if documents are not limited.
+     */
+    protected final Bucket docBucket;
+
+    /**
+     * The bucket of bytes, or null if bytes are not limited.
+     */
+    protected final Bucket byteBucket;
+
+    /**
+     * Constructor.
+     * @param docsPerSecond The documents per second, or 0 if documents are not limited.
+     * @param bytesPerSecond The bytes per second, or 0 if bytes are not limited.
+     * @param burstSeconds The seconds of the rates which can be consumed at once.
+     */
+    public RateLimiter(final long docsPerSecond, final long bytesPerSecond, final double burstSeconds) {
+        final long now = System.nanoTime();
+        docBucket = docsPerSecond > 0 ? new Bucket(docsPerSecond, burstSeconds, now) : null;
+        byteBucket = bytesPerSecond > 0 ? new Bucket(bytesPerSecond, burstSeconds, now) : null;
+    }
+
+    /**
+     * Takes the tokens of a page.
+     * @param docs The number of documents.
+     * @param bytes The number of bytes.
+     * @return The time in milliseconds to wait before the page is processed.
+     */
+    public long reserve(final int docs, final long bytes) {
+        return reserve(docs, bytes, System.nanoTime());
+    }
+
+    /**
+     * Takes the tokens of a page at the time.
+     * @param docs The number of documents.
+     * @param bytes The number of bytes.
+     * @param now The current time in nanoseconds.
+     * @return The time in milliseconds to wait before the page is processed.
+     */
+    protected synchronized long reserve(final int docs, final long bytes, final long now) {
+        long waitTime = 0;
+        if (docBucket != null) {
+            waitTime = Math.max(waitTime, docBucket.reserve(docs, now));
+        }
+        if (byteBucket != null) {
+            waitTime = Math.max(waitTime, byteBucket.reserve(bytes, now));
+        }
+        return waitTime;
+    }
+
+    /**
+     * Token bucket of a rate.
+     */
+    protected static class Bucket {
+
+        /**
+         * The tokens per second.
+         */
+        protected final double rate;
+
+        /**
+         * The maximum tokens.
+         */
+        protected final double capacity;
+
+        /**
+         * The current tokens. It is negative while the bucket is overdrawn.
+         */
+        protected double tokens;
+
+        /**
+         * The time in nanoseconds when the tokens were refilled.
+         */
+        protected long refillTime;
+
+        /**
+         * Constructor.
+         * @param rate The tokens per second.
+         * @param burstSeconds The seconds of the rate which can be consumed at once.
+         * @param now The current time in nanoseconds.
+         */
+        protected Bucket(final double rate, final double burstSeconds, final long now) {
+            this.rate = rate;
+            capacity = Math.max(1, rate * burstSeconds);
+            tokens = capacity;
+            refillTime = now;
+        }
+
+        /**
+         * Takes the tokens.
+         * @param amount The tokens to take.
+         * @param now The current time in nanoseconds.
+         * @return The time in milliseconds until the bucket is not overdrawn.
+         */
+        protected long reserve(final double amount, final long now) {
+            tokens = Math.min(capacity, tokens + (now - refillTime) * rate / 1_000_000_000d);
+            refillTime = now;
+            tokens -= amount;
+            if (tokens >= 0) {
+                return 0;
+            }
+            return (long) Math.ceil(-tokens * 1000 / rate);
+        }
+    }
+}
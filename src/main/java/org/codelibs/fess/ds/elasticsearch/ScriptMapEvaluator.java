@@ -0,0 +1,270 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.regex.Pattern;
+
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.search.SearchHit;
+
+/**
+ * Evaluates the script map of a data config for each hit.
+ * The scripts are analyzed once per crawl, and simple property paths like {@code source.title}
+ * are resolved by map lookups without invoking the script engine.
+ */
+public class ScriptMapEvaluator {
+
+    /**
+     * The pattern of a property path which is resolved without the script engine.
+     */
+    protected static final Pattern PROPERTY_PATH_PATTERN = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*(\\.[A-Za-z_][A-Za-z0-9_]*)*");
+
+    /**
+     * The pattern to find a reference to the source in a script, through the source or hit binding.
+     */
+    protected static final Pattern SOURCE_REFERENCE_PATTERN = Pattern.compile("\\b(source|hit)\\b");
+
+    /**
+     * The pattern to find a reference to the score in a script, through the score or hit binding.
+     */
+    protected static final Pattern SCORE_REFERENCE_PATTERN = Pattern.compile("\\b(score|hit)\\b");
+
+    /**
+     * The name of the source binding.
+     */
+    protected static final String SOURCE = "source";
+
+    /**
+     * The name of the hit binding.
+     */
+    protected static final String HIT = "hit";
+
+    /**
+     * The field names of the data map.
+     */
+    protected final String[] fieldNames;
+
+    /**
+     * The scripts for the fields.
+     */
+    protected final String[] scripts;
+
+    /**
+     * The property paths of the scripts, or null if the script is not a property path.
+     */
+    protected final String[][] propertyPaths;
+
+    /**
+     * The function to evaluate a script with bindings by the script engine.
+     */
+    protected final BiFunction<String, Map<String, Object>, Object> scriptFunction;
+
+    /**
+     * The extractor of the referenced source fields, or null to parse the whole source.
+     */
+    protected SourceFieldExtractor sourceFieldExtractor;
+
+    /**
+     * Constructor.
+     * @param scriptMap The script map of the data config.
+     * @param scriptFunction The function to evaluate a script with bindings by the script engine.
+     */
+    public ScriptMapEvaluator(final Map<String, String> scriptMap, final BiFunction<String, Map<String, Object>, Object> scriptFunction) {
+        this.scriptFunction = scriptFunction;
+        fieldNames = new String[scriptMap.size()];
+        scripts = new String[scriptMap.size()];
+        propertyPaths = new String[scriptMap.size()][];
+        int i = 0;
+        for (final Map.Entry<String, String> entry : scriptMap.entrySet()) {
+            fieldNames[i] = entry.getKey();
+            scripts[i] = entry.getValue();
+            propertyPaths[i] = parsePropertyPath(entry.getValue());
+            i++;
+        }
+    }
+
+    /**
+     * Parses a script as a property path.
+     * @param script The script.
+     * @return The property names of the path, or null if the script is not a property path.
+     */
+    protected String[] parsePropertyPath(final String script) {
+        if (script == null) {
+            return null;
+        }
+        final String value = script.trim();
+        if (!PROPERTY_PATH_PATTERN.matcher(value).matches()) {
+            return null;
+        }
+        return value.split("\\.");
+    }
+
+    /**
+     * Gets the source fields referenced by the scripts.
+     * @return The dot-separated paths of the referenced fields, or null if the scripts may use the whole source.
+     */
+    public Set<String> getSourcePaths() {
+        final Set<String> paths = new LinkedHashSet<>();
+        for (int i = 0; i < scripts.length; i++) {
+            final String[] path = propertyPaths[i];
+            if (path == null) {
+                if (scripts[i] != null && SOURCE_REFERENCE_PATTERN.matcher(scripts[i]).find()) {
+                    return null;
+                }
+            } else if (HIT.equals(path[0])) {
+                return null;
+            } else if (SOURCE.equals(path[0])) {
+                if (path.length == 1) {
+                    return null;
+                }
+                paths.add(String.join(".", Arrays.copyOfRange(path, 1, path.length)));
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Checks if the scripts may use the scores of hits.
+     * @return true if a script references the score or hit binding.
+     */
+    public boolean isScoreReferenced() {
+        for (int i = 0; i < scripts.length; i++) {
+            final String[] path = propertyPaths[i];
+            if (path != null ? SCORE_REFERENCE_PATTERN.matcher(path[0]).matches()
+                    : scripts[i] != null && SCORE_REFERENCE_PATTERN.matcher(scripts[i]).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Gets the top-level source fields referenced by the scripts.
+     * Only top-level fields are used because a nested property path may refer to a property of a non-object value.
+     * @return The names of the referenced top-level fields, or null if the scripts may use the whole source.
+     */
+    public Set<String> getSourceIncludes() {
+        final Set<String> paths = getSourcePaths();
+        if (paths == null) {
+            return null;
+        }
+        final Set<String> includes = new LinkedHashSet<>();
+        for (final String path : paths) {
+            final int pos = path.indexOf('.');
+            includes.add(pos == -1 ? path : path.substring(0, pos));
+        }
+        return includes;
+    }
+
+    /**
+     * Parses only the referenced source fields instead of the whole source.
+     * It is enabled only if all references to the source are property paths.
+     * @return true if enabled.
+     */
+    public boolean enableSourceFieldExtraction() {
+        final Set<String> paths = getSourcePaths();
+        if (paths == null) {
+            return false;
+        }
+        sourceFieldExtractor = new SourceFieldExtractor(paths);
+        return true;
+    }
+
+    /**
+     * Creates the source binding of a hit. The source is parsed on first access.
+     * @param hit The search hit.
+     * @return The source map, or null if the hit has no source.
+     */
+    public Map<String, Object> createSourceMap(final SearchHit hit) {
+        if (!hit.hasSource()) {
+            return null;
+        }
+        return new LazySourceMap(hit, sourceFieldExtractor);
+    }
+
+    /**
+     * Creates the fields binding of a hit from its doc value and stored fields.
+     * The map is flat, so the key of a field in an object is its full name like {@code author.name}.
+     * A field with one value is bound to the value, and a field with several values is bound to the list.
+     * @param hit The search hit.
+     * @return The fields map, which is empty if the hit has no fields.
+     */
+    public Map<String, Object> createFieldsMap(final SearchHit hit) {
+        final Map<String, DocumentField> documentFields = hit.getFields();
+        if (documentFields.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        final Map<String, Object> fields = new HashMap<>((int) (documentFields.size() / 0.75f) + 1);
+        for (final DocumentField documentField : documentFields.values()) {
+            final List<Object> values = documentField.getValues();
+            fields.put(documentField.getName(), values.size() == 1 ? values.get(0) : values);
+        }
+        return fields;
+    }
+
+    /**
+     * Evaluates all scripts and puts the non-null results into the data map.
+     * @param bindings The bindings for the scripts.
+     * @param dataMap The data map to store the results.
+     */
+    public void evaluate(final Map<String, Object> bindings, final Map<String, Object> dataMap) {
+        for (int i = 0; i < fieldNames.length; i++) {
+            final Object value = evaluate(i, bindings);
+            if (value != null) {
+                dataMap.put(fieldNames[i], value);
+            }
+        }
+    }
+
+    /**
+     * Evaluates a script.
+     * A property path is resolved by map lookups if all values on the path are maps.
+     * The rest of the path is also looked up as a dotted key, for flat maps like the fields binding.
+     * Otherwise, the script is evaluated by the script engine.
+     * @param index The index of the script.
+     * @param bindings The bindings for the script.
+     * @return The result.
+     */
+    protected Object evaluate(final int index, final Map<String, Object> bindings) {
+        final String[] path = propertyPaths[index];
+        if (path != null && bindings.containsKey(path[0])) {
+            Object value = bindings.get(path[0]);
+            int i = 1;
+            while (i < path.length && value instanceof Map<?, ?> map) {
+                if (i < path.length - 1 && !map.containsKey(path[i])) {
+                    final String key = String.join(".", Arrays.copyOfRange(path, i, path.length));
+                    if (map.containsKey(key)) {
+                        return map.get(key);
+                    }
+                }
+                value = map.get(path[i]);
+                i++;
+            }
+            if (i == path.length) {
+                return value;
+            }
+        }
+        return scriptFunction.apply(scripts[index], bindings);
+    }
+}
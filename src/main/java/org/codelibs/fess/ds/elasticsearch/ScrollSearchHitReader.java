@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.search.SearchHit;
+import org.opensearch.transport.client.Client;
+
+/**
+ * SearchHitReader which pages through the hits with a scroll.
+ * The scroll context is cleared on close.
+ */
+public class ScrollSearchHitReader implements SearchHitReader {
+
+    private static final Logger logger = LogManager.getLogger(ScrollSearchHitReader.class);
+
+    /**
+     * The Elasticsearch client.
+     */
+    protected final Client client;
+
+    /**
+     * The builder for the initial search request.
+     */
+    protected final SearchRequestBuilder builder;
+
+    /**
+     * The scroll timeout.
+     */
+    protected final String scroll;
+
+    /**
+     * The timeout for the request.
+     */
+    protected final String timeout;
+
+    /**
+     * The current scroll ID.
+     */
+    protected String scrollId;
+
+    /**
+     * True if all hits have been read.
+     */
+    protected boolean finished;
+
+    /**
+     * Constructor.
+     * @param client The Elasticsearch client.
+     * @param builder The builder for the initial search request.
+     * @param scroll The scroll timeout.
+     * @param timeout The timeout for the request.
+     */
+    public ScrollSearchHitReader(final Client client, final SearchRequestBuilder builder, final String scroll, final String timeout) {
+        this.client = client;
+        this.builder = builder;
+        this.scroll = scroll;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public SearchHit[] nextPage() {
+        if (finished) {
+            return EMPTY_PAGE;
+        }
+
+        final SearchResponse response;
+        if (scrollId == null) {
+            response = builder.setScroll(scroll).execute().actionGet(timeout);
+        } else {
+            response = client.prepareSearchScroll(scrollId).setScroll(scroll).execute().actionGet(timeout);
+        }
+        scrollId = response.getScrollId();
+
+        final SearchHit[] hits = response.getHits().getHits();
+        if (scrollId == null || hits.length == 0) {
+            finished = true;
+        }
+        return hits;
+    }
+
+    @Override
+    public void close() {
+        finished = true;
+        if (scrollId == null) {
+            return;
+        }
+        try {
+            client.prepareClearScroll().addScrollId(scrollId).execute().actionGet(timeout);
+        } catch (final Exception e) {
+            logger.warn("Failed to clear scroll: {}", scrollId, e);
+        }
+        scrollId = null;
+    }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.search.SearchHit;
+
+/**
+ * Reads search hits from Elasticsearch page by page.
+ * The search context held on the source cluster is released by {@link #close()}.
+ */
+public interface SearchHitReader extends AutoCloseable {
+
+    /**
+     * An empty page.
+     */
+    SearchHit[] EMPTY_PAGE = new SearchHit[0];
+
+    /**
+     * Fetches the next page of hits.
+     * @return The hits of the next page, or an empty array if there are no more hits.
+     */
+    SearchHit[] nextPage();
+
+    /**
+     * Gets the total bytes of the sources of the hits.
+     * @param hits The hits.
+     * @return The bytes.
+     */
+    static long getSourceBytes(final SearchHit[] hits) {
+        long bytes = 0;
+        for (final SearchHit hit : hits) {
+            final BytesReference source = hit.getSourceRef();
+            if (source != null) {
+                bytes += source.length();
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Releases the search context.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.search.slice.SliceBuilder;
+
+/**
+ * Unit of work crawled by one reader: indices, optionally one of their shards, and optionally a slice.
+ */
+public class SearchTarget {
+
+    /**
+     * The indices to search, or null to search the indices of the parameters.
+     */
+    protected final String[] indices;
+
+    /**
+     * The shard to search, or -1 to search all shards.
+     */
+    protected final int shard;
+
+    /**
+     * The slice to search, or null if the search is not sliced.
+     */
+    protected final SliceBuilder slice;
+
+    /**
+     * Constructor.
+     * @param indices The indices to search, or null to search the indices of the parameters.
+     * @param shard The shard to search, or -1 to search all shards.
+     * @param slice The slice to search, or null if the search is not sliced.
+     */
+    public SearchTarget(final String[] indices, final int shard, final SliceBuilder slice) {
+        this.indices = indices;
+        this.shard = shard;
+        this.slice = slice;
+    }
+
+    /**
+     * Gets the indices to search.
+     * @return The indices, or null to search the indices of the parameters.
+     */
+    public String[] getIndices() {
+        return indices;
+    }
+
+    /**
+     * Gets the shard to search.
+     * @return The shard, or -1 to search all shards.
+     */
+    public int getShard() {
+        return shard;
+    }
+
+    /**
+     * Gets the slice to search.
+     * @return The slice, or null if the search is not sliced.
+     */
+    public SliceBuilder getSlice() {
+        return slice;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder buf = new StringBuilder();
+        buf.append(indices != null ? String.join(",", indices) : "*");
+        if (shard >= 0) {
+            buf.append('[').append(shard).append(']');
+        }
+        if (slice != null) {
+            buf.append('/').append(slice.getId()).append('_').append(slice.getMax());
+        }
+        return buf.toString();
+    }
+}
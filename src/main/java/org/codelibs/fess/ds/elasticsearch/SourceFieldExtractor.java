@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.core.common.bytes.BytesReference;
+import org.opensearch.core.xcontent.DeprecationHandler;
+import org.opensearch.core.xcontent.NamedXContentRegistry;
+import org.opensearch.core.xcontent.XContentParser;
+import org.opensearch.core.xcontent.XContentParser.Token;
+
+/**
+ * Extracts only the referenced fields from the raw _source with a streaming parser.
+ * The other fields are skipped without being converted to Java objects.
+ */
+public class SourceFieldExtractor {
+
+    /**
+     * The root of the referenced paths.
+     */
+    protected final PathNode root = new PathNode();
+
+    /**
+     * Constructor.
+     * @param paths The dot-separated paths of the referenced fields, like {@code meta.author}.
+     */
+    public SourceFieldExtractor(final Collection<String> paths) {
+        for (final String path : paths) {
+            PathNode node = root;
+            for (final String name : path.split("\\.")) {
+                node = node.children.computeIfAbsent(name, k -> new PathNode());
+            }
+            node.leaf = true;
+        }
+    }
+
+    /**
+     * Extracts the referenced fields from the source.
+     * A referenced field is extracted with all its values, and a field which is not an object is extracted
+     * even if only its children are referenced.
+     * @param source The raw source.
+     * @return The map of the extracted fields.
+     */
+    public Map<String, Object> extract(final BytesReference source) {
+        try (XContentParser parser =
+                XContentHelper.createParser(NamedXContentRegistry.EMPTY, DeprecationHandler.THROW_UNSUPPORTED_OPERATION, source)) {
+            if (parser.nextToken() != Token.START_OBJECT) {
+                throw new DataStoreException("The source is not an object.");
+            }
+            return extractObject(parser, root);
+        } catch (final IOException e) {
+            throw new DataStoreException("Failed to parse the source.", e);
+        }
+    }
+
+    /**
+     * Extracts the referenced fields from the current object.
+     * @param parser The parser positioned at the start of the object.
+     * @param node The referenced paths of the object.
+     * @return The map of the extracted fields.
+     * @throws IOException if the parsing fails.
+     */
+    protected Map<String, Object> extractObject(final XContentParser parser, final PathNode node) throws IOException {
+        final Map<String, Object> map = new HashMap<>();
+        while (parser.nextToken() == Token.FIELD_NAME) {
+            final String name = parser.currentName();
+            final Token token = parser.nextToken();
+            final PathNode child = node.children.get(name);
+            if (child == null) {
+                parser.skipChildren();
+            } else if (token == Token.START_OBJECT && !child.leaf) {
+                map.put(name, extractObject(parser, child));
+            } else if (token == Token.START_OBJECT) {
+                map.put(name, parser.map());
+            } else if (token == Token.START_ARRAY) {
+                map.put(name, parser.list());
+            } else {
+                map.put(name, parser.objectText());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * A node of the referenced paths.
+     */
+    protected static class PathNode {
+
+        /**
+         * The referenced child fields.
+         */
+        protected final Map<String, PathNode> children = new HashMap<>();
+
+        /**
+         * True if the whole field is referenced.
+         */
+        protected boolean leaf;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.SearchHit;
+
+/**
+ * High-water mark of a field for incremental crawls.
+ * A crawl fetches only documents whose field value is not less than the mark of the previous crawl,
+ * and the mark is advanced to the largest value of the stored documents.
+ * Documents at the previous mark are fetched again, so documents which share the value are never skipped.
+ * The mark never passes a document which failed to be stored, so the next crawl fetches it again.
+ * Documents without the field do not match the range, so they are fetched only by the first crawl unless they are included.
+ */
+public class Watermark {
+
+    /**
+     * The field of the watermark.
+     */
+    protected final String field;
+
+    /**
+     * The watermark of the previous crawl, or null if no documents have been crawled.
+     */
+    protected final Object lowerBound;
+
+    /**
+     * True if documents without the field are fetched by every crawl.
+     */
+    protected final boolean includeMissing;
+
+    /**
+     * The largest value of the stored documents.
+     */
+    protected Object value;
+
+    /**
+     * The smallest value of the documents which failed to be stored, or null if no documents failed.
+     */
+    protected Object heldValue;
+
+    /**
+     * Constructor.
+     * @param field The field of the watermark. It must have doc values.
+     * @param lowerBound The watermark of the previous crawl, or null if no documents have been crawled.
+     */
+    public Watermark(final String field, final Object lowerBound) {
+        this(field, lowerBound, false);
+    }
+
+    /**
+     * Constructor.
+     * @param field The field of the watermark. It must have doc values.
+     * @param lowerBound The watermark of the previous crawl, or null if no documents have been crawled.
+     * @param includeMissing If true, documents without the field are fetched by every crawl.
+     */
+    public Watermark(final String field, final Object lowerBound, final boolean includeMissing) {
+        this.field = field;
+        this.lowerBound = lowerBound;
+        this.includeMissing = includeMissing;
+    }
+
+    /**
+     * Prepares the search request to fetch the field value and returns the query restricted to new documents.
+     * @param builder The builder for the search request.
+     * @param query The query.
+     * @return The restricted query.
+     */
+    public QueryBuilder apply(final SearchRequestBuilder builder, final QueryBuilder query) {
+        builder.addDocValueField(field);
+        if (lowerBound == null) {
+            return query;
+        }
+        if (includeMissing) {
+            return QueryBuilders.boolQuery()
+                    .must(query)
+                    .filter(QueryBuilders.boolQuery()
+                            .should(QueryBuilders.rangeQuery(field).gte(lowerBound))
+                            .should(QueryBuilders.boolQuery().mustNot(QueryBuilders.existsQuery(field)))
+                            .minimumShouldMatch(1));
+        }
+        return QueryBuilders.boolQuery().must(query).filter(QueryBuilders.rangeQuery(field).gte(lowerBound));
+    }
+
+    /**
+     * Advances the watermark by the stored hit.
+     * @param hit The stored hit.
+     */
+    public synchronized void update(final SearchHit hit) {
+        final Object fieldValue = getFieldValue(hit);
+        if (fieldValue != null && (value == null || compare(fieldValue, value) > 0)) {
+            value = fieldValue;
+        }
+    }
+
+    /**
+     * Holds the watermark at the hit which failed to be stored or was not processed, so that the next crawl fetches it again.
+     * @param hit The hit which was not stored.
+     */
+    public synchronized void hold(final SearchHit hit) {
+        final Object fieldValue = getFieldValue(hit);
+        if (fieldValue != null && (heldValue == null || compare(fieldValue, heldValue) < 0)) {
+            heldValue = fieldValue;
+        }
+    }
+
+    /**
+     * Gets the value of the field of a hit.
+     * @param hit The hit.
+     * @return The value, or null if the hit does not have it.
+     */
+    protected Object getFieldValue(final SearchHit hit) {
+        final DocumentField documentField = hit.field(field);
+        return documentField != null ? documentField.getValue() : null;
+    }
+
+    /**
+     * Gets the watermark for the next crawl.
+     * @return The watermark, or null if no documents have been crawled.
+     */
+    public synchronized Object getValue() {
+        Object result = lowerBound;
+        if (value != null && (lowerBound == null || compare(value, lowerBound) > 0)) {
+            result = value;
+        }
+        if (heldValue != null && (result == null || compare(heldValue, result) < 0)) {
+            result = heldValue;
+        }
+        return result;
+    }
+
+    /**
+     * Compares field values.
+     * Numbers are compared numerically, and others are compared as strings like formatted dates.
+     * @param value1 The first value.
+     * @param value2 The second value.
+     * @return The comparison result.
+     */
+    protected int compare(final Object value1, final Object value2) {
+        if (value1 instanceof Number n1 && value2 instanceof Number n2) {
+            if ((n1 instanceof Long || n1 instanceof Integer) && (n2 instanceof Long || n2 instanceof Integer)) {
+                return Long.compare(n1.longValue(), n2.longValue());
+            }
+            return Double.compare(n1.doubleValue(), n2.doubleValue());
+        }
+        return value1.toString().compareTo(value2.toString());
+    }
+}
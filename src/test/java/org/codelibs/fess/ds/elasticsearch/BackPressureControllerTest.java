@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.core.rest.RestStatus;
+
+public class BackPressureControllerTest extends UnitDsTestCase {
+
+    /**
+     * Test that rejections of the source cluster are detected.
+     */
+    public void test_isRejected() {
+        assertTrue(BackPressureController.isRejected(new OpenSearchStatusException("busy", RestStatus.TOO_MANY_REQUESTS)));
+        assertTrue(BackPressureController.isRejected(new DataStoreException("failed", new RejectedExecutionException("full"))));
+        assertTrue(BackPressureController.isRejected(new IllegalStateException(
+                "{\"error\":{\"type\":\"es_rejected_execution_exception\",\"reason\":\"rejected execution\"},\"status\":429}")));
+        assertFalse(BackPressureController.isRejected(new OpenSearchStatusException("missing", RestStatus.NOT_FOUND)));
+        assertFalse(BackPressureController.isRejected(new IllegalStateException("failed")));
+    }
+
+    /**
+     * Test that the retries are delayed exponentially with jitter until the budget is exhausted.
+     */
+    public void test_onRejected() {
+        BackPressureController controller = new BackPressureController(4, 3, 1000, 3000, 0, null);
+        long delay = controller.onRejected(0);
+        assertTrue(delay >= 500 && delay <= 1000);
+        delay = controller.onRejected(1);
+        assertTrue(delay >= 1000 && delay <= 2000);
+        delay = controller.onRejected(5);
+        assertTrue(delay >= 1500 && delay <= 3000);
+        assertEquals(-1, controller.onRejected(0));
+    }
+
+    /**
+     * Test that the concurrency is halved by rejections and latency spikes, and grows back by successes.
+     */
+    public void test_concurrency() {
+        BackPressureController controller = new BackPressureController(8, 10, 100, 1000, 5000, null);
+        assertEquals(8, controller.getConcurrency());
+        controller.onRejected(0);
+        assertEquals(4, controller.getConcurrency());
+        assertEquals(100, controller.onFetched(6000));
+        assertEquals(2, controller.getConcurrency());
+
+        for (int i = 0; i < 9; i++) {
+            assertEquals(0, controller.onFetched(10));
+        }
+        assertEquals(2, controller.getConcurrency());
+        controller.onFetched(10);
+        assertEquals(3, controller.getConcurrency());
+        for (int i = 0; i < 100; i++) {
+            controller.onFetched(10);
+        }
+        assertEquals(8, controller.getConcurrency());
+    }
+
+    /**
+     * Test that requests wait for the allowed concurrency.
+     */
+    public void test_acquire() throws Exception {
+        BackPressureController controller = new BackPressureController(1, 10, 100, 1000, 0, null);
+        controller.acquire();
+        Thread thread = new Thread(() -> {
+            controller.acquire();
+            controller.release();
+        });
+        thread.start();
+        thread.join(100);
+        assertTrue(thread.isAlive());
+        controller.release();
+        thread.join(10000);
+        assertFalse(thread.isAlive());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.search.SearchHit;
+
+public class BackPressureSearchHitReaderTest extends UnitDsTestCase {
+
+    /**
+     * Test that rejected pages are retried and the page size is reduced.
+     */
+    public void test_nextPage_retry() {
+        FailingReader failingReader = new FailingReader(2, new OpenSearchStatusException("busy", RestStatus.TOO_MANY_REQUESTS));
+        PageSizeController pageSizeController = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        BackPressureController controller = new BackPressureController(1, 5, 1, 10, 0, null);
+        try (BackPressureSearchHitReader reader = new BackPressureSearchHitReader(failingReader, controller, pageSizeController)) {
+            assertEquals(1, reader.nextPage().length);
+            assertEquals(3, failingReader.calls);
+            assertEquals(25, pageSizeController.getSize());
+            assertEquals(3, controller.remainingRetries);
+            assertEquals(0, controller.inFlight);
+        }
+        assertTrue(failingReader.closed);
+    }
+
+    /**
+     * Test that the rejection is thrown when the retry budget is exhausted.
+     */
+    public void test_nextPage_budget() {
+        OpenSearchStatusException exception = new OpenSearchStatusException("busy", RestStatus.TOO_MANY_REQUESTS);
+        FailingReader failingReader = new FailingReader(10, exception);
+        try (BackPressureSearchHitReader reader =
+                new BackPressureSearchHitReader(failingReader, new BackPressureController(1, 2, 1, 10, 0, null), null)) {
+            reader.nextPage();
+            fail();
+        } catch (OpenSearchStatusException e) {
+            assertSame(exception, e);
+        }
+        assertEquals(3, failingReader.calls);
+    }
+
+    /**
+     * Test that other failures are not retried.
+     */
+    public void test_nextPage_failure() {
+        FailingReader failingReader = new FailingReader(1, new IllegalStateException("failed"));
+        try (BackPressureSearchHitReader reader =
+                new BackPressureSearchHitReader(failingReader, new BackPressureController(1, 5, 1, 10, 0, null), null)) {
+            reader.nextPage();
+            fail();
+        } catch (IllegalStateException e) {
+            assertEquals("failed", e.getMessage());
+        }
+        assertEquals(1, failingReader.calls);
+    }
+
+    private static class FailingReader implements SearchHitReader {
+        final int failures;
+
+        final RuntimeException exception;
+
+        int calls;
+
+        boolean closed;
+
+        FailingReader(int failures, RuntimeException exception) {
+            this.failures = failures;
+            this.exception = exception;
+        }
+
+        @Override
+        public SearchHit[] nextPage() {
+            calls++;
+            if (calls <= failures) {
+                throw exception;
+            }
+            return new SearchHit[] { new SearchHit(calls) };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
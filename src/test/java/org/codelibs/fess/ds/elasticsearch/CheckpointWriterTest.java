@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class CheckpointWriterTest extends UnitDsTestCase {
+
+    /**
+     * Test that checkpoints are written in the background and deleted after them.
+     */
+    public void test_saveAndDelete() {
+        List<String> operations = new ArrayList<>();
+        Map<String, Object[]> checkpoints = new ConcurrentHashMap<>();
+        CheckpointStore store = new CheckpointStore() {
+            @Override
+            public Object[] load(String key) {
+                return checkpoints.get(key);
+            }
+
+            @Override
+            public void save(String key, Object[] sortValues) {
+                operations.add("save:" + key + ":" + sortValues[0]);
+                checkpoints.put(key, sortValues);
+            }
+
+            @Override
+            public void delete(String key) {
+                operations.add("delete:" + key);
+                checkpoints.remove(key);
+            }
+        };
+
+        try (CheckpointWriter writer = new CheckpointWriter(store)) {
+            writer.save("a", new Object[] { 1 });
+            writer.save("b", new Object[] { 2 });
+            writer.delete("b");
+            assertNull(writer.load("c"));
+        }
+        assertEquals(1, checkpoints.get("a")[0]);
+        assertFalse(checkpoints.containsKey("b"));
+        assertEquals("delete:b", operations.get(operations.size() - 1));
+    }
+
+    /**
+     * Test that checkpoints which are not written yet are coalesced.
+     */
+    public void test_coalesce() {
+        CountDownLatch latch = new CountDownLatch(1);
+        List<String> saved = new ArrayList<>();
+        CheckpointStore store = new CheckpointStore() {
+            @Override
+            public Object[] load(String key) {
+                return null;
+            }
+
+            @Override
+            public void save(String key, Object[] sortValues) {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                saved.add(key + ":" + sortValues[0]);
+            }
+
+            @Override
+            public void delete(String key) {
+            }
+        };
+
+        try (CheckpointWriter writer = new CheckpointWriter(store)) {
+            writer.save("block", new Object[] { 0 });
+            for (int i = 1; i <= 100; i++) {
+                writer.save("a", new Object[] { i });
+            }
+            latch.countDown();
+        }
+        assertEquals(2, saved.size());
+        assertEquals("block:0", saved.get(0));
+        assertEquals("a:100", saved.get(1));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+public class CrawlMetricsTest extends UnitDsTestCase {
+
+    /**
+     * Test that the metrics are recorded.
+     */
+    public void test_record() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.recordFetch(100, 2048, TimeUnit.MILLISECONDS.toNanos(5));
+        metrics.recordFetch(100, 1024, TimeUnit.MILLISECONDS.toNanos(300));
+        metrics.recordFetch(0, 0, TimeUnit.MILLISECONDS.toNanos(20000));
+        metrics.recordScript(TimeUnit.MILLISECONDS.toNanos(7));
+        metrics.recordStore(TimeUnit.MILLISECONDS.toNanos(3));
+        metrics.recordStore(TimeUnit.MILLISECONDS.toNanos(4));
+        metrics.recordFailure();
+        metrics.recordDelete(TimeUnit.MILLISECONDS.toNanos(9));
+        metrics.recordRetry();
+
+        assertEquals(3, metrics.getPages());
+        assertEquals(3072, metrics.getBytes());
+        assertEquals(20305, metrics.getFetchTime());
+        assertEquals(20000, metrics.getMaxFetchTime());
+        assertEquals(7, metrics.getScriptTime());
+        assertEquals(2, metrics.getDocuments());
+        assertEquals(7, metrics.getStoreTime());
+        assertEquals(1, metrics.getFailures());
+        assertEquals(1, metrics.getDeleteRequests());
+        assertEquals(9, metrics.getDeleteTime());
+        assertEquals(1, metrics.getRetries());
+
+        Map<String, Long> histogram = metrics.getFetchTimeHistogram();
+        assertEquals(10, histogram.size());
+        assertEquals(1, histogram.get("<=10ms").longValue());
+        assertEquals(1, histogram.get("<=500ms").longValue());
+        assertEquals(1, histogram.get(">10000ms").longValue());
+        assertEquals(0, histogram.get("<=50ms").longValue());
+
+        String summary = metrics.toString();
+        assertTrue(summary.contains(" docs=2 "));
+        assertTrue(summary.contains(" bytes=3072 "));
+        assertTrue(summary.contains(" retries=1 "));
+        assertTrue(summary.contains("fetch_histogram=<=10ms:1,<=50ms:0,"));
+    }
+
+    /**
+     * Test that the metrics are registered to the MBean server while the crawl runs.
+     */
+    public void test_register() throws Exception {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName objectName = new ObjectName("org.codelibs.fess.ds.elasticsearch:type=CrawlMetrics,name=\"config:1\"");
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.register("config:1");
+        try {
+            metrics.recordStore(0);
+            assertTrue(server.isRegistered(objectName));
+            assertEquals(Long.valueOf(1), server.getAttribute(objectName, "Documents"));
+        } finally {
+            metrics.unregister();
+        }
+        assertFalse(server.isRegistered(objectName));
+    }
+}
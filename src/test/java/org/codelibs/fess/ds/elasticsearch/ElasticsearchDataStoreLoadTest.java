@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
+import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
+import org.opensearch.search.SearchHit;
+
+/**
+ * End-to-end tests of the HTTP client code path against {@link FakeElasticsearchServer}.
+ * The number of documents can be raised by the fake.es.docs system property to run them as load or soak tests.
+ */
+public class ElasticsearchDataStoreLoadTest extends UnitDsTestCase {
+
+    private static final int NUM_OF_DOCS = Integer.getInteger("fake.es.docs", 1000);
+
+    private final Set<String> processedIds = ConcurrentHashMap.newKeySet();
+
+    private final ElasticsearchDataStore dataStore = new ElasticsearchDataStore() {
+        @Override
+        protected boolean processHit(DataConfig dataConfig, IndexUpdateCallback callback, DataStoreParams paramMap,
+                ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, Map<String, Object> defaultDataMap,
+                SearchHit hit, Watermark watermark, FingerprintCache fingerprintCache, CrawlMetrics metrics) {
+            processedIds.add(hit.getId());
+            return true;
+        }
+    };
+
+    /**
+     * Test that all documents are read by a scroll and the scroll is cleared.
+     */
+    public void test_storeData_scroll() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            storeData(server, createParams(server));
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertEquals(0, server.getOpenScrolls());
+        }
+    }
+
+    /**
+     * Test that the client accepts gzip and receives compressed responses unless the compression is disabled.
+     */
+    public void test_storeData_compression() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            storeData(server, createParams(server));
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertTrue(server.getAcceptEncoding(), server.getAcceptEncoding().contains("gzip"));
+            assertTrue(server.getCompressedResponses() >= server.getSearchRequests());
+        }
+        processedIds.clear();
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            DataStoreParams params = createParams(server);
+            params.put("compression", "false");
+            storeData(server, params);
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertEquals(0, server.getCompressedResponses());
+        }
+    }
+
+    /**
+     * Test that all documents are read by sliced scrolls.
+     */
+    public void test_storeData_slices() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            DataStoreParams params = createParams(server);
+            params.put("slices", "3");
+            storeData(server, params);
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertEquals(NUM_OF_DOCS, server.getReturnedHits());
+            assertEquals(0, server.getOpenScrolls());
+        }
+    }
+
+    /**
+     * Test that all documents are read by a point in time and it is deleted.
+     */
+    public void test_storeData_pit() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            DataStoreParams params = createParams(server);
+            params.put("pagination", "pit");
+            storeData(server, params);
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertEquals(0, server.getOpenPits());
+        }
+    }
+
+    /**
+     * Test that rejected searches are retried with back-off.
+     */
+    public void test_storeData_backoff() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            server.fail(2, 429);
+            DataStoreParams params = createParams(server);
+            params.put("backoff.delay", "10");
+            params.put("backoff.max.delay", "100");
+            storeData(server, params);
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+        }
+    }
+
+    /**
+     * Test that processed documents are deleted by bulk requests.
+     */
+    public void test_storeData_deleteProcessedDoc() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", NUM_OF_DOCS, 1000)) {
+            DataStoreParams params = createParams(server);
+            params.put("delete.processed.doc", "true");
+            storeData(server, params);
+            assertEquals(NUM_OF_DOCS, processedIds.size());
+            assertEquals(NUM_OF_DOCS, server.getDeletedDocs());
+        }
+    }
+
+    private DataStoreParams createParams(FakeElasticsearchServer server) {
+        DataStoreParams params = new DataStoreParams();
+        params.put("settings.http.hosts", server.getUrl());
+        params.put("index", "docs");
+        params.put("size", "100");
+        params.put("readInterval", "0");
+        return params;
+    }
+
+    private void storeData(FakeElasticsearchServer server, DataStoreParams params) {
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("load_test");
+        Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put("title", "source.title");
+        dataStore.storeData(dataConfig, null, params, scriptMap, Collections.emptyMap());
+    }
+}
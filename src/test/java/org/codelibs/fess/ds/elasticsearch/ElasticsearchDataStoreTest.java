@@ -19,12 +19,45 @@ import org.junit.jupiter.api.TestInfo;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import org.codelibs.fess.ds.callback.IndexUpdateCallback;
 import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.exception.DataStoreException;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.ds.elasticsearch.UnitDsTestCase;
+import org.opensearch.Build;
+import org.opensearch.Version;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.main.MainResponse;
+import org.opensearch.action.search.SearchAction;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.cluster.ClusterName;
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.fetch.subphase.FieldAndFormat;
+import org.opensearch.search.slice.SliceBuilder;
+import org.opensearch.search.sort.FieldSortBuilder;
+import org.opensearch.search.sort.SortBuilder;
+import org.opensearch.transport.client.Client;
+import org.opensearch.transport.client.support.AbstractClient;
 
 public class ElasticsearchDataStoreTest extends UnitDsTestCase {
     private ElasticsearchDataStore dataStore;
@@ -137,6 +170,16 @@ public class ElasticsearchDataStoreTest extends UnitDsTestCase {
         assertEquals("index", value);
     }
 
+    /**
+     * Test that SLICES constant is defined correctly.
+     */
+    public void test_constant_SLICES() throws Exception {
+        Field field = ElasticsearchDataStore.class.getDeclaredField("SLICES");
+        field.setAccessible(true);
+        String value = (String) field.get(null);
+        assertEquals("slices", value);
+    }
+
     /**
      * Test that SETTINGS_PREFIX constant is defined correctly.
      */
@@ -372,4 +415,887 @@ public class ElasticsearchDataStoreTest extends UnitDsTestCase {
         assertEquals("test-node", settingsMap.get("node.name"));
         assertEquals("localhost", settingsMap.get("http.host"));
     }
+
+    /**
+     * Test that the number of slices defaults to 1.
+     */
+    public void test_getSlices_default() {
+        DataStoreParams params = new DataStoreParams();
+        assertEquals(1, dataStore.getSlices(params));
+    }
+
+    /**
+     * Test that the number of slices is parsed from the parameters.
+     */
+    public void test_getSlices() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("slices", " 4 ");
+        assertEquals(4, dataStore.getSlices(params));
+    }
+
+    /**
+     * Test that an invalid number of slices falls back to 1.
+     */
+    public void test_getSlices_invalid() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("slices", "four");
+        assertEquals(1, dataStore.getSlices(params));
+    }
+
+    /**
+     * Test that PAGINATION constants are defined correctly.
+     */
+    public void test_constant_PAGINATION() throws Exception {
+        assertEquals("pagination", ElasticsearchDataStore.PAGINATION);
+        assertEquals("pit", ElasticsearchDataStore.PAGINATION_PIT);
+        assertEquals("pit.keep.alive", ElasticsearchDataStore.PIT_KEEP_ALIVE);
+        assertEquals("pit.sort", ElasticsearchDataStore.PIT_SORT);
+    }
+
+    /**
+     * Test that source constants are defined correctly.
+     */
+    public void test_constant_SOURCE() throws Exception {
+        assertEquals("source.extract.fields", ElasticsearchDataStore.SOURCE_EXTRACT_FIELDS);
+        assertEquals("source.auto.includes", ElasticsearchDataStore.SOURCE_AUTO_INCLUDES);
+    }
+
+    /**
+     * Test that indices are parsed from the parameters.
+     */
+    public void test_getIndices() {
+        DataStoreParams params = new DataStoreParams();
+        assertEquals(1, dataStore.getIndices(params).length);
+        assertEquals("_all", dataStore.getIndices(params)[0]);
+
+        params.put("index", " index1,index2 ");
+        String[] indices = dataStore.getIndices(params);
+        assertEquals(2, indices.length);
+        assertEquals("index1", indices[0]);
+        assertEquals("index2", indices[1]);
+    }
+
+    /**
+     * Test that the keep alive of the point in time is parsed from the parameters.
+     */
+    public void test_getPitKeepAlive() {
+        DataStoreParams params = new DataStoreParams();
+        assertEquals(60000L, dataStore.getPitKeepAlive(params).millis());
+
+        params.put("pit.keep.alive", "5m");
+        assertEquals(300000L, dataStore.getPitKeepAlive(params).millis());
+    }
+
+    /**
+     * Test that hits are processed sequentially until a hit aborts the page.
+     */
+    public void test_processPage_sequential() {
+        List<Integer> stored = new ArrayList<>();
+        ElasticsearchDataStore ds = new ElasticsearchDataStore() {
+            @Override
+            protected boolean processHit(DataConfig dataConfig, IndexUpdateCallback callback, DataStoreParams paramMap,
+                    ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, Map<String, Object> defaultDataMap,
+                    SearchHit hit, Watermark watermark, FingerprintCache fingerprintCache, CrawlMetrics metrics) {
+                stored.add(hit.docId());
+                return hit.docId() != 2;
+            }
+        };
+        List<SearchHit> processed =
+                ds.processPage(null, null, new DataStoreParams(), null, new HashMap<>(), new HashMap<>(), 0, createHits(5), null, null,
+                        null, null);
+        assertEquals(3, processed.size());
+        assertEquals(2, processed.get(2).docId());
+        assertEquals(3, stored.size());
+    }
+
+    /**
+     * Test that the documents of a page are stored at once by a batch-aware callback.
+     */
+    public void test_processPage_batch() {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = createBatchDataStore(failures);
+        BatchCallback callback = new BatchCallback(false);
+        DataStoreParams params = new DataStoreParams();
+        params.put("store.batch", "true");
+        List<SearchHit> processed =
+                ds.processPage(null, callback, params, null, new HashMap<>(), new HashMap<>(), 0, createHits(5), null, null, null, null);
+        assertEquals(5, processed.size());
+        assertEquals(1, callback.batches.size());
+        assertEquals(List.of(0, 1, 4), callback.batches.get(0));
+        assertEquals(0, callback.stored.size());
+        assertEquals(List.of(2, 3), failures);
+    }
+
+    /**
+     * Test that all documents are recorded as failures without storing them again if the batch fails.
+     */
+    public void test_processPage_batchFailure() {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = createBatchDataStore(failures);
+        BatchCallback callback = new BatchCallback(true);
+        DataStoreParams params = new DataStoreParams();
+        params.put("store.batch", "true");
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<SearchHit> processed =
+                    ds.processPage(null, callback, params, null, new HashMap<>(), new HashMap<>(), 0, createHits(6), executorService, null,
+                            null, null);
+            assertEquals(6, processed.size());
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(0, callback.batches.size());
+        assertEquals(0, callback.stored.size());
+        assertEquals(List.of(2, 0, 1, 3, 4, 5), failures);
+    }
+
+    /**
+     * Test that a callback which is not batch-aware stores documents one by one as without store.batch.
+     */
+    public void test_processPage_batchUnsupported() {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = createBatchDataStore(failures);
+        StoreCallback callback = new StoreCallback();
+        DataStoreParams params = new DataStoreParams();
+        params.put("store.batch", "true");
+        List<SearchHit> processed =
+                ds.processPage(null, callback, params, null, new HashMap<>(), new HashMap<>(), 0, createHits(5), null, null, null, null);
+        assertEquals(5, processed.size());
+        assertEquals(List.of(0, 1, 4), callback.stored);
+        assertEquals(List.of(2, 3), failures);
+    }
+
+    /**
+     * Test that the hits after a failure which aborts the page are not processed even though the batch stored them.
+     */
+    public void test_processPage_batchAbort() {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = new ElasticsearchDataStore() {
+            @Override
+            protected void evaluateHit(ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, SearchHit hit,
+                    StatsKeyObject statsKey, Map<String, Object> dataMap, CrawlMetrics metrics) {
+                dataMap.put("doc", hit.docId());
+            }
+
+            @Override
+            protected boolean handleFailure(DataConfig dataConfig, SearchHit hit, StatsKeyObject statsKey, Map<String, Object> dataMap,
+                    Throwable t, CrawlMetrics metrics) {
+                failures.add(hit.docId());
+                return false;
+            }
+        };
+        BatchCallback callback = new BatchCallback(false);
+        DataStoreParams params = new DataStoreParams();
+        params.put("store.batch", "true");
+        List<SearchHit> processed =
+                ds.processPage(null, callback, params, null, new HashMap<>(), new HashMap<>(), 0, createHits(6), null, null, null, null);
+        assertEquals(4, processed.size());
+        assertEquals(3, processed.get(3).docId());
+        assertEquals(List.of(0, 1, 2, 4, 5), callback.batches.get(0));
+        assertEquals(List.of(3), failures);
+    }
+
+    /**
+     * Test that hits are processed concurrently with their own parameters.
+     */
+    public void test_processPage_concurrent() {
+        List<DataStoreParams> paramsList = Collections.synchronizedList(new ArrayList<>());
+        ElasticsearchDataStore ds = new ElasticsearchDataStore() {
+            @Override
+            protected boolean processHit(DataConfig dataConfig, IndexUpdateCallback callback, DataStoreParams paramMap,
+                    ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, Map<String, Object> defaultDataMap,
+                    SearchHit hit, Watermark watermark, FingerprintCache fingerprintCache, CrawlMetrics metrics) {
+                paramsList.add(paramMap);
+                return true;
+            }
+        };
+        DataStoreParams params = new DataStoreParams();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<SearchHit> processed =
+                    ds.processPage(null, null, params, null, new HashMap<>(), new HashMap<>(), 0, createHits(20), executorService,
+                            null, null, null);
+            assertEquals(20, processed.size());
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i, processed.get(i).docId());
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertEquals(20, paramsList.size());
+        assertFalse(paramsList.contains(params));
+    }
+
+    /**
+     * Test that int parameters are parsed with a default value.
+     */
+    public void test_getAsInt() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("transform.threads", "8");
+        params.put("invalid", "x");
+        assertEquals(8, dataStore.getAsInt(params, "transform.threads", 1));
+        assertEquals(1, dataStore.getAsInt(params, "invalid", 1));
+        assertEquals(1, dataStore.getAsInt(params, "nonexistent", 1));
+    }
+
+    /**
+     * Test that the base bindings contain the parameters and the data config.
+     */
+    public void test_createBaseBindings() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("index", "test-index");
+        params.put("crawlerStatsKey", "key");
+        DataConfig dataConfig = new DataConfig();
+        Map<String, Object> bindings = dataStore.createBaseBindings(dataConfig, params);
+        assertEquals("test-index", bindings.get("index"));
+        assertSame(dataConfig, bindings.get("crawlingConfig"));
+        assertFalse(bindings.containsKey("crawlerStatsKey"));
+        try {
+            bindings.put("key", "value");
+            fail("Should throw UnsupportedOperationException");
+        } catch (UnsupportedOperationException e) {
+            assertNotNull(e);
+        }
+    }
+
+    /**
+     * Test that the adaptive page size requires the point in time pagination.
+     */
+    public void test_createPageSizeController() {
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createPageSizeController(params, "pit"));
+
+        params.put("size.adaptive", "true");
+        params.put("size", "50");
+        params.put("size.min", "20");
+        params.put("size.max", "500");
+        assertNull(dataStore.createPageSizeController(params, null));
+        PageSizeController controller = dataStore.createPageSizeController(params, "pit");
+        assertEquals(50, controller.getSize());
+        assertEquals(20, controller.minSize);
+        assertEquals(500, controller.maxSize);
+    }
+
+    /**
+     * Test that DELETE constants are defined correctly.
+     */
+    public void test_constant_DELETE() throws Exception {
+        assertEquals("delete.processed.doc", ElasticsearchDataStore.DELETE_PROCESSED_DOC);
+        assertEquals("delete.bulk.actions", ElasticsearchDataStore.DELETE_BULK_ACTIONS);
+        assertEquals("delete.bulk.size", ElasticsearchDataStore.DELETE_BULK_SIZE);
+        assertEquals("delete.flush.interval", ElasticsearchDataStore.DELETE_FLUSH_INTERVAL);
+        assertEquals("delete.concurrent.requests", ElasticsearchDataStore.DELETE_CONCURRENT_REQUESTS);
+        assertEquals("delete.retry.count", ElasticsearchDataStore.DELETE_RETRY_COUNT);
+        assertEquals("delete.retry.delay", ElasticsearchDataStore.DELETE_RETRY_DELAY);
+    }
+
+    /**
+     * Test that no deleter is created unless processed documents are deleted.
+     */
+    public void test_createProcessedDocDeleter_disabled() {
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createProcessedDocDeleter(null, params, null));
+        params.put("delete.processed.doc", "false");
+        assertNull(dataStore.createProcessedDocDeleter(null, params, null));
+    }
+
+    /**
+     * Test that checkpoints require the point in time pagination sorted by stable fields.
+     */
+    public void test_createCheckpointWriter() {
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createCheckpointWriter(params, "pit"));
+
+        params.put("checkpoint.enabled", "true");
+        assertNull(dataStore.createCheckpointWriter(params, null));
+        assertNull(dataStore.createCheckpointWriter(params, "pit"));
+        params.put("pit.sort", "timestamp:asc,_shard_doc");
+        assertNull(dataStore.createCheckpointWriter(params, "pit"));
+        params.put("pit.sort", "timestamp:asc,id:asc");
+        try (CheckpointWriter writer = dataStore.createCheckpointWriter(params, "pit")) {
+            assertNotNull(writer);
+        }
+    }
+
+    /**
+     * Test that the checkpoint key contains the slice.
+     */
+    public void test_getCheckpointKey() {
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("config1");
+        assertEquals("config1", dataStore.getCheckpointKey(dataConfig, new DataStoreParams(), null));
+        assertEquals("config1_2_4", dataStore.getCheckpointKey(dataConfig, new DataStoreParams(), new SliceBuilder(2, 4)));
+
+        DataStoreParams params = new DataStoreParams();
+        params.put("clusterAlias", "eu");
+        assertEquals("config1_eu", dataStore.getCheckpointKey(dataConfig, params, null));
+        assertEquals("config1_eu_2_4", dataStore.getCheckpointKey(dataConfig, params, new SliceBuilder(2, 4)));
+        assertEquals("config1_eu_watermark", dataStore.getWatermarkKey(dataConfig, params));
+    }
+
+    /**
+     * Test that the parameters of each cluster override the common parameters.
+     */
+    public void test_getClusterParams() {
+        DataStoreParams params = new DataStoreParams();
+        assertTrue(dataStore.getClusterParams(params).isEmpty());
+
+        params.put("index", "docs");
+        params.put("concurrency", "4");
+        params.put("cluster.us.settings.http.hosts", "us:9200");
+        params.put("cluster.eu.settings.http.hosts", "eu:9200");
+        params.put("cluster.eu.concurrency", "2");
+        params.put("cluster.invalid", "x");
+        Map<String, DataStoreParams> clusterParamMap = dataStore.getClusterParams(params);
+        assertEquals(List.of("eu", "us"), new ArrayList<>(clusterParamMap.keySet()));
+
+        DataStoreParams euParams = clusterParamMap.get("eu");
+        assertEquals("eu", euParams.getAsString("clusterAlias"));
+        assertEquals("eu:9200", euParams.getAsString("settings.http.hosts"));
+        assertEquals("2", euParams.getAsString("concurrency"));
+        assertEquals("docs", euParams.getAsString("index"));
+        assertFalse(euParams.containsKey("cluster.eu.concurrency"));
+        assertFalse(euParams.containsKey("cluster.us.settings.http.hosts"));
+
+        DataStoreParams usParams = clusterParamMap.get("us");
+        assertEquals("us", usParams.getAsString("clusterAlias"));
+        assertEquals("us:9200", usParams.getAsString("settings.http.hosts"));
+        assertEquals("4", usParams.getAsString("concurrency"));
+    }
+
+    /**
+     * Test that the declared clusters are crawled in parallel.
+     */
+    public void test_storeData_clusters() {
+        Map<String, DataStoreParams> crawledParams = Collections.synchronizedMap(new TreeMap<>());
+        Map<String, String> threadNames = Collections.synchronizedMap(new TreeMap<>());
+        ElasticsearchDataStore ds = new ElasticsearchDataStore() {
+            @Override
+            protected void processCluster(DataConfig dataConfig, IndexUpdateCallback callback, DataStoreParams paramMap,
+                    Map<String, String> scriptMap, Map<String, Object> defaultDataMap) {
+                String alias = paramMap.getAsString("clusterAlias");
+                crawledParams.put(alias == null ? "" : alias, paramMap);
+                threadNames.put(alias == null ? "" : alias, Thread.currentThread().getName());
+            }
+        };
+        DataConfig dataConfig = new DataConfig();
+
+        DataStoreParams params = new DataStoreParams();
+        params.put("index", "docs");
+        ds.storeData(dataConfig, null, params, Collections.emptyMap(), Collections.emptyMap());
+        assertSame(params, crawledParams.get(""));
+        assertEquals(Thread.currentThread().getName(), threadNames.get(""));
+
+        crawledParams.clear();
+        threadNames.clear();
+        params.put("cluster.eu.index", "eu_docs");
+        params.put("cluster.us.settings.http.hosts", "us:9200");
+        ds.storeData(dataConfig, null, params, Collections.emptyMap(), Collections.emptyMap());
+        assertEquals(List.of("eu", "us"), new ArrayList<>(crawledParams.keySet()));
+        assertEquals("eu_docs", crawledParams.get("eu").getAsString("index"));
+        assertEquals("docs", crawledParams.get("us").getAsString("index"));
+        assertFalse(threadNames.containsValue(Thread.currentThread().getName()));
+    }
+
+    /**
+     * Test that the watermark is created only for comparable fields and if old documents are kept.
+     */
+    public void test_createWatermark() throws Exception {
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("config1");
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createWatermark(dataConfig, params));
+        params.put("incremental.field", "_seq_no");
+        assertNull(dataStore.createWatermark(dataConfig, params));
+
+        Path dir = Files.createTempDirectory("watermark");
+        params.put("checkpoint.dir", dir.toString());
+        params.put("incremental.field", "updated_at");
+        assertNull(dataStore.createWatermark(dataConfig, params));
+        params.put("delete.old.docs", "true");
+        assertNull(dataStore.createWatermark(dataConfig, params));
+        params.put("delete.old.docs", "false");
+        Watermark watermark = dataStore.createWatermark(dataConfig, params);
+        assertEquals("updated_at", watermark.field);
+        assertNull(watermark.lowerBound);
+
+        dataStore.createCheckpointStore(params).save("config1_watermark", new Object[] { "2025-01-01" });
+        watermark = dataStore.createWatermark(dataConfig, params);
+        assertEquals("2025-01-01", watermark.lowerBound);
+        assertFalse(watermark.includeMissing);
+        params.put("incremental.include.missing", "true");
+        assertTrue(dataStore.createWatermark(dataConfig, params).includeMissing);
+        dataStore.createCheckpointStore(params).delete("config1_watermark");
+        Files.delete(dir);
+    }
+
+    /**
+     * Test that the watermark is advanced only by stored hits.
+     */
+    public void test_processPage_watermark() {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = createBatchDataStore(failures);
+        SearchHit[] hits = new SearchHit[5];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new SearchHit(i, String.valueOf(i),
+                    Collections.singletonMap("updated_at", new DocumentField("updated_at", List.of(i * 10L))), Collections.emptyMap());
+        }
+
+        // docs 2 and 3 fail to be evaluated and stored
+        Watermark watermark = new Watermark("updated_at", null);
+        BatchCallback callback = new BatchCallback(false);
+        assertEquals(5, ds.processPage(null, callback, new DataStoreParams(), null, new HashMap<>(), new HashMap<>(), 0, hits, null,
+                watermark, null, null).size());
+        assertEquals(List.of(0, 1, 4), callback.stored);
+        assertEquals(20L, watermark.getValue());
+
+        watermark = new Watermark("updated_at", null);
+        DataStoreParams params = new DataStoreParams();
+        params.put("store.batch", "true");
+        ds.processPage(null, new BatchCallback(false), params, null, new HashMap<>(), new HashMap<>(), 0, hits, null, watermark, null,
+                null);
+        assertEquals(20L, watermark.getValue());
+    }
+
+    /**
+     * Test that unchanged hits are skipped and failed hits are processed again by the next crawl.
+     */
+    public void test_processPage_fingerprint() throws Exception {
+        registerCrawlerStatsHelper();
+        List<Integer> failures = new ArrayList<>();
+        ElasticsearchDataStore ds = createBatchDataStore(failures);
+        BatchCallback callback = new BatchCallback(false);
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("config1");
+        Path dir = Files.createTempDirectory("fingerprint");
+        DataStoreParams params = new DataStoreParams();
+        params.put("checkpoint.dir", dir.toString());
+        assertNull(ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>()));
+        params.put("fingerprint", "version");
+        // old documents would be deleted with the skipped ones
+        assertNull(ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>()));
+        params.put("delete.old.docs", "false");
+
+        SearchHit[] hits = new SearchHit[5];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new SearchHit(i, String.valueOf(i), Collections.emptyMap(), Collections.emptyMap());
+            hits[i].version(1);
+        }
+        FingerprintCache fingerprintCache = ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>());
+        assertEquals(5, ds.processPage(dataConfig, callback, params, null, new HashMap<>(), new HashMap<>(), 0, hits, null,
+                null, fingerprintCache, null).size());
+        assertEquals(List.of(0, 1, 4), callback.stored);
+        assertEquals(List.of(2, 3), failures);
+        ds.saveFingerprintCache(callback, fingerprintCache);
+        assertEquals(1, callback.flushes);
+        assertEquals(0, callback.commits);
+
+        hits[4].version(2);
+        CrawlMetrics metrics = new CrawlMetrics();
+        fingerprintCache = ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>());
+        assertEquals(5, ds.processPage(dataConfig, callback, params, null, new HashMap<>(), new HashMap<>(), 0, hits, null,
+                null, fingerprintCache, metrics).size());
+        assertEquals(List.of(0, 1, 4, 4), callback.stored);
+        assertEquals(List.of(2, 3, 2, 3), failures);
+        assertEquals(2, metrics.getSkipped());
+        Files.delete(dir.resolve("config1.fingerprints"));
+        Files.delete(dir);
+    }
+
+    /**
+     * Test that a queued document which fails to be fetched holds the watermark and is fetched again by the next crawl.
+     */
+    public void test_processPage_fetchQueue() throws Exception {
+        registerCrawlerStatsHelper();
+        ElasticsearchDataStore ds = new ElasticsearchDataStore() {
+            @Override
+            protected void evaluateHit(ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, SearchHit hit,
+                    StatsKeyObject statsKey, Map<String, Object> dataMap, CrawlMetrics metrics) {
+                dataMap.put("doc", hit.docId());
+            }
+        };
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("config1");
+        Path dir = Files.createTempDirectory("fetchqueue");
+        DataStoreParams params = new DataStoreParams();
+        params.put("checkpoint.dir", dir.toString());
+        params.put("fingerprint", "version");
+        params.put("delete.old.docs", "false");
+        SearchHit[] hits = new SearchHit[5];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = new SearchHit(i, String.valueOf(i),
+                    Collections.singletonMap("updated_at", new DocumentField("updated_at", List.of(i * 10L))), Collections.emptyMap());
+            hits[i].version(1);
+        }
+
+        // doc 3 is queued, but its fetch fails after the reader has moved on
+        Watermark watermark = new Watermark("updated_at", null);
+        FingerprintCache fingerprintCache = ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>());
+        StoreCallback callback = new StoreCallback();
+        try (FetchQueueCallback fetchQueueCallback = new FetchQueueCallback(callback, 10, 1, 0, false)) {
+            assertEquals(5, ds.processPage(dataConfig, fetchQueueCallback, params, null, new HashMap<>(), new HashMap<>(), 0, hits, null,
+                    watermark, fingerprintCache, null).size());
+            ds.saveFingerprintCache(fetchQueueCallback, fingerprintCache);
+            assertEquals(List.of(0, 1, 2, 4), callback.stored);
+            assertEquals(1, fetchQueueCallback.getFailures());
+        }
+        assertEquals(30L, watermark.getValue());
+
+        CrawlMetrics metrics = new CrawlMetrics();
+        fingerprintCache = ds.createFingerprintCache(dataConfig, params, new HashMap<>(), new HashMap<>());
+        try (FetchQueueCallback fetchQueueCallback = new FetchQueueCallback(new StoreCallback(), 10, 1, 0, false)) {
+            ds.processPage(dataConfig, fetchQueueCallback, params, null, new HashMap<>(), new HashMap<>(), 0, hits, null, null,
+                    fingerprintCache, metrics);
+            fetchQueueCallback.flush();
+            assertEquals(1, fetchQueueCallback.getFailures());
+        }
+        assertEquals(4, metrics.getSkipped());
+        Files.delete(dir.resolve("config1.fingerprints"));
+        Files.delete(dir);
+    }
+
+    /**
+     * Test that the client settings are taken from the parameters and request compressed responses by default.
+     */
+    public void test_createClientSettings() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("settings.http.hosts", "localhost:9200");
+        params.put("index", "docs");
+        Settings settings = dataStore.createClientSettings(params);
+        assertEquals("localhost:9200", settings.get("http.hosts"));
+        assertEquals("true", settings.get("http.compression"));
+        assertNull(settings.get("index"));
+
+        params.put("compression", "false");
+        assertEquals("false", dataStore.createClientSettings(params).get("http.compression"));
+        params.put("compression", "true");
+        params.put("settings.http.compression", "false");
+        assertEquals("false", dataStore.createClientSettings(params).get("http.compression"));
+    }
+
+    /**
+     * Test that a scroll is sorted by _doc unless the scripts use scores.
+     */
+    public void test_createSearchHitReader_scrollSort() {
+        Map<String, String> scriptMap = new HashMap<>();
+        scriptMap.put("title", "source.title");
+        SearchTarget target = new SearchTarget(new String[] { "docs" }, -1, null);
+        SearchHitReader reader = dataStore.createSearchHitReader(new MainClient("opensearch"), new DataStoreParams(),
+                new ScriptMapEvaluator(scriptMap, (script, bindings) -> null), target, null, null, null, null, null, null, null);
+        List<SortBuilder<?>> sorts = ((ScrollSearchHitReader) reader).builder.request().source().sorts();
+        assertEquals(1, sorts.size());
+        assertEquals("_doc", ((FieldSortBuilder) sorts.get(0)).getFieldName());
+
+        scriptMap.put("boost", "score");
+        reader = dataStore.createSearchHitReader(new MainClient("opensearch"), new DataStoreParams(),
+                new ScriptMapEvaluator(scriptMap, (script, bindings) -> null), target, null, null, null, null, null, null, null);
+        assertNull(((ScrollSearchHitReader) reader).builder.request().source().sorts());
+    }
+
+    /**
+     * Test that the pit pagination is rejected unless the cluster is OpenSearch.
+     */
+    public void test_validatePitSupport() {
+        DataStoreParams params = new DataStoreParams();
+        dataStore.validatePitSupport(new MainClient("opensearch"), params);
+        try {
+            dataStore.validatePitSupport(new MainClient(null), params);
+            fail();
+        } catch (DataStoreException e) {
+            assertTrue(e.getMessage().contains("pagination=scroll"));
+        }
+        // the check is skipped if the cluster cannot be asked
+        dataStore.validatePitSupport(new MainClient("fail"), params);
+    }
+
+    /**
+     * Test that doc value fields and stored fields are requested without duplicating the watermark field.
+     */
+    public void test_addRetrievedFields() {
+        SearchRequestBuilder builder = new SearchRequestBuilder(null, SearchAction.INSTANCE);
+        builder.setQuery(QueryBuilders.matchAllQuery());
+        dataStore.addRetrievedFields(builder, new DataStoreParams());
+        assertNull(builder.request().source().docValueFields());
+        assertNull(builder.request().source().storedFields());
+
+        DataStoreParams params = new DataStoreParams();
+        params.put("docvalue.fields", "updated_at, created_at:yyyy-MM-dd'T'HH:mm:ss, tags,");
+        params.put("stored.fields", "title, body");
+        new Watermark("updated_at", null).apply(builder, QueryBuilders.matchAllQuery());
+        dataStore.addRetrievedFields(builder, params);
+        List<FieldAndFormat> docValueFields = builder.request().source().docValueFields();
+        assertEquals(3, docValueFields.size());
+        assertEquals("updated_at", docValueFields.get(0).field);
+        assertEquals("created_at", docValueFields.get(1).field);
+        assertEquals("yyyy-MM-dd'T'HH:mm:ss", docValueFields.get(1).format);
+        assertEquals("tags", docValueFields.get(2).field);
+        assertNull(docValueFields.get(2).format);
+        assertEquals(List.of("title", "body"), builder.request().source().storedFields().fieldNames());
+        assertTrue(builder.request().source().fetchSource().fetchSource());
+
+        builder = new SearchRequestBuilder(null, SearchAction.INSTANCE);
+        builder.setFetchSource(false);
+        dataStore.addRetrievedFields(builder, params);
+        assertFalse(builder.request().source().fetchSource().fetchSource());
+    }
+
+    /**
+     * Test that targets are created per slice without splitting.
+     */
+    public void test_createSearchTargets() {
+        DataStoreParams params = new DataStoreParams();
+        List<SearchTarget> targets = dataStore.createSearchTargets(null, params, null);
+        assertEquals(1, targets.size());
+        assertEquals("*", targets.get(0).toString());
+
+        params.put("slices", "3");
+        targets = dataStore.createSearchTargets(null, params, null);
+        assertEquals(3, targets.size());
+        assertEquals("*/2_3", targets.get(2).toString());
+
+        params.put("split", "shard");
+        assertEquals(3, dataStore.createSearchTargets(null, params, "pit").size());
+    }
+
+    /**
+     * Test that targets are created per index and per shard.
+     */
+    public void test_createSearchTargets_split() {
+        ElasticsearchDataStore splitDataStore = new ElasticsearchDataStore() {
+            @Override
+            protected Map<String, Integer> getNumberOfShards(Client client, DataStoreParams paramMap) {
+                Map<String, Integer> numberOfShards = new TreeMap<>();
+                numberOfShards.put("logs-1", 2);
+                numberOfShards.put("logs-2", 3);
+                return numberOfShards;
+            }
+        };
+        DataStoreParams params = new DataStoreParams();
+        params.put("split", "index");
+        List<SearchTarget> targets = splitDataStore.createSearchTargets(null, params, null);
+        assertEquals(2, targets.size());
+        assertEquals("logs-1", targets.get(0).toString());
+        assertEquals("logs-2", targets.get(1).toString());
+
+        params.put("split", "shard");
+        targets = splitDataStore.createSearchTargets(null, params, null);
+        assertEquals(5, targets.size());
+        assertEquals("logs-1[1]", targets.get(1).toString());
+        assertEquals(2, targets.get(4).getShard());
+
+        params.put("slices", "2");
+        targets = splitDataStore.createSearchTargets(null, params, null);
+        assertEquals(10, targets.size());
+        assertEquals("logs-2[2]/1_2", targets.get(9).toString());
+    }
+
+    /**
+     * Test that the concurrency defaults to the slices without splitting.
+     */
+    public void test_getConcurrency() {
+        DataStoreParams params = new DataStoreParams();
+        assertEquals(1, dataStore.getConcurrency(params));
+        params.put("slices", "4");
+        assertEquals(4, dataStore.getConcurrency(params));
+        params.put("split", "none");
+        assertEquals(4, dataStore.getConcurrency(params));
+        params.put("split", "Shard");
+        assertEquals(Runtime.getRuntime().availableProcessors(), dataStore.getConcurrency(params));
+        params.put("concurrency", "6");
+        assertEquals(6, dataStore.getConcurrency(params));
+        params.put("concurrency", "0");
+        assertEquals(1, dataStore.getConcurrency(params));
+    }
+
+    /**
+     * Test that the back-pressure is enabled only by the backoff parameters and latency spikes are detected only if configured.
+     */
+    public void test_createBackPressureController() {
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createBackPressureController(params, 4, null));
+
+        params.put("backoff.budget", "5");
+        BackPressureController controller = dataStore.createBackPressureController(params, 4, null);
+        assertEquals(5, controller.remainingRetries);
+        assertEquals(1000L, controller.initialDelay);
+        assertEquals(60000L, controller.maxDelay);
+        assertEquals(0, controller.onFetched(Long.MAX_VALUE));
+        assertEquals(4, controller.getConcurrency());
+
+        params.put("backoff.latency.threshold", "2s");
+        controller = dataStore.createBackPressureController(params, 4, null);
+        assertEquals(2000L, controller.latencyThreshold);
+        controller.onFetched(3000L);
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    /**
+     * Test that the rate limiter is created from documents and bytes per second.
+     */
+    public void test_createRateLimiter() {
+        DataStoreParams params = new DataStoreParams();
+        assertNull(dataStore.createRateLimiter(params));
+
+        params.put("rate.docs", "2000");
+        RateLimiter rateLimiter = dataStore.createRateLimiter(params);
+        assertEquals(2000.0, rateLimiter.docBucket.rate, 0);
+        assertNull(rateLimiter.byteBucket);
+
+        params.put("rate.bytes", "20mb");
+        params.put("rate.burst", "3");
+        rateLimiter = dataStore.createRateLimiter(params);
+        assertEquals(20 * 1024 * 1024.0, rateLimiter.byteBucket.rate, 0);
+        assertEquals(60 * 1024 * 1024.0, rateLimiter.byteBucket.capacity, 0);
+    }
+
+    private SearchHit[] createHits(int size) {
+        SearchHit[] hits = new SearchHit[size];
+        for (int i = 0; i < size; i++) {
+            hits[i] = new SearchHit(i);
+        }
+        return hits;
+    }
+
+    private void registerCrawlerStatsHelper() {
+        ComponentUtil.register(new CrawlerStatsHelper() {
+            @Override
+            public void begin(Object keyObj) {
+            }
+
+            @Override
+            public void record(Object keyObj, StatsAction action) {
+            }
+
+            @Override
+            public void done(Object keyObj) {
+            }
+        }, "crawlerStatsHelper");
+    }
+
+    private ElasticsearchDataStore createBatchDataStore(List<Integer> failures) {
+        return new ElasticsearchDataStore() {
+            @Override
+            protected void evaluateHit(ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, SearchHit hit,
+                    StatsKeyObject statsKey, Map<String, Object> dataMap, CrawlMetrics metrics) {
+                if (hit.docId() == 2) {
+                    throw new IllegalStateException("failed to evaluate");
+                }
+                dataMap.put("doc", hit.docId());
+            }
+
+            @Override
+            protected boolean handleFailure(DataConfig dataConfig, SearchHit hit, StatsKeyObject statsKey, Map<String, Object> dataMap,
+                    Throwable t, CrawlMetrics metrics) {
+                synchronized (failures) {
+                    failures.add(hit.docId());
+                }
+                return true;
+            }
+        };
+    }
+
+    private static class MainClient extends AbstractClient {
+        final String distribution;
+
+        MainClient(String distribution) {
+            super(Settings.EMPTY, null);
+            this.distribution = distribution;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(ActionType<Response> action,
+                Request request, ActionListener<Response> listener) {
+            if ("fail".equals(distribution)) {
+                listener.onFailure(new IllegalStateException("unavailable"));
+                return;
+            }
+            Build build = new Build(Build.Type.TAR, "unknown", "unknown", false, "3.0.0", distribution);
+            listener.onResponse((Response) new MainResponse("node", Version.CURRENT, ClusterName.DEFAULT, "uuid", build));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class StoreCallback implements IndexUpdateCallback {
+        final List<Integer> stored = new ArrayList<>();
+
+        @Override
+        public void store(DataStoreParams paramMap, Map<String, Object> dataMap) {
+            if (paramMap.get("crawlerStatsKey") == null) {
+                throw new IllegalStateException("no stats key");
+            }
+            if (Integer.valueOf(3).equals(dataMap.get("doc"))) {
+                throw new IllegalStateException("failed to store");
+            }
+            stored.add((Integer) dataMap.get("doc"));
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return stored.size();
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return 0;
+        }
+
+        @Override
+        public void commit() {
+        }
+    }
+
+    private static class BatchCallback extends StoreCallback implements BatchIndexUpdateCallback, FlushableIndexUpdateCallback {
+        final boolean failBatch;
+
+        final List<List<Integer>> batches = new ArrayList<>();
+
+        int flushes;
+
+        int commits;
+
+        BatchCallback(boolean failBatch) {
+            this.failBatch = failBatch;
+        }
+
+        @Override
+        public Map<Integer, Throwable> storeAll(List<DataStoreParams> paramMaps, List<Map<String, Object>> dataMaps) {
+            if (failBatch) {
+                throw new IllegalStateException("failed to store a batch");
+            }
+            Map<Integer, Throwable> failures = new HashMap<>();
+            List<Integer> batch = new ArrayList<>();
+            for (int i = 0; i < dataMaps.size(); i++) {
+                if (paramMaps.get(i).get("crawlerStatsKey") == null) {
+                    throw new IllegalStateException("no stats key");
+                }
+                Integer doc = (Integer) dataMaps.get(i).get("doc");
+                if (doc == 3) {
+                    failures.put(i, new IllegalStateException("failed to store"));
+                } else {
+                    batch.add(doc);
+                }
+            }
+            batches.add(batch);
+            return failures;
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+        @Override
+        public void commit() {
+            commits++;
+        }
+    }
 }
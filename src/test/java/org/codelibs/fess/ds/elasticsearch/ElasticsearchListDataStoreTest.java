@@ -17,10 +17,28 @@ package org.codelibs.fess.ds.elasticsearch;
 
 import org.junit.jupiter.api.TestInfo;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.codelibs.fess.Constants;
+import org.codelibs.fess.app.service.FailureUrlService;
+import org.codelibs.fess.ds.callback.FileListIndexUpdateCallbackImpl;
+import org.codelibs.fess.ds.callback.IndexUpdateCallbackImpl;
 import org.codelibs.fess.entity.DataStoreParams;
+import org.codelibs.fess.helper.CrawlerStatsHelper;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsAction;
+import org.codelibs.fess.helper.CrawlerStatsHelper.StatsKeyObject;
+import org.codelibs.fess.opensearch.config.exentity.CrawlingConfig;
+import org.codelibs.fess.opensearch.config.exentity.DataConfig;
 import org.codelibs.fess.util.ComponentUtil;
 import org.codelibs.fess.ds.elasticsearch.UnitDsTestCase;
+import org.opensearch.search.DocValueFormat;
+import org.opensearch.search.SearchHit;
+import org.opensearch.transport.client.Client;
 
 public class ElasticsearchListDataStoreTest extends UnitDsTestCase {
     private ElasticsearchListDataStore dataStore;
@@ -257,4 +275,208 @@ public class ElasticsearchListDataStoreTest extends UnitDsTestCase {
         assertNotNull(Constants.NUM_OF_THREADS);
         assertTrue(Constants.NUM_OF_THREADS.length() > 0);
     }
+
+    /**
+     * Test that crossing a checkpoint interval flushes the fetch queue without committing it, so documents are still accepted.
+     */
+    public void test_processSlice_checkpoint() {
+        registerCrawlerStatsHelper();
+        ElasticsearchListDataStore ds = new ElasticsearchListDataStore() {
+            @Override
+            protected SearchHitReader createSearchHitReader(Client client, DataStoreParams paramMap,
+                    ScriptMapEvaluator scriptMapEvaluator, SearchTarget target, PointInTime pointInTime,
+                    PageSizeController pageSizeController, Object[] searchAfter, Watermark watermark, FingerprintCache fingerprintCache,
+                    BackPressureController backPressureController, CrawlMetrics metrics) {
+                return new PageReader(3, 2);
+            }
+
+            @Override
+            protected void evaluateHit(ScriptMapEvaluator scriptMapEvaluator, Map<String, Object> baseBindings, SearchHit hit,
+                    StatsKeyObject statsKey, Map<String, Object> dataMap, CrawlMetrics metrics) {
+                dataMap.put("url", "http://host/" + hit.docId());
+            }
+        };
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("list");
+        DataStoreParams params = new DataStoreParams();
+        params.put("checkpoint.interval", "0s");
+        List<String> operations = Collections.synchronizedList(new ArrayList<>());
+        FlushableCallback delegate = new FlushableCallback();
+        try (FetchQueueCallback callback = new FetchQueueCallback(delegate, 2, 2, 0, false)) {
+            try (CheckpointWriter checkpointWriter = new CheckpointWriter(new CheckpointStore() {
+                @Override
+                public Object[] load(String key) {
+                    return null;
+                }
+
+                @Override
+                public void save(String key, Object[] sortValues) {
+                    operations.add("save:" + sortValues[0] + ":" + delegate.stored.size());
+                }
+
+                @Override
+                public void delete(String key) {
+                    operations.add("delete");
+                }
+            })) {
+                ds.processSlice(dataConfig, callback, params, null, new HashMap<>(), new HashMap<>(), 0, null,
+                        new SearchTarget(null, -1, null), new PointInTime("pit"), null, checkpointWriter, null, null, null, null, null);
+            }
+            assertEquals(6, delegate.stored.size());
+            assertEquals(0, delegate.commits.get());
+            assertEquals(3, delegate.flushes.get());
+            callback.commit();
+        }
+        assertEquals(1, delegate.commits.get());
+        assertEquals("delete", operations.get(operations.size() - 1));
+        // a checkpoint is saved only after the documents of its page have been stored
+        for (String operation : operations.subList(0, operations.size() - 1)) {
+            String[] values = operation.split(":");
+            assertTrue(operation, Integer.parseInt(values[2]) > Integer.parseInt(values[1]));
+        }
+    }
+
+    /**
+     * Test that the fetch queue can be flushed only if the callback of Fess can be flushed.
+     */
+    public void test_canFlush() {
+        DataStoreParams params = new DataStoreParams();
+        params.put("fetch.queue.size", "2");
+        try (FetchQueueCallback callback = dataStore.createFetchQueueCallback(null, new IndexUpdateCallbackImpl(), null, params, 1)) {
+            assertTrue(dataStore.canFlush(callback));
+        }
+        try (FetchQueueCallback callback = dataStore.createFetchQueueCallback(null, new FlushableCallback() {
+            @Override
+            public boolean canFlush() {
+                return false;
+            }
+        }, null, params, 1)) {
+            assertFalse(dataStore.canFlush(callback));
+        }
+        assertFalse(dataStore.canFlush(new FileListIndexUpdateCallbackImpl(new IndexUpdateCallbackImpl(), null, 1)));
+        assertTrue(dataStore.canFlush(new IndexUpdateCallbackImpl()));
+    }
+
+    /**
+     * Test that a file which fails to be fetched by a worker is recorded to the failure URLs and the stats.
+     */
+    public void test_createFetchQueueCallback_failure() {
+        List<Object> actions = Collections.synchronizedList(new ArrayList<>());
+        ComponentUtil.register(new CrawlerStatsHelper() {
+            @Override
+            public void begin(Object keyObj) {
+                actions.add("begin");
+            }
+
+            @Override
+            public void record(Object keyObj, StatsAction action) {
+                actions.add(action);
+            }
+
+            @Override
+            public void done(Object keyObj) {
+                actions.add("done");
+            }
+        }, "crawlerStatsHelper");
+        List<String> failureUrls = Collections.synchronizedList(new ArrayList<>());
+        ComponentUtil.register(new FailureUrlService() {
+            @Override
+            public void store(CrawlingConfig crawlingConfig, String errorName, String url, Throwable e) {
+                failureUrls.add(crawlingConfig.getId() + ":" + errorName + ":" + url);
+            }
+        }, "failureUrlService");
+        DataConfig dataConfig = new DataConfig();
+        dataConfig.setId("list");
+        DataStoreParams params = new DataStoreParams();
+        params.put("fetch.queue.size", "2");
+        try (FetchQueueCallback callback = dataStore.createFetchQueueCallback(dataConfig, new IndexUpdateCallbackImpl(), null, params, 1)) {
+            callback.handleFailure(params, Map.of("url", "smb://host/a.txt"), new IllegalStateException("failed to fetch"));
+        }
+        assertEquals(List.of("list:java.lang.IllegalStateException:smb://host/a.txt"), failureUrls);
+        assertEquals(List.of("begin", StatsAction.EXCEPTION, "done"), actions);
+    }
+
+    private void registerCrawlerStatsHelper() {
+        ComponentUtil.register(new CrawlerStatsHelper() {
+            @Override
+            public void begin(Object keyObj) {
+            }
+
+            @Override
+            public void record(Object keyObj, StatsAction action) {
+            }
+
+            @Override
+            public void done(Object keyObj) {
+            }
+        }, "crawlerStatsHelper");
+    }
+
+    private static class PageReader implements SearchHitReader {
+        final int pages;
+
+        final int size;
+
+        int page;
+
+        PageReader(int pages, int size) {
+            this.pages = pages;
+            this.size = size;
+        }
+
+        @Override
+        public SearchHit[] nextPage() {
+            if (page >= pages) {
+                return EMPTY_PAGE;
+            }
+            SearchHit[] hits = new SearchHit[size];
+            for (int i = 0; i < size; i++) {
+                int docId = page * size + i;
+                hits[i] = new SearchHit(docId);
+                hits[i].sortValues(new Object[] { docId }, new DocValueFormat[] { DocValueFormat.RAW });
+            }
+            page++;
+            return hits;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private static class FlushableCallback implements FlushableIndexUpdateCallback {
+        final List<Object> stored = Collections.synchronizedList(new ArrayList<>());
+
+        final AtomicInteger flushes = new AtomicInteger();
+
+        final AtomicInteger commits = new AtomicInteger();
+
+        @Override
+        public void store(DataStoreParams paramMap, Map<String, Object> dataMap) {
+            if (commits.get() > 0) {
+                throw new IllegalStateException("committed");
+            }
+            stored.add(dataMap.get("url"));
+        }
+
+        @Override
+        public long getDocumentSize() {
+            return stored.size();
+        }
+
+        @Override
+        public long getExecuteTime() {
+            return 0;
+        }
+
+        @Override
+        public void flush() {
+            flushes.incrementAndGet();
+        }
+
+        @Override
+        public void commit() {
+            commits.incrementAndGet();
+        }
+    }
 }
@@ -0,0 +1,727 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.XContentType;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.core.xcontent.XContentBuilder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * In-process stand-in for an Elasticsearch/OpenSearch cluster, to drive the data store over HTTP without a real cluster.
+ * It serves generated documents of one index through scroll and point in time searches, and accepts bulk deletes.
+ * The latency and rejections of search requests can be injected to test retries and throughput.
+ */
+public class FakeElasticsearchServer implements AutoCloseable {
+
+    static {
+        // Nagle's algorithm would hold the last chunk of each response until the client acknowledges the previous one
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * The name of the index.
+     */
+    protected final String index;
+
+    /**
+     * The number of documents in the index.
+     */
+    protected final int numOfDocs;
+
+    /**
+     * The length of the content field of each document.
+     */
+    protected final int contentSize;
+
+    /**
+     * The HTTP server.
+     */
+    protected final HttpServer server;
+
+    /**
+     * The executor of the HTTP server.
+     */
+    protected final ExecutorService executorService = Executors.newCachedThreadPool();
+
+    /**
+     * The open scroll contexts by their IDs.
+     */
+    protected final Map<String, Cursor> scrolls = new ConcurrentHashMap<>();
+
+    /**
+     * The open point in time IDs.
+     */
+    protected final Set<String> pits = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The sequence of scroll and point in time IDs.
+     */
+    protected final AtomicLong idSequence = new AtomicLong();
+
+    /**
+     * The number of search and scroll requests.
+     */
+    protected final AtomicLong searchRequests = new AtomicLong();
+
+    /**
+     * The number of returned hits.
+     */
+    protected final AtomicLong returnedHits = new AtomicLong();
+
+    /**
+     * The number of documents deleted by bulk requests.
+     */
+    protected final AtomicLong deletedDocs = new AtomicLong();
+
+    /**
+     * The number of response bytes written to the wire.
+     */
+    protected final AtomicLong responseBytes = new AtomicLong();
+
+    /**
+     * The number of search requests to reject.
+     */
+    protected final AtomicInteger failures = new AtomicInteger();
+
+    /**
+     * The number of responses compressed by gzip.
+     */
+    protected final AtomicLong compressedResponses = new AtomicLong();
+
+    /**
+     * The Accept-Encoding header of the last request.
+     */
+    protected volatile String acceptEncoding;
+
+    /**
+     * The HTTP status of rejected search requests.
+     */
+    protected volatile int failureStatus = 429;
+
+    /**
+     * The delay in milliseconds of each search request.
+     */
+    protected volatile long latency;
+
+    /**
+     * Starts the server on a free port of the loopback address.
+     * @param index The name of the index.
+     * @param numOfDocs The number of documents in the index.
+     * @param contentSize The length of the content field of each document.
+     * @throws IOException If the server cannot be started.
+     */
+    public FakeElasticsearchServer(final String index, final int numOfDocs, final int contentSize) throws IOException {
+        this.index = index;
+        this.numOfDocs = numOfDocs;
+        this.contentSize = contentSize;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executorService);
+        server.start();
+    }
+
+    /**
+     * Gets the URL of the server for the http.hosts setting.
+     * @return The URL.
+     */
+    public String getUrl() {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    /**
+     * Sets the delay of each search request.
+     * @param latency The delay in milliseconds.
+     */
+    public void setLatency(final long latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * Rejects the next search requests.
+     * @param count The number of requests to reject.
+     * @param status The HTTP status of the rejections.
+     */
+    public void fail(final int count, final int status) {
+        failureStatus = status;
+        failures.set(count);
+    }
+
+    /**
+     * Gets the number of search and scroll requests.
+     * @return The number of requests.
+     */
+    public long getSearchRequests() {
+        return searchRequests.get();
+    }
+
+    /**
+     * Gets the number of returned hits.
+     * @return The number of hits.
+     */
+    public long getReturnedHits() {
+        return returnedHits.get();
+    }
+
+    /**
+     * Gets the number of response bytes written to the wire, which are compressed if the client accepts gzip.
+     * @return The number of bytes.
+     */
+    public long getResponseBytes() {
+        return responseBytes.get();
+    }
+
+    /**
+     * Gets the number of responses compressed by gzip.
+     * @return The number of responses.
+     */
+    public long getCompressedResponses() {
+        return compressedResponses.get();
+    }
+
+    /**
+     * Gets the Accept-Encoding header of the last request.
+     * @return The header value, or null if the client did not send it.
+     */
+    public String getAcceptEncoding() {
+        return acceptEncoding;
+    }
+
+    /**
+     * Gets the number of documents deleted by bulk requests.
+     * @return The number of documents.
+     */
+    public long getDeletedDocs() {
+        return deletedDocs.get();
+    }
+
+    /**
+     * Gets the number of scroll contexts which are not cleared.
+     * @return The number of scroll contexts.
+     */
+    public int getOpenScrolls() {
+        return scrolls.size();
+    }
+
+    /**
+     * Gets the number of point in time IDs which are not deleted.
+     * @return The number of point in time IDs.
+     */
+    public int getOpenPits() {
+        return pits.size();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executorService.shutdownNow();
+    }
+
+    /**
+     * Handles a request.
+     * @param exchange The exchange of the request.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void handle(final HttpExchange exchange) throws IOException {
+        try (exchange) {
+            final String method = exchange.getRequestMethod();
+            final String path = exchange.getRequestURI().getPath();
+            if ("/".equals(path)) {
+                writeInfo(exchange);
+            } else if (path.endsWith("/_bulk")) {
+                bulk(exchange);
+            } else if (path.endsWith("/_search/point_in_time")) {
+                if ("DELETE".equals(method)) {
+                    deletePit(exchange, readBody(exchange));
+                } else {
+                    createPit(exchange);
+                }
+            } else if ("/_search/scroll".equals(path) || path.startsWith("/_search/scroll/")) {
+                final Map<String, Object> body = readBody(exchange);
+                if ("DELETE".equals(method)) {
+                    clearScroll(exchange, body);
+                } else if (accept(exchange)) {
+                    scroll(exchange, body);
+                }
+            } else if (path.endsWith("/_search")) {
+                final Map<String, Object> body = readBody(exchange);
+                if (accept(exchange)) {
+                    search(exchange, body);
+                }
+            } else if (path.endsWith("/_settings")) {
+                writeSettings(exchange);
+            } else {
+                writeError(exchange, 404, "illegal_argument_exception", "Unsupported request: " + method + " " + path);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Delays a search request and rejects it if failures are injected.
+     * @param exchange The exchange of the request.
+     * @return true if the request is processed.
+     * @throws IOException If the response cannot be written.
+     * @throws InterruptedException If the delay is interrupted.
+     */
+    protected boolean accept(final HttpExchange exchange) throws IOException, InterruptedException {
+        searchRequests.incrementAndGet();
+        if (latency > 0) {
+            Thread.sleep(latency);
+        }
+        if (failures.getAndUpdate(v -> v > 0 ? v - 1 : 0) > 0) {
+            writeError(exchange, failureStatus, "es_rejected_execution_exception", "rejected execution of search");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Opens a scroll or searches a point in time.
+     * @param exchange The exchange of the request.
+     * @param body The request body.
+     * @throws IOException If the response cannot be written.
+     */
+    @SuppressWarnings("unchecked")
+    protected void search(final HttpExchange exchange, final Map<String, Object> body) throws IOException {
+        final Map<String, String> params = getParams(exchange);
+        int size = body.get("size") instanceof Number number ? number.intValue() : 10;
+        if (params.containsKey("size")) {
+            size = Integer.parseInt(params.get("size"));
+        }
+        int sliceId = 0;
+        int sliceMax = 1;
+        if (body.get("slice") instanceof Map<?, ?> slice) {
+            sliceId = ((Number) slice.get("id")).intValue();
+            sliceMax = ((Number) slice.get("max")).intValue();
+        }
+        final Cursor cursor = new Cursor(size, sliceId, sliceMax);
+        if (body.get("pit") instanceof Map<?, ?> pit) {
+            final String pitId = (String) pit.get("id");
+            if (!pits.contains(pitId)) {
+                writeError(exchange, 404, "search_context_missing_exception", "No search context found for id [" + pitId + "]");
+                return;
+            }
+            if (body.get("search_after") instanceof List<?> searchAfter && !searchAfter.isEmpty()) {
+                cursor.next = ((Number) ((List<Object>) searchAfter).get(0)).intValue() + 1;
+            }
+            writeHits(exchange, cursor, null, pitId);
+            return;
+        }
+        if (params.containsKey("scroll")) {
+            final String scrollId = "scroll-" + idSequence.incrementAndGet();
+            scrolls.put(scrollId, cursor);
+            writeHits(exchange, cursor, scrollId, null);
+            return;
+        }
+        writeHits(exchange, cursor, null, null);
+    }
+
+    /**
+     * Returns the next page of a scroll.
+     * @param exchange The exchange of the request.
+     * @param body The request body.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void scroll(final HttpExchange exchange, final Map<String, Object> body) throws IOException {
+        final String scrollId = (String) body.get("scroll_id");
+        final Cursor cursor = scrollId != null ? scrolls.get(scrollId) : null;
+        if (cursor == null) {
+            writeError(exchange, 404, "search_context_missing_exception", "No search context found for id [" + scrollId + "]");
+            return;
+        }
+        synchronized (cursor) {
+            writeHits(exchange, cursor, scrollId, null);
+        }
+    }
+
+    /**
+     * Clears scroll contexts.
+     * @param exchange The exchange of the request.
+     * @param body The request body.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void clearScroll(final HttpExchange exchange, final Map<String, Object> body) throws IOException {
+        int freed = 0;
+        for (final Object scrollId : toList(body.get("scroll_id"))) {
+            if (scrolls.remove(scrollId) != null) {
+                freed++;
+            }
+        }
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().field("succeeded", true).field("num_freed", freed).endObject();
+        }
+    }
+
+    /**
+     * Creates a point in time.
+     * @param exchange The exchange of the request.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void createPit(final HttpExchange exchange) throws IOException {
+        final String pitId = "pit-" + idSequence.incrementAndGet();
+        pits.add(pitId);
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().field("pit_id", pitId);
+            writeShards(builder);
+            builder.field("creation_time", System.currentTimeMillis()).endObject();
+        }
+    }
+
+    /**
+     * Deletes points in time.
+     * @param exchange The exchange of the request.
+     * @param body The request body.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void deletePit(final HttpExchange exchange, final Map<String, Object> body) throws IOException {
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().startArray("pits");
+            for (final Object pitId : toList(body.get("pit_id"))) {
+                builder.startObject().field("pit_id", pitId).field("successful", pits.remove(pitId)).endObject();
+            }
+            builder.endArray().endObject();
+        }
+    }
+
+    /**
+     * Deletes documents by a bulk request. Other actions are rejected.
+     * @param exchange The exchange of the request.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void bulk(final HttpExchange exchange) throws IOException {
+        final String[] lines;
+        try (InputStream in = exchange.getRequestBody()) {
+            lines = new String(in.readAllBytes(), StandardCharsets.UTF_8).split("\n");
+        }
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().field("took", 1).field("errors", false).startArray("items");
+            for (final String line : lines) {
+                if (line.isBlank()) {
+                    continue;
+                }
+                final Map<String, Object> action = XContentHelper.convertToMap(JsonXContent.jsonXContent, line, false);
+                if (!(action.get("delete") instanceof Map<?, ?> delete)) {
+                    throw new IllegalArgumentException("Unsupported bulk action: " + line);
+                }
+                final long seqNo = deletedDocs.incrementAndGet();
+                builder.startObject().startObject("delete");
+                builder.field("_index", delete.get("_index") != null ? delete.get("_index") : index);
+                builder.field("_id", delete.get("_id"));
+                builder.field("_version", 2).field("result", "deleted");
+                builder.startObject("_shards").field("total", 1).field("successful", 1).field("failed", 0).endObject();
+                builder.field("_seq_no", seqNo).field("_primary_term", 1).field("status", 200);
+                builder.endObject().endObject();
+            }
+            builder.endArray().endObject();
+        }
+    }
+
+    /**
+     * Writes the next page of a cursor and advances it.
+     * @param exchange The exchange of the request.
+     * @param cursor The cursor.
+     * @param scrollId The scroll ID, or null if the search is not scrolled.
+     * @param pitId The point in time ID, or null if the search does not use a point in time.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void writeHits(final HttpExchange exchange, final Cursor cursor, final String scrollId, final String pitId)
+            throws IOException {
+        final List<Integer> docs = new ArrayList<>(cursor.size);
+        int doc = cursor.next;
+        while (docs.size() < cursor.size && doc < numOfDocs) {
+            if (doc % cursor.sliceMax == cursor.sliceId) {
+                docs.add(doc);
+            }
+            doc++;
+        }
+        cursor.next = doc;
+        returnedHits.addAndGet(docs.size());
+
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject();
+            if (scrollId != null) {
+                builder.field("_scroll_id", scrollId);
+            }
+            if (pitId != null) {
+                builder.field("pit_id", pitId);
+            }
+            builder.field("took", 1).field("timed_out", false);
+            writeShards(builder);
+            builder.startObject("hits");
+            builder.startObject("total").field("value", numOfDocs).field("relation", "eq").endObject();
+            builder.field("max_score", 1.0f);
+            builder.startArray("hits");
+            for (final int n : docs) {
+                builder.startObject();
+                builder.field("_index", index).field("_id", getId(n)).field("_score", 1.0f);
+                builder.field("_version", 1).field("_seq_no", n).field("_primary_term", 1);
+                builder.startObject("_source");
+                writeSource(builder, n);
+                builder.endObject();
+                if (pitId != null) {
+                    builder.startArray("sort").value(n).endArray();
+                }
+                builder.endObject();
+            }
+            builder.endArray().endObject().endObject();
+        }
+    }
+
+    /**
+     * Gets the ID of a generated document.
+     * @param n The number of the document.
+     * @return The ID.
+     */
+    protected String getId(final int n) {
+        return "doc" + n;
+    }
+
+    /**
+     * Writes the source fields of a generated document.
+     * @param builder The builder of the response.
+     * @param n The number of the document.
+     * @throws IOException If the source cannot be written.
+     */
+    protected void writeSource(final XContentBuilder builder, final int n) throws IOException {
+        builder.field("url", "https://example.com/" + getId(n));
+        builder.field("title", "Title " + n);
+        builder.field("content", content(n));
+        builder.field("number", n);
+        builder.field("updated_at", "2025-01-01T00:00:00.000Z");
+    }
+
+    /**
+     * Generates the content of a document, which is a sequence of pseudo-random words so that it compresses like a text.
+     * @param n The number of the document.
+     * @return The content.
+     */
+    protected String content(final int n) {
+        final StringBuilder buf = new StringBuilder(contentSize + 16);
+        final Random random = new Random(n);
+        while (buf.length() < contentSize) {
+            final int length = 2 + random.nextInt(8);
+            for (int i = 0; i < length; i++) {
+                buf.append((char) ('a' + random.nextInt(26)));
+            }
+            buf.append(' ');
+        }
+        buf.setLength(contentSize);
+        return buf.toString();
+    }
+
+    /**
+     * Writes the information of the cluster.
+     * @param exchange The exchange of the request.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void writeInfo(final HttpExchange exchange) throws IOException {
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().field("name", "fake").field("cluster_name", "fake").field("cluster_uuid", "fake");
+            builder.startObject("version")
+                    .field("distribution", "opensearch")
+                    .field("number", "3.0.0")
+                    .field("build_type", "tar")
+                    .field("build_hash", "unknown")
+                    .field("build_date", "2025-01-01T00:00:00Z")
+                    .field("build_snapshot", false)
+                    .field("lucene_version", "10.1.0")
+                    .field("minimum_wire_compatibility_version", "2.19.0")
+                    .field("minimum_index_compatibility_version", "2.0.0")
+                    .endObject();
+            builder.field("tagline", "The OpenSearch Project: https://opensearch.org/").endObject();
+        }
+    }
+
+    /**
+     * Writes the settings of the index, which has one shard.
+     * @param exchange The exchange of the request.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void writeSettings(final HttpExchange exchange) throws IOException {
+        try (XContentBuilder builder = startResponse(exchange, 200)) {
+            builder.startObject().startObject(index).startObject("settings").startObject("index");
+            builder.field("number_of_shards", "1").field("number_of_replicas", "0");
+            builder.endObject().endObject().endObject().endObject();
+        }
+    }
+
+    /**
+     * Writes an error response.
+     * @param exchange The exchange of the request.
+     * @param status The HTTP status.
+     * @param type The type of the error.
+     * @param reason The reason of the error.
+     * @throws IOException If the response cannot be written.
+     */
+    protected void writeError(final HttpExchange exchange, final int status, final String type, final String reason) throws IOException {
+        try (XContentBuilder builder = startResponse(exchange, status)) {
+            builder.startObject().startObject("error");
+            builder.startArray("root_cause").startObject().field("type", type).field("reason", reason).endObject().endArray();
+            builder.field("type", type).field("reason", reason);
+            builder.endObject().field("status", status).endObject();
+        }
+    }
+
+    /**
+     * Writes the shards section of a response.
+     * @param builder The builder of the response.
+     * @throws IOException If the section cannot be written.
+     */
+    protected void writeShards(final XContentBuilder builder) throws IOException {
+        builder.startObject("_shards").field("total", 1).field("successful", 1).field("skipped", 0).field("failed", 0).endObject();
+    }
+
+    /**
+     * Starts a chunked response.
+     * The response is SMILE if the client accepts application/smile, and it is compressed if the client accepts gzip.
+     * The filter_path parameter filters the fields of the response as Elasticsearch does.
+     * @param exchange The exchange of the request.
+     * @param status The HTTP status.
+     * @return The builder writing to the response body.
+     * @throws IOException If the response cannot be started.
+     */
+    protected XContentBuilder startResponse(final HttpExchange exchange, final int status) throws IOException {
+        final String accept = exchange.getRequestHeaders().getFirst("Accept");
+        final XContentType xContentType =
+                accept != null && accept.contains("application/smile") ? XContentType.SMILE : XContentType.JSON;
+        exchange.getResponseHeaders()
+                .set("Content-Type", xContentType == XContentType.SMILE ? "application/smile" : "application/json; charset=UTF-8");
+        final String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+        this.acceptEncoding = acceptEncoding;
+        final boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+            compressedResponses.incrementAndGet();
+        }
+        exchange.sendResponseHeaders(status, 0);
+        OutputStream out = new FilterOutputStream(exchange.getResponseBody()) {
+            @Override
+            public void write(final byte[] b, final int off, final int len) throws IOException {
+                responseBytes.addAndGet(len);
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void write(final int b) throws IOException {
+                responseBytes.incrementAndGet();
+                out.write(b);
+            }
+        };
+        out = gzip ? new GZIPOutputStream(out, 65536) : new BufferedOutputStream(out, 65536);
+        final String filterPath = getParams(exchange).get("filter_path");
+        final Set<String> includes = filterPath != null
+                ? new HashSet<>(List.of(URLDecoder.decode(filterPath, StandardCharsets.UTF_8).split(","))) : Collections.emptySet();
+        return new XContentBuilder(xContentType.xContent(), out, includes);
+    }
+
+    /**
+     * Reads the JSON body of a request.
+     * @param exchange The exchange of the request.
+     * @return The body, or an empty map if the request has no body.
+     * @throws IOException If the body cannot be read.
+     */
+    protected Map<String, Object> readBody(final HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            final byte[] bytes = in.readAllBytes();
+            if (bytes.length == 0) {
+                return Collections.emptyMap();
+            }
+            return XContentHelper.convertToMap(JsonXContent.jsonXContent, bytes, 0, bytes.length, false);
+        }
+    }
+
+    /**
+     * Gets the query parameters of a request.
+     * @param exchange The exchange of the request.
+     * @return The query parameters.
+     */
+    protected Map<String, String> getParams(final HttpExchange exchange) {
+        final String query = exchange.getRequestURI().getQuery();
+        if (query == null) {
+            return Collections.emptyMap();
+        }
+        final Map<String, String> params = new HashMap<>();
+        for (final String param : query.split("&")) {
+            final int pos = param.indexOf('=');
+            if (pos > 0) {
+                params.put(param.substring(0, pos), param.substring(pos + 1));
+            } else if (!param.isEmpty()) {
+                params.put(param, "");
+            }
+        }
+        return params;
+    }
+
+    private static List<?> toList(final Object value) {
+        if (value instanceof List<?> list) {
+            return list;
+        }
+        if (value instanceof String str) {
+            return List.of(str.split(","));
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * The position of a scroll or a search in the generated documents.
+     */
+    protected static class Cursor {
+        final int size;
+
+        final int sliceId;
+
+        final int sliceMax;
+
+        int next;
+
+        Cursor(final int size, final int sliceId, final int sliceMax) {
+            this.size = size;
+            this.sliceId = sliceId;
+            this.sliceMax = sliceMax;
+        }
+    }
+}
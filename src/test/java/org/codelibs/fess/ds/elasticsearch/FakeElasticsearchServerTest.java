@@ -0,0 +1,213 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+import org.opensearch.common.xcontent.XContentHelper;
+import org.opensearch.common.xcontent.json.JsonXContent;
+import org.opensearch.common.xcontent.smile.SmileXContent;
+
+public class FakeElasticsearchServerTest extends UnitDsTestCase {
+
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+
+    /**
+     * Test that all documents are returned by a scroll and the scroll is cleared.
+     */
+    public void test_scroll() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 25, 10)) {
+            Map<String, Object> response = send(server, "POST", "/docs/_search?scroll=1m", "{\"size\":10}", 200);
+            final String scrollId = (String) response.get("_scroll_id");
+            assertEquals(10, getHits(response).size());
+            assertEquals("doc0", getHits(response).get(0).get("_id"));
+            assertEquals("docs", getHits(response).get(0).get("_index"));
+            assertEquals(10, ((String) getSource(getHits(response).get(0)).get("content")).length());
+
+            response = send(server, "POST", "/_search/scroll", "{\"scroll\":\"1m\",\"scroll_id\":\"" + scrollId + "\"}", 200);
+            assertEquals(10, getHits(response).size());
+            assertEquals("doc10", getHits(response).get(0).get("_id"));
+            response = send(server, "POST", "/_search/scroll", "{\"scroll\":\"1m\",\"scroll_id\":\"" + scrollId + "\"}", 200);
+            assertEquals(5, getHits(response).size());
+            response = send(server, "POST", "/_search/scroll", "{\"scroll\":\"1m\",\"scroll_id\":\"" + scrollId + "\"}", 200);
+            assertEquals(0, getHits(response).size());
+            assertEquals(25, server.getReturnedHits());
+            assertEquals(4, server.getSearchRequests());
+
+            assertEquals(1, server.getOpenScrolls());
+            response = send(server, "DELETE", "/_search/scroll", "{\"scroll_id\":[\"" + scrollId + "\"]}", 200);
+            assertEquals(1, response.get("num_freed"));
+            assertEquals(0, server.getOpenScrolls());
+            send(server, "POST", "/_search/scroll", "{\"scroll\":\"1m\",\"scroll_id\":\"" + scrollId + "\"}", 404);
+        }
+    }
+
+    /**
+     * Test that sliced scrolls return disjoint documents.
+     */
+    public void test_scroll_slice() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 10, 10)) {
+            final Map<String, Object> response =
+                    send(server, "POST", "/docs/_search?scroll=1m", "{\"size\":100,\"slice\":{\"id\":1,\"max\":2}}", 200);
+            final List<Map<String, Object>> hits = getHits(response);
+            assertEquals(5, hits.size());
+            assertEquals("doc1", hits.get(0).get("_id"));
+            assertEquals("doc9", hits.get(4).get("_id"));
+        }
+    }
+
+    /**
+     * Test that a point in time is paged by search_after and deleted.
+     */
+    public void test_pit() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 15, 10)) {
+            final String pitId = (String) send(server, "POST", "/docs/_search/point_in_time?keep_alive=1m", "", 200).get("pit_id");
+            assertEquals(1, server.getOpenPits());
+
+            Map<String, Object> response =
+                    send(server, "POST", "/_search", "{\"size\":10,\"pit\":{\"id\":\"" + pitId + "\",\"keep_alive\":\"1m\"}}", 200);
+            assertEquals(pitId, response.get("pit_id"));
+            List<Map<String, Object>> hits = getHits(response);
+            assertEquals(10, hits.size());
+            assertEquals(List.of(9), hits.get(9).get("sort"));
+
+            response = send(server, "POST", "/_search",
+                    "{\"size\":10,\"pit\":{\"id\":\"" + pitId + "\",\"keep_alive\":\"1m\"},\"search_after\":[9]}", 200);
+            hits = getHits(response);
+            assertEquals(5, hits.size());
+            assertEquals("doc10", hits.get(0).get("_id"));
+
+            send(server, "DELETE", "/_search/point_in_time", "{\"pit_id\":[\"" + pitId + "\"]}", 200);
+            assertEquals(0, server.getOpenPits());
+        }
+    }
+
+    /**
+     * Test that deletes of a bulk request are counted.
+     */
+    public void test_bulk() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 10, 10)) {
+            final Map<String, Object> response = send(server, "POST", "/_bulk",
+                    "{\"delete\":{\"_index\":\"docs\",\"_id\":\"doc1\"}}\n{\"delete\":{\"_index\":\"docs\",\"_id\":\"doc2\"}}\n", 200);
+            assertEquals(Boolean.FALSE, response.get("errors"));
+            assertEquals(2, ((List<?>) response.get("items")).size());
+            assertEquals(2, server.getDeletedDocs());
+        }
+    }
+
+    /**
+     * Test that injected rejections are returned before the searches succeed.
+     */
+    public void test_fail() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 10, 10)) {
+            server.fail(2, 429);
+            Map<String, Object> response = send(server, "POST", "/docs/_search?scroll=1m", "{\"size\":10}", 429);
+            assertEquals("es_rejected_execution_exception", ((Map<?, ?>) response.get("error")).get("type"));
+            send(server, "POST", "/docs/_search?scroll=1m", "{\"size\":10}", 429);
+            response = send(server, "POST", "/docs/_search?scroll=1m", "{\"size\":10}", 200);
+            assertEquals(10, getHits(response).size());
+            assertEquals(3, server.getSearchRequests());
+        }
+    }
+
+    /**
+     * Test that search requests are delayed by the injected latency.
+     */
+    public void test_latency() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 10, 10)) {
+            server.setLatency(100);
+            final long startTime = System.currentTimeMillis();
+            send(server, "POST", "/docs/_search", "{\"size\":1}", 200);
+            assertTrue(System.currentTimeMillis() - startTime >= 100);
+        }
+    }
+
+    /**
+     * Test that responses are filtered by filter_path, compressed by gzip and encoded in SMILE as requested.
+     */
+    public void test_responseFormat() throws Exception {
+        try (FakeElasticsearchServer server = new FakeElasticsearchServer("docs", 10, 1000)) {
+            final String path = "/docs/_search?filter_path=hits.hits._id,hits.hits._source";
+            final long plainBytes = fetch(server, "/docs/_search", Map.of()).length;
+            assertEquals(plainBytes, server.getResponseBytes());
+            assertNull(server.getAcceptEncoding());
+            assertEquals(0, server.getCompressedResponses());
+
+            final byte[] filtered = fetch(server, path, Map.of());
+            final Map<String, Object> response =
+                    XContentHelper.convertToMap(JsonXContent.jsonXContent, filtered, 0, filtered.length, false);
+            assertEquals(Set.of("hits"), response.keySet());
+            assertEquals(Set.of("_id", "_source"), getHits(response).get(0).keySet());
+            assertTrue(filtered.length < plainBytes);
+
+            final long bytes = server.getResponseBytes();
+            final byte[] compressed = fetch(server, path, Map.of("Accept-Encoding", "gzip"));
+            assertEquals("gzip", server.getAcceptEncoding());
+            assertEquals(1, server.getCompressedResponses());
+            assertTrue(server.getResponseBytes() - bytes < filtered.length * 3 / 4);
+            try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+                assertTrue(Arrays.equals(filtered, in.readAllBytes()));
+            }
+
+            final byte[] smile = fetch(server, path, Map.of("Accept", "application/smile"));
+            assertEquals("doc0", getHits(XContentHelper.convertToMap(SmileXContent.smileXContent, smile, 0, smile.length, false)).get(0)
+                    .get("_id"));
+        }
+    }
+
+    private byte[] fetch(FakeElasticsearchServer server, String path, Map<String, String> headers) throws Exception {
+        final HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(server.getUrl() + path))
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString("{\"size\":10}"));
+        headers.forEach(builder::header);
+        final HttpResponse<byte[]> response = httpClient.send(builder.build(), BodyHandlers.ofByteArray());
+        assertEquals(200, response.statusCode());
+        return response.body();
+    }
+
+    private Map<String, Object> send(FakeElasticsearchServer server, String method, String path, String body, int status)
+            throws Exception {
+        final HttpRequest request = HttpRequest.newBuilder(URI.create(server.getUrl() + path))
+                .header("Content-Type", "application/json")
+                .method(method, BodyPublishers.ofString(body))
+                .build();
+        final HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+        assertEquals(status, response.statusCode());
+        return XContentHelper.convertToMap(JsonXContent.jsonXContent, response.body(), false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> getHits(Map<String, Object> response) {
+        return (List<Map<String, Object>>) ((Map<String, Object>) response.get("hits")).get("hits");
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Object> getSource(Map<String, Object> hit) {
+        return (Map<String, Object>) hit.get("_source");
+    }
+}
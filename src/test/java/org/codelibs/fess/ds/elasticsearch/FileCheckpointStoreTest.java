@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.TestInfo;
+
+public class FileCheckpointStoreTest extends UnitDsTestCase {
+
+    private Path directory;
+
+    @Override
+    public void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        directory = Files.createTempDirectory("checkpoint");
+    }
+
+    @Override
+    public void tearDown(TestInfo testInfo) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    // ignore
+                }
+            });
+        }
+        super.tearDown(testInfo);
+    }
+
+    /**
+     * Test that saved sort values are loaded.
+     */
+    public void test_saveAndLoad() {
+        FileCheckpointStore store = new FileCheckpointStore(directory.resolve("sub"));
+        assertNull(store.load("config1"));
+
+        store.save("config1", new Object[] { 1700000000000L, "doc-1" });
+        Object[] values = store.load("config1");
+        assertEquals(2, values.length);
+        assertEquals(1700000000000L, ((Number) values[0]).longValue());
+        assertEquals("doc-1", values[1]);
+
+        store.save("config1", new Object[] { 1700000000001L, "doc-2" });
+        assertEquals("doc-2", store.load("config1")[1]);
+        assertNull(store.load("config2"));
+    }
+
+    /**
+     * Test that a deleted checkpoint is not loaded.
+     */
+    public void test_delete() {
+        FileCheckpointStore store = new FileCheckpointStore(directory);
+        store.save("config1", new Object[] { "a" });
+        store.delete("config1");
+        assertNull(store.load("config1"));
+        store.delete("config1");
+    }
+
+    /**
+     * Test that keys are converted to safe file names.
+     */
+    public void test_getPath() {
+        FileCheckpointStore store = new FileCheckpointStore(directory);
+        assertEquals(directory.resolve("config_1_0_2.json"), store.getPath("config/1_0_2"));
+        assertEquals(directory.resolve("abc-1.2.json"), store.getPath("abc-1.2"));
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.TestInfo;
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.SearchShardTarget;
+
+public class FingerprintCacheTest extends UnitDsTestCase {
+
+    private Path directory;
+
+    @Override
+    public void setUp(TestInfo testInfo) throws Exception {
+        super.setUp(testInfo);
+        directory = Files.createTempDirectory("fingerprint");
+    }
+
+    @Override
+    public void tearDown(TestInfo testInfo) throws Exception {
+        try (Stream<Path> stream = Files.walk(directory)) {
+            stream.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    // ignore
+                }
+            });
+        }
+        super.tearDown(testInfo);
+    }
+
+    /**
+     * Test that hits are unchanged only if their versions are saved by the previous crawl.
+     */
+    public void test_version() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script");
+        SearchHit hit = createHit("index1", "1");
+        hit.version(3);
+        assertFalse(cache.isUnchanged(hit));
+        cache.update(hit);
+        assertFalse(cache.isUnchanged(createHit("index1", "1")));
+        cache.save();
+
+        cache = new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script");
+        assertEquals(1, cache.getPreviousSize());
+        assertTrue(cache.isUnchanged(hit));
+        assertEquals(1, cache.getCurrentSize());
+        SearchHit other = createHit("index2", "1");
+        other.version(3);
+        assertFalse(cache.isUnchanged(other));
+        hit.version(4);
+        assertFalse(cache.isUnchanged(hit));
+    }
+
+    /**
+     * Test that hits are compared by their sequence numbers and primary terms.
+     */
+    public void test_seqNo() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_SEQ_NO, "script");
+        SearchHit hit = createHit("index1", "1");
+        hit.setSeqNo(10);
+        hit.setPrimaryTerm(1);
+        cache.update(hit);
+        cache.save();
+
+        cache = new FingerprintCache(path, FingerprintCache.MODE_SEQ_NO, "script");
+        assertTrue(cache.isUnchanged(hit));
+        hit.setPrimaryTerm(2);
+        assertFalse(cache.isUnchanged(hit));
+    }
+
+    /**
+     * Test that hits are compared by the hashes of their sources.
+     */
+    public void test_source() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_SOURCE, "script");
+        SearchHit hit = createHit("index1", "1");
+        assertFalse(cache.isUnchanged(hit));
+        hit.sourceRef(new BytesArray("{\"title\":\"a\"}".getBytes(StandardCharsets.UTF_8)));
+        cache.update(hit);
+        cache.save();
+
+        cache = new FingerprintCache(path, FingerprintCache.MODE_SOURCE, "script");
+        assertTrue(cache.isUnchanged(hit));
+        hit.sourceRef(new BytesArray("{\"title\":\"b\"}".getBytes(StandardCharsets.UTF_8)));
+        assertFalse(cache.isUnchanged(hit));
+    }
+
+    /**
+     * Test that a change of a doc value field is detected even if the source is unchanged or not fetched.
+     */
+    public void test_source_fields() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_SOURCE, "script");
+        SearchHit hit = createHit("index1", "1");
+        hit.sourceRef(new BytesArray("{\"title\":\"a\"}".getBytes(StandardCharsets.UTF_8)));
+        hit.setDocumentField("updated_at", new DocumentField("updated_at", List.of(10L)));
+        SearchHit fieldsOnly = createHit("index1", "2");
+        fieldsOnly.setDocumentField("updated_at", new DocumentField("updated_at", List.of(10L)));
+        cache.update(hit);
+        cache.update(fieldsOnly);
+        cache.save();
+
+        cache = new FingerprintCache(path, FingerprintCache.MODE_SOURCE, "script");
+        assertTrue(cache.isUnchanged(hit));
+        assertTrue(cache.isUnchanged(fieldsOnly));
+        hit.setDocumentField("updated_at", new DocumentField("updated_at", List.of(20L)));
+        fieldsOnly.setDocumentField("updated_at", new DocumentField("updated_at", List.of(20L)));
+        assertFalse(cache.isUnchanged(hit));
+        assertFalse(cache.isUnchanged(fieldsOnly));
+    }
+
+    /**
+     * Test that the fingerprints are discarded if the configuration is changed.
+     */
+    public void test_configuration() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script1");
+        SearchHit hit = createHit("index1", "1");
+        hit.version(1);
+        cache.update(hit);
+        cache.save();
+
+        assertEquals(0, new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script2").getPreviousSize());
+        assertEquals(0, new FingerprintCache(path, FingerprintCache.MODE_SEQ_NO, "script1").getPreviousSize());
+        assertEquals(1, new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script1").getPreviousSize());
+    }
+
+    /**
+     * Test that documents which are not crawled are dropped from the saved fingerprints.
+     */
+    public void test_save() {
+        Path path = directory.resolve("config1.fingerprints");
+        FingerprintCache cache = new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script");
+        for (int i = 0; i < 1000; i++) {
+            SearchHit hit = createHit("index1", String.valueOf(i));
+            hit.version(1);
+            cache.update(hit);
+        }
+        assertEquals(1000, cache.getCurrentSize());
+        cache.save();
+
+        cache = new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script");
+        assertEquals(1000, cache.getPreviousSize());
+        for (int i = 0; i < 1000; i += 2) {
+            SearchHit hit = createHit("index1", String.valueOf(i));
+            hit.version(1);
+            assertTrue(cache.isUnchanged(hit));
+        }
+        cache.save();
+        assertEquals(500, new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script").getPreviousSize());
+    }
+
+    /**
+     * Test that an unknown mode is rejected and a broken file is ignored.
+     */
+    public void test_invalid() throws Exception {
+        Path path = directory.resolve("config1.fingerprints");
+        try {
+            new FingerprintCache(path, "unknown", "script");
+            fail();
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        Files.write(path, new byte[] { 1, 2 });
+        assertEquals(0, new FingerprintCache(path, FingerprintCache.MODE_VERSION, "script").getPreviousSize());
+    }
+
+    private SearchHit createHit(String index, String id) {
+        SearchHit hit = new SearchHit(0, id, null, null);
+        hit.shard(new SearchShardTarget("node", new ShardId(index, "_na_", 0), null, null));
+        return hit;
+    }
+}
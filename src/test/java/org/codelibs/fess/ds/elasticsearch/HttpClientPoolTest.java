@@ -0,0 +1,162 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.transport.client.Client;
+import org.opensearch.transport.client.support.AbstractClient;
+
+public class HttpClientPoolTest extends UnitDsTestCase {
+
+    private final List<TestClient> createdClients = new ArrayList<>();
+
+    private boolean healthy = true;
+
+    private int healthChecks;
+
+    /**
+     * Test that clients are shared by the same settings.
+     */
+    public void test_acquire() {
+        try (HttpClientPool pool = createPool()) {
+            Settings settings1 = Settings.builder().put("http.hosts", "localhost:9200").build();
+            Settings settings2 = Settings.builder().put("http.hosts", "localhost:9200").build();
+            Settings settings3 = Settings.builder().put("http.hosts", "localhost:9201").build();
+            try (HttpClientPool.Lease lease1 = pool.acquire(settings1);
+                    HttpClientPool.Lease lease2 = pool.acquire(settings2);
+                    HttpClientPool.Lease lease3 = pool.acquire(settings3)) {
+                assertSame(lease1.getClient(), lease2.getClient());
+                assertNotSame(lease1.getClient(), lease3.getClient());
+            }
+            assertEquals(2, createdClients.size());
+            assertEquals(2, pool.size());
+
+            try (HttpClientPool.Lease lease = pool.acquire(settings1)) {
+                assertSame(createdClients.get(0), lease.getClient());
+            }
+            assertEquals(2, createdClients.size());
+            assertFalse(createdClients.get(0).closed);
+        }
+        assertTrue(createdClients.get(0).closed);
+        assertTrue(createdClients.get(1).closed);
+    }
+
+    /**
+     * Test that unused clients are evicted after the idle timeout.
+     */
+    public void test_evictIdleClients() throws Exception {
+        try (HttpClientPool pool = createPool()) {
+            pool.setIdleTimeout(10);
+            HttpClientPool.Lease lease = pool.acquire(Settings.EMPTY);
+            Thread.sleep(20);
+            pool.evictIdleClients();
+            assertEquals(1, pool.size());
+
+            lease.close();
+            lease.close();
+            Thread.sleep(20);
+            pool.evictIdleClients();
+            assertEquals(0, pool.size());
+            assertTrue(createdClients.get(0).closed);
+        }
+    }
+
+    /**
+     * Test that an idle client is checked and recreated if it is unhealthy.
+     */
+    public void test_healthCheck() throws Exception {
+        try (HttpClientPool pool = createPool()) {
+            pool.setHealthCheckInterval(10);
+            pool.acquire(Settings.EMPTY).close();
+            assertEquals(0, healthChecks);
+
+            Thread.sleep(20);
+            pool.acquire(Settings.EMPTY).close();
+            assertEquals(1, healthChecks);
+            assertEquals(1, createdClients.size());
+
+            Thread.sleep(20);
+            healthy = false;
+            try (HttpClientPool.Lease lease = pool.acquire(Settings.EMPTY)) {
+                assertEquals(2, healthChecks);
+                assertEquals(2, createdClients.size());
+                assertTrue(createdClients.get(0).closed);
+                assertSame(createdClients.get(1), lease.getClient());
+            }
+        }
+    }
+
+    /**
+     * Test that a client leased on close is closed when it is released.
+     */
+    public void test_close() {
+        HttpClientPool pool = createPool();
+        HttpClientPool.Lease lease = pool.acquire(Settings.EMPTY);
+        pool.close();
+        assertFalse(createdClients.get(0).closed);
+        lease.close();
+        assertTrue(createdClients.get(0).closed);
+        try {
+            pool.acquire(Settings.EMPTY);
+            fail();
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    private HttpClientPool createPool() {
+        return new HttpClientPool() {
+            @Override
+            protected Client createClient(Settings settings) {
+                TestClient client = new TestClient(settings);
+                createdClients.add(client);
+                return client;
+            }
+
+            @Override
+            protected boolean isHealthy(Client client) {
+                healthChecks++;
+                return healthy;
+            }
+        };
+    }
+
+    private static class TestClient extends AbstractClient {
+        boolean closed;
+
+        TestClient(Settings settings) {
+            super(settings, null);
+        }
+
+        @Override
+        protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(ActionType<Response> action,
+                Request request, ActionListener<Response> listener) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
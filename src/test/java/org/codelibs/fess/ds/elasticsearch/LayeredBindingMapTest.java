@@ -0,0 +1,92 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class LayeredBindingMapTest extends UnitDsTestCase {
+
+    private Map<String, Object> createBase() {
+        Map<String, Object> base = new LinkedHashMap<>();
+        base.put("a", "base-a");
+        base.put("b", "base-b");
+        base.put("c", null);
+        return base;
+    }
+
+    /**
+     * Test that per-hit values are overlaid on the base values.
+     */
+    public void test_getAndPut() {
+        Map<String, Object> base = createBase();
+        LayeredBindingMap map = new LayeredBindingMap(base);
+        assertEquals("base-a", map.get("a"));
+        assertTrue(map.containsKey("c"));
+        assertNull(map.get("c"));
+        assertFalse(map.containsKey("d"));
+
+        assertEquals("base-a", map.put("a", "hit-a"));
+        assertNull(map.put("d", "hit-d"));
+        map.put("b", null);
+        assertEquals("hit-a", map.get("a"));
+        assertEquals("hit-d", map.get("d"));
+        assertNull(map.get("b"));
+        assertTrue(map.containsKey("b"));
+        assertEquals(4, map.size());
+
+        assertEquals("base-a", base.get("a"));
+        assertEquals(3, base.size());
+    }
+
+    /**
+     * Test that base values can be removed without modifying the base map.
+     */
+    public void test_remove() {
+        Map<String, Object> base = createBase();
+        LayeredBindingMap map = new LayeredBindingMap(base);
+        map.put("a", "hit-a");
+        assertEquals("hit-a", map.remove("a"));
+        assertFalse(map.containsKey("a"));
+        assertNull(map.get("a"));
+        assertEquals(2, map.size());
+        assertEquals("base-a", base.get("a"));
+
+        map.put("a", "hit-a2");
+        assertEquals("hit-a2", map.get("a"));
+        assertEquals(3, map.size());
+    }
+
+    /**
+     * Test that the entries contain the per-hit values and the visible base values.
+     */
+    public void test_entrySet() {
+        LayeredBindingMap map = new LayeredBindingMap(createBase());
+        map.put("a", "hit-a");
+        map.put("d", "hit-d");
+        map.remove("b");
+
+        Map<String, Object> copy = new HashMap<>(map);
+        assertEquals(3, copy.size());
+        assertEquals("hit-a", copy.get("a"));
+        assertEquals("hit-d", copy.get("d"));
+        assertTrue(copy.containsKey("c"));
+        assertFalse(copy.containsKey("b"));
+        assertEquals(3, map.entrySet().size());
+        assertEquals(copy, map);
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import org.opensearch.search.SearchHit;
+
+public class MeteredSearchHitReaderTest extends UnitDsTestCase {
+
+    /**
+     * Test that pages with hits are recorded and the empty page at the end is not.
+     */
+    public void test_nextPage() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        SearchHitReader reader = new SearchHitReader() {
+            int page;
+
+            @Override
+            public SearchHit[] nextPage() {
+                return page++ < 2 ? new SearchHit[] { new SearchHit(page), new SearchHit(page + 10) } : EMPTY_PAGE;
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        try (MeteredSearchHitReader meteredReader = new MeteredSearchHitReader(reader, metrics)) {
+            assertEquals(2, meteredReader.nextPage().length);
+            assertEquals(2, meteredReader.nextPage().length);
+            assertEquals(0, meteredReader.nextPage().length);
+        }
+        assertEquals(2, metrics.getPages());
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+public class PageSizeControllerTest extends UnitDsTestCase {
+
+    /**
+     * Test that the initial size is limited between the minimum and maximum sizes.
+     */
+    public void test_initialSize() {
+        assertEquals(10, new PageSizeController(1, 10, 100, 1000, 1000000).getSize());
+        assertEquals(100, new PageSizeController(1000, 10, 100, 1000, 1000000).getSize());
+        assertEquals(50, new PageSizeController(50, 10, 100, 1000, 1000000).getSize());
+    }
+
+    /**
+     * Test that the size is increased while fetching is fast and pages are small.
+     */
+    public void test_increase() {
+        PageSizeController controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageFetched(100, 10000, 100);
+        assertEquals(150, controller.getSize());
+        controller.onPageProcessed(150, 200);
+        controller.onPageFetched(150, 15000, 100);
+        assertEquals(225, controller.getSize());
+        for (int i = 0; i < 10; i++) {
+            controller.onPageFetched(controller.getSize(), 100, 100);
+        }
+        assertEquals(1000, controller.getSize());
+    }
+
+    /**
+     * Test that the size is kept when processing dominates fetching or the page is the last one.
+     */
+    public void test_keep() {
+        PageSizeController controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageProcessed(100, 5000);
+        controller.onPageFetched(100, 10000, 100);
+        assertEquals(100, controller.getSize());
+
+        controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageFetched(20, 100, 10);
+        assertEquals(100, controller.getSize());
+        controller.onPageFetched(0, 0, 10);
+        assertEquals(100, controller.getSize());
+    }
+
+    /**
+     * Test that the size is decreased when a page is too large or too slow.
+     */
+    public void test_decrease() {
+        PageSizeController controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageFetched(100, 4000000, 100);
+        assertEquals(25, controller.getSize());
+
+        controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageFetched(100, 1000, 2000);
+        assertEquals(50, controller.getSize());
+
+        controller = new PageSizeController(100, 10, 1000, 1000, 1000000);
+        controller.onPageFetched(100, 1000, 100000);
+        assertEquals(10, controller.getSize());
+    }
+}
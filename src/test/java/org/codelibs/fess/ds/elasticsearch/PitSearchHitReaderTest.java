@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.lucene.search.TotalHits;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.search.SearchRequest;
+import org.opensearch.action.search.SearchResponse;
+import org.opensearch.action.search.SearchResponseSections;
+import org.opensearch.action.search.ShardSearchFailure;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.search.DocValueFormat;
+import org.opensearch.search.SearchHit;
+import org.opensearch.search.SearchHits;
+import org.opensearch.transport.client.support.AbstractClient;
+
+public class PitSearchHitReaderTest extends UnitDsTestCase {
+
+    /**
+     * Test that each search uses the latest point in time ID returned by the previous search.
+     */
+    public void test_nextPage() {
+        TestClient client = new TestClient(2);
+        PointInTime pointInTime = new PointInTime("pit-0");
+        try (PitSearchHitReader reader =
+                new PitSearchHitReader(client.prepareSearch(), pointInTime, TimeValue.timeValueMinutes(1), "1m", null, null)) {
+            assertEquals(1, reader.nextPage().length);
+            assertEquals("pit-1", pointInTime.getId());
+            assertEquals(1, reader.nextPage().length);
+            assertEquals(0, reader.nextPage().length);
+            assertEquals(0, reader.nextPage().length);
+        }
+        assertEquals(List.of("pit-0", "pit-1", "pit-2"), client.pitIds);
+        assertEquals("pit-3", pointInTime.getId());
+    }
+
+    /**
+     * Test that the point in time ID is kept if a search does not return one.
+     */
+    public void test_update() {
+        PointInTime pointInTime = new PointInTime("pit-0");
+        pointInTime.update(null);
+        assertEquals("pit-0", pointInTime.getId());
+        pointInTime.update("pit-1");
+        assertEquals("pit-1", pointInTime.toString());
+    }
+
+    private static class TestClient extends AbstractClient {
+        final int pages;
+
+        final List<String> pitIds = new ArrayList<>();
+
+        TestClient(int pages) {
+            super(Settings.EMPTY, null);
+            this.pages = pages;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(ActionType<Response> action,
+                Request request, ActionListener<Response> listener) {
+            pitIds.add(((SearchRequest) request).source().pointInTimeBuilder().getId());
+            SearchHit[] hits;
+            if (pitIds.size() > pages) {
+                hits = new SearchHit[0];
+            } else {
+                SearchHit hit = new SearchHit(pitIds.size());
+                hit.sortValues(new Object[] { pitIds.size() }, new DocValueFormat[] { DocValueFormat.RAW });
+                hits = new SearchHit[] { hit };
+            }
+            SearchResponseSections sections = new SearchResponseSections(
+                    new SearchHits(hits, new TotalHits(hits.length, TotalHits.Relation.EQUAL_TO), 0), null, null, false, null, null, 1);
+            listener.onResponse((Response) new SearchResponse(sections, null, 1, 1, 0, 1, ShardSearchFailure.EMPTY_ARRAY,
+                    SearchResponse.Clusters.EMPTY, "pit-" + pitIds.size()));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.search.SearchHit;
+
+public class PrefetchSearchHitReaderTest extends UnitDsTestCase {
+
+    /**
+     * Test that pages are returned in order and the reader is closed.
+     */
+    public void test_nextPage() {
+        TestReader testReader = new TestReader(3, false);
+        try (PrefetchSearchHitReader reader = new PrefetchSearchHitReader(testReader, 1)) {
+            for (int i = 0; i < 3; i++) {
+                SearchHit[] hits = reader.nextPage();
+                assertEquals(1, hits.length);
+                assertEquals(i, hits[0].docId());
+            }
+            assertEquals(0, reader.nextPage().length);
+            assertEquals(0, reader.nextPage().length);
+        }
+        assertTrue(testReader.closed);
+    }
+
+    /**
+     * Test that the reader can be closed before all pages are read.
+     */
+    public void test_close_beforeFinished() {
+        TestReader testReader = new TestReader(100, false);
+        try (PrefetchSearchHitReader reader = new PrefetchSearchHitReader(testReader, 2)) {
+            assertEquals(0, reader.nextPage()[0].docId());
+        }
+        assertTrue(testReader.closed);
+        assertTrue(testReader.pages.size() < 100);
+    }
+
+    /**
+     * Test that an exception thrown by the fetching is rethrown.
+     */
+    public void test_nextPage_exception() {
+        TestReader testReader = new TestReader(1, true);
+        try (PrefetchSearchHitReader reader = new PrefetchSearchHitReader(testReader, 2)) {
+            assertEquals(1, reader.nextPage().length);
+            try {
+                reader.nextPage();
+                fail("Should throw DataStoreException");
+            } catch (DataStoreException e) {
+                assertEquals("test", e.getCause().getMessage());
+            }
+            assertEquals(0, reader.nextPage().length);
+        }
+        assertTrue(testReader.closed);
+    }
+
+    static class TestReader implements SearchHitReader {
+        final int numOfPages;
+        final boolean failure;
+        final List<SearchHit[]> pages = new ArrayList<>();
+        volatile boolean closed;
+
+        TestReader(int numOfPages, boolean failure) {
+            this.numOfPages = numOfPages;
+            this.failure = failure;
+        }
+
+        @Override
+        public SearchHit[] nextPage() {
+            if (pages.size() >= numOfPages) {
+                if (failure) {
+                    throw new IllegalStateException("test");
+                }
+                return EMPTY_PAGE;
+            }
+            SearchHit[] hits = new SearchHit[] { new SearchHit(pages.size()) };
+            pages.add(hits);
+            return hits;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
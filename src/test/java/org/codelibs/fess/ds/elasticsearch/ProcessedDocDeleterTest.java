@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codelibs.fess.exception.DataStoreException;
+import org.opensearch.OpenSearchStatusException;
+import org.opensearch.action.ActionRequest;
+import org.opensearch.action.ActionType;
+import org.opensearch.action.DocWriteRequest;
+import org.opensearch.action.bulk.BackoffPolicy;
+import org.opensearch.action.bulk.BulkItemResponse;
+import org.opensearch.action.bulk.BulkRequest;
+import org.opensearch.action.bulk.BulkResponse;
+import org.opensearch.action.delete.DeleteResponse;
+import org.opensearch.common.settings.Settings;
+import org.opensearch.common.unit.TimeValue;
+import org.opensearch.core.action.ActionListener;
+import org.opensearch.core.action.ActionResponse;
+import org.opensearch.core.common.unit.ByteSizeValue;
+import org.opensearch.core.index.shard.ShardId;
+import org.opensearch.core.rest.RestStatus;
+import org.opensearch.transport.client.support.AbstractClient;
+
+public class ProcessedDocDeleterTest extends UnitDsTestCase {
+
+    /**
+     * Test that a bulk request rejected as a whole is retried with backoff.
+     */
+    public void test_close_retryRejected() {
+        TestClient client = new TestClient(2, RestStatus.TOO_MANY_REQUESTS);
+        ProcessedDocDeleter deleter = createDeleter(client, 3);
+        deleter.delete("docs", "1");
+        deleter.delete("docs", "2");
+        deleter.close();
+        assertEquals(3, client.requests.get());
+        assertEquals(2, deleter.getDeletedCount());
+        assertEquals(0, deleter.getFailedCount());
+    }
+
+    /**
+     * Test that close fails the crawl if documents were not deleted.
+     */
+    public void test_close_failure() {
+        TestClient client = new TestClient(Integer.MAX_VALUE, RestStatus.INTERNAL_SERVER_ERROR);
+        ProcessedDocDeleter deleter = createDeleter(client, 3);
+        deleter.delete("docs", "1");
+        try {
+            deleter.close();
+            fail();
+        } catch (DataStoreException e) {
+            // expected
+        }
+        assertEquals(1, client.requests.get());
+        assertEquals(1, deleter.getFailedCount());
+
+        // the retries are exhausted
+        client = new TestClient(Integer.MAX_VALUE, RestStatus.TOO_MANY_REQUESTS);
+        deleter = createDeleter(client, 2);
+        deleter.delete("docs", "1");
+        try {
+            deleter.close();
+            fail();
+        } catch (DataStoreException e) {
+            // expected
+        }
+        assertEquals(3, client.requests.get());
+        assertEquals(1, deleter.getFailedCount());
+    }
+
+    private ProcessedDocDeleter createDeleter(TestClient client, int retries) {
+        return new ProcessedDocDeleter(client, 1000, new ByteSizeValue(5 * 1024 * 1024), TimeValue.timeValueSeconds(10), 1,
+                BackoffPolicy.exponentialBackoff(TimeValue.timeValueMillis(10), retries), TimeValue.timeValueSeconds(10), null);
+    }
+
+    private static class TestClient extends AbstractClient {
+        final int failures;
+
+        final RestStatus status;
+
+        final AtomicInteger requests = new AtomicInteger();
+
+        TestClient(int failures, RestStatus status) {
+            super(Settings.EMPTY, null);
+            this.failures = failures;
+            this.status = status;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected <Request extends ActionRequest, Response extends ActionResponse> void doExecute(ActionType<Response> action,
+                Request request, ActionListener<Response> listener) {
+            if (requests.incrementAndGet() <= failures) {
+                listener.onFailure(new OpenSearchStatusException("failed", status));
+                return;
+            }
+            BulkRequest bulkRequest = (BulkRequest) request;
+            BulkItemResponse[] items = new BulkItemResponse[bulkRequest.numberOfActions()];
+            for (int i = 0; i < items.length; i++) {
+                DocWriteRequest<?> deleteRequest = bulkRequest.requests().get(i);
+                items[i] = new BulkItemResponse(i, DocWriteRequest.OpType.DELETE,
+                        new DeleteResponse(new ShardId(deleteRequest.index(), "_na_", 0), deleteRequest.id(), 1, 1, 1, true));
+            }
+            listener.onResponse((Response) new BulkResponse(items, 1));
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+public class RateLimiterTest extends UnitDsTestCase {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    /**
+     * Test that pages within the burst do not wait.
+     */
+    public void test_reserve_burst() {
+        RateLimiter rateLimiter = new RateLimiter(1000, 0, 2);
+        long now = rateLimiter.docBucket.refillTime;
+        assertEquals(0, rateLimiter.reserve(1500, 0, now));
+        assertEquals(0, rateLimiter.reserve(500, 0, now));
+        assertEquals(100, rateLimiter.reserve(100, 0, now));
+    }
+
+    /**
+     * Test that documents are limited per second.
+     */
+    public void test_reserve_docs() {
+        RateLimiter rateLimiter = new RateLimiter(1000, 0, 1);
+        long now = rateLimiter.docBucket.refillTime;
+        assertEquals(0, rateLimiter.reserve(1000, 0, now));
+        assertEquals(500, rateLimiter.reserve(500, 0, now));
+        // the bucket is refilled by half a second
+        assertEquals(500, rateLimiter.reserve(500, 0, now + SECOND / 2));
+        assertEquals(0, rateLimiter.reserve(100, 0, now + SECOND * 2));
+    }
+
+    /**
+     * Test that the longer wait of documents and bytes is used.
+     */
+    public void test_reserve_bytes() {
+        RateLimiter rateLimiter = new RateLimiter(1000, 1000000, 1);
+        long now = rateLimiter.byteBucket.refillTime;
+        assertEquals(2000, rateLimiter.reserve(10, 3000000, now));
+        assertEquals(3000, rateLimiter.reserve(10, 1000000, now));
+        assertEquals(3000, rateLimiter.reserve(10, 0, now));
+    }
+
+    /**
+     * Test that documents are not limited without their rate.
+     */
+    public void test_reserve_unlimited() {
+        RateLimiter rateLimiter = new RateLimiter(0, 1000, 1);
+        assertNull(rateLimiter.docBucket);
+        assertEquals(0, rateLimiter.reserve(100000, 0));
+    }
+}
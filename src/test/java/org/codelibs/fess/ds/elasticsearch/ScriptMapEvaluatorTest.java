@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.search.SearchHit;
+
+public class ScriptMapEvaluatorTest extends UnitDsTestCase {
+
+    /**
+     * Test that property paths are resolved without the script engine.
+     */
+    public void test_evaluate_propertyPath() {
+        List<String> evaluated = new ArrayList<>();
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("author", " source.meta.author ");
+        scriptMap.put("id", "id");
+        scriptMap.put("missing", "source.missing");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> {
+            evaluated.add(script);
+            return "script";
+        });
+
+        Map<String, Object> meta = new HashMap<>();
+        meta.put("author", "Alice");
+        Map<String, Object> source = new HashMap<>();
+        source.put("title", "Title");
+        source.put("meta", meta);
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("source", source);
+        bindings.put("id", "1");
+
+        Map<String, Object> dataMap = new HashMap<>();
+        evaluator.evaluate(bindings, dataMap);
+        assertEquals("Title", dataMap.get("title"));
+        assertEquals("Alice", dataMap.get("author"));
+        assertEquals("1", dataMap.get("id"));
+        assertFalse(dataMap.containsKey("missing"));
+        assertTrue(evaluated.isEmpty());
+    }
+
+    /**
+     * Test that other scripts are evaluated by the script engine.
+     */
+    public void test_evaluate_script() {
+        List<String> evaluated = new ArrayList<>();
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title + \" - \" + id");
+        scriptMap.put("unknown", "unknown.value");
+        scriptMap.put("length", "source.title.length");
+        scriptMap.put("empty", "");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> {
+            evaluated.add(script);
+            return script.isEmpty() ? null : "script";
+        });
+
+        Map<String, Object> source = new HashMap<>();
+        source.put("title", "Title");
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("source", source);
+        bindings.put("id", "1");
+
+        Map<String, Object> dataMap = new HashMap<>();
+        evaluator.evaluate(bindings, dataMap);
+        assertEquals("script", dataMap.get("title"));
+        assertEquals("script", dataMap.get("unknown"));
+        assertEquals("script", dataMap.get("length"));
+        assertFalse(dataMap.containsKey("empty"));
+        assertEquals(4, evaluated.size());
+    }
+
+    /**
+     * Test that property paths are parsed.
+     */
+    public void test_parsePropertyPath() {
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(new HashMap<>(), (script, bindings) -> null);
+        assertEquals(2, evaluator.parsePropertyPath("source.title").length);
+        assertEquals(1, evaluator.parsePropertyPath("id").length);
+        assertNull(evaluator.parsePropertyPath("source['title']"));
+        assertNull(evaluator.parsePropertyPath("source.title.trim()"));
+        assertNull(evaluator.parsePropertyPath("source..title"));
+        assertNull(evaluator.parsePropertyPath(""));
+        assertNull(evaluator.parsePropertyPath(null));
+    }
+
+    /**
+     * Test that the referenced source fields are collected.
+     */
+    public void test_getSourcePaths() {
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("author", "source.meta.author");
+        scriptMap.put("id", "id");
+        scriptMap.put("url", "\"http://localhost/\" + id");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> null);
+        Set<String> paths = evaluator.getSourcePaths();
+        assertEquals(2, paths.size());
+        assertTrue(paths.contains("title"));
+        assertTrue(paths.contains("meta.author"));
+        assertTrue(evaluator.enableSourceFieldExtraction());
+    }
+
+    /**
+     * Test that the whole source is used if a script refers to it.
+     */
+    public void test_getSourcePaths_wholeSource() {
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("content", "source.body + source.title");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> null);
+        assertNull(evaluator.getSourcePaths());
+        assertFalse(evaluator.enableSourceFieldExtraction());
+
+        scriptMap.clear();
+        scriptMap.put("source", "source");
+        assertNull(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).getSourcePaths());
+    }
+
+    /**
+     * Test that the top-level source fields are collected as includes.
+     */
+    public void test_getSourceIncludes() {
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("author", "source.meta.author");
+        scriptMap.put("tags", "source.meta.tags");
+        scriptMap.put("id", "id");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> null);
+        Set<String> includes = evaluator.getSourceIncludes();
+        assertEquals(2, includes.size());
+        assertTrue(includes.contains("title"));
+        assertTrue(includes.contains("meta"));
+
+        scriptMap.clear();
+        scriptMap.put("id", "id");
+        assertTrue(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).getSourceIncludes().isEmpty());
+    }
+
+    /**
+     * Test that no includes are derived if a script uses the hit.
+     */
+    public void test_getSourceIncludes_hit() {
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("content", "hit.sourceAsMap.content");
+        assertNull(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).getSourceIncludes());
+
+        scriptMap.put("content", "hit.getSourceAsMap().get(\"content\")");
+        assertNull(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).getSourceIncludes());
+    }
+
+    /**
+     * Test that scores are needed only if a script uses the score or the hit.
+     */
+    public void test_isScoreReferenced() {
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("title", "source.title");
+        scriptMap.put("rank", "source.score");
+        assertFalse(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).isScoreReferenced());
+
+        scriptMap.put("boost", "score");
+        assertTrue(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).isScoreReferenced());
+
+        scriptMap.remove("boost");
+        scriptMap.put("boost", "hit.getScore() * 2");
+        assertTrue(new ScriptMapEvaluator(scriptMap, (script, bindings) -> null).isScoreReferenced());
+    }
+
+    /**
+     * Test that the fields map is flat and single values are unwrapped.
+     */
+    public void test_createFieldsMap() {
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(new LinkedHashMap<>(), (script, bindings) -> null);
+        assertTrue(evaluator.createFieldsMap(new SearchHit(0)).isEmpty());
+
+        Map<String, DocumentField> documentFields = new HashMap<>();
+        documentFields.put("updated_at", new DocumentField("updated_at", List.of(1700000000000L)));
+        documentFields.put("author.name", new DocumentField("author.name", List.of("Alice")));
+        documentFields.put("tags", new DocumentField("tags", List.of("a", "b")));
+        Map<String, Object> fields =
+                evaluator.createFieldsMap(new SearchHit(0, "1", documentFields, Collections.emptyMap()));
+        assertEquals(3, fields.size());
+        assertEquals(1700000000000L, fields.get("updated_at"));
+        assertEquals("Alice", fields.get("author.name"));
+        assertEquals(List.of("a", "b"), fields.get("tags"));
+    }
+
+    /**
+     * Test that property paths are resolved in flat maps whose keys contain dots.
+     */
+    public void test_evaluate_dottedKey() {
+        List<String> evaluated = new ArrayList<>();
+        Map<String, String> scriptMap = new LinkedHashMap<>();
+        scriptMap.put("author", "fields.author.name");
+        scriptMap.put("updated", "fields.updated_at");
+        scriptMap.put("missing", "fields.author.missing");
+        ScriptMapEvaluator evaluator = new ScriptMapEvaluator(scriptMap, (script, bindings) -> {
+            evaluated.add(script);
+            return null;
+        });
+        assertTrue(evaluator.getSourceIncludes().isEmpty());
+
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("author.name", "Alice");
+        fields.put("updated_at", "2025-01-01");
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("fields", fields);
+
+        Map<String, Object> dataMap = new HashMap<>();
+        evaluator.evaluate(bindings, dataMap);
+        assertEquals("Alice", dataMap.get("author"));
+        assertEquals("2025-01-01", dataMap.get("updated"));
+        assertFalse(dataMap.containsKey("missing"));
+        assertEquals(List.of("fields.author.missing"), evaluated);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.opensearch.core.common.bytes.BytesArray;
+import org.opensearch.search.SearchHit;
+
+public class SourceFieldExtractorTest extends UnitDsTestCase {
+
+    private static final String SOURCE = "{\"title\":\"Title\",\"body\":{\"text\":\"long text\",\"lang\":\"en\"},"
+            + "\"meta\":{\"author\":\"Alice\",\"tags\":[\"a\",\"b\"]},\"count\":3,\"empty\":null}";
+
+    /**
+     * Test that only the referenced fields are extracted.
+     */
+    @SuppressWarnings("unchecked")
+    public void test_extract() {
+        SourceFieldExtractor extractor = new SourceFieldExtractor(Arrays.asList("title", "meta.author", "count", "missing"));
+        Map<String, Object> map = extractor.extract(new BytesArray(SOURCE));
+        assertEquals(3, map.size());
+        assertEquals("Title", map.get("title"));
+        assertEquals(3, ((Number) map.get("count")).intValue());
+        Map<String, Object> meta = (Map<String, Object>) map.get("meta");
+        assertEquals(1, meta.size());
+        assertEquals("Alice", meta.get("author"));
+        assertFalse(map.containsKey("body"));
+    }
+
+    /**
+     * Test that a whole object or array is extracted when it is referenced.
+     */
+    @SuppressWarnings("unchecked")
+    public void test_extract_wholeValue() {
+        SourceFieldExtractor extractor = new SourceFieldExtractor(Arrays.asList("meta", "title.length", "empty"));
+        Map<String, Object> map = extractor.extract(new BytesArray(SOURCE));
+        Map<String, Object> meta = (Map<String, Object>) map.get("meta");
+        assertEquals("Alice", meta.get("author"));
+        assertEquals(Arrays.asList("a", "b"), (List<Object>) meta.get("tags"));
+        assertEquals("Title", map.get("title"));
+        assertTrue(map.containsKey("empty"));
+        assertNull(map.get("empty"));
+    }
+
+    /**
+     * Test that the lazy source map parses the source on first access.
+     */
+    public void test_lazySourceMap() {
+        SearchHit hit = new SearchHit(0);
+        hit.sourceRef(new BytesArray(SOURCE));
+        LazySourceMap sourceMap = new LazySourceMap(hit, null);
+        assertFalse(sourceMap.isParsed());
+        assertEquals("Title", sourceMap.get("title"));
+        assertTrue(sourceMap.isParsed());
+        assertEquals(5, sourceMap.size());
+
+        LazySourceMap extractedMap = new LazySourceMap(hit, new SourceFieldExtractor(Arrays.asList("title")));
+        assertEquals("Title", extractedMap.get("title"));
+        assertEquals(1, extractedMap.size());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2025 CodeLibs Project and the Others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package org.codelibs.fess.ds.elasticsearch;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.opensearch.action.search.SearchAction;
+import org.opensearch.action.search.SearchRequestBuilder;
+import org.opensearch.common.document.DocumentField;
+import org.opensearch.index.query.BoolQueryBuilder;
+import org.opensearch.index.query.ExistsQueryBuilder;
+import org.opensearch.index.query.QueryBuilder;
+import org.opensearch.index.query.QueryBuilders;
+import org.opensearch.index.query.RangeQueryBuilder;
+import org.opensearch.search.SearchHit;
+
+public class WatermarkTest extends UnitDsTestCase {
+
+    /**
+     * Test that the query is not restricted on the first crawl.
+     */
+    public void test_apply_first() {
+        SearchRequestBuilder builder = new SearchRequestBuilder(null, SearchAction.INSTANCE);
+        QueryBuilder query = QueryBuilders.matchAllQuery();
+        assertSame(query, new Watermark("updated_at", null).apply(builder, query));
+        assertEquals("updated_at", builder.request().source().docValueFields().get(0).field);
+    }
+
+    /**
+     * Test that the query is restricted to documents at or after the previous watermark.
+     */
+    public void test_apply() {
+        SearchRequestBuilder builder = new SearchRequestBuilder(null, SearchAction.INSTANCE);
+        QueryBuilder query = QueryBuilders.matchAllQuery();
+        QueryBuilder restricted = new Watermark("updated_at", "2025-01-01T00:00:00.000Z").apply(builder, query);
+        assertTrue(restricted instanceof BoolQueryBuilder);
+        BoolQueryBuilder boolQuery = (BoolQueryBuilder) restricted;
+        assertSame(query, boolQuery.must().get(0));
+        RangeQueryBuilder rangeQuery = (RangeQueryBuilder) boolQuery.filter().get(0);
+        assertEquals("updated_at", rangeQuery.fieldName());
+        assertEquals("2025-01-01T00:00:00.000Z", rangeQuery.from());
+        assertTrue(rangeQuery.includeLower());
+    }
+
+    /**
+     * Test that documents without the field are included if configured.
+     */
+    public void test_apply_includeMissing() {
+        SearchRequestBuilder builder = new SearchRequestBuilder(null, SearchAction.INSTANCE);
+        QueryBuilder query = QueryBuilders.matchAllQuery();
+        BoolQueryBuilder boolQuery = (BoolQueryBuilder) new Watermark("updated_at", "2025-01-01T00:00:00.000Z", true).apply(builder, query);
+        assertSame(query, boolQuery.must().get(0));
+        BoolQueryBuilder filter = (BoolQueryBuilder) boolQuery.filter().get(0);
+        assertEquals("1", filter.minimumShouldMatch());
+        assertEquals("updated_at", ((RangeQueryBuilder) filter.should().get(0)).fieldName());
+        ExistsQueryBuilder existsQuery = (ExistsQueryBuilder) ((BoolQueryBuilder) filter.should().get(1)).mustNot().get(0);
+        assertEquals("updated_at", existsQuery.fieldName());
+    }
+
+    /**
+     * Test that the watermark is advanced to the largest value.
+     */
+    public void test_update() {
+        Watermark watermark = new Watermark("updated_at", "2025-01-01T00:00:00.000Z");
+        assertEquals("2025-01-01T00:00:00.000Z", watermark.getValue());
+
+        watermark.update(createHit(0, "updated_at", "2025-01-03T00:00:00.000Z"));
+        watermark.update(createHit(1, "updated_at", "2025-01-02T00:00:00.000Z"));
+        watermark.update(createHit(2, "other", "2025-01-09T00:00:00.000Z"));
+        watermark.update(new SearchHit(3));
+        assertEquals("2025-01-03T00:00:00.000Z", watermark.getValue());
+    }
+
+    /**
+     * Test that numbers are compared numerically.
+     */
+    public void test_update_number() {
+        Watermark watermark = new Watermark("version", 9);
+        watermark.update(createHit(0, "version", 10L));
+        watermark.update(createHit(1, "version", 2L));
+        assertEquals(10L, watermark.getValue());
+
+        watermark = new Watermark("score", 1.5);
+        watermark.update(createHit(0, "score", 1.25));
+        assertEquals(1.5, watermark.getValue());
+    }
+
+    /**
+     * Test that the watermark does not pass the hits which were not stored.
+     */
+    public void test_hold() {
+        Watermark watermark = new Watermark("version", null);
+        watermark.hold(createHit(0, "version", 5L));
+        assertEquals(5L, watermark.getValue());
+        watermark.update(createHit(1, "version", 3L));
+        watermark.update(createHit(2, "version", 10L));
+        watermark.hold(createHit(3, "version", 7L));
+        watermark.hold(new SearchHit(4));
+        assertEquals(5L, watermark.getValue());
+
+        watermark = new Watermark("version", 1L);
+        watermark.update(createHit(0, "version", 10L));
+        watermark.hold(createHit(1, "version", 12L));
+        assertEquals(10L, watermark.getValue());
+    }
+
+    private SearchHit createHit(int docId, String field, Object value) {
+        return new SearchHit(docId, String.valueOf(docId),
+                Collections.singletonMap(field, new DocumentField(field, List.of(value))), Collections.emptyMap());
+    }
+}